@@ -0,0 +1,25 @@
+package ru.practicum.statistic.aggregate;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor
+public class AppUri implements Comparable<AppUri> {
+    private final String app;
+    private final String uri;
+
+    public static AppUri of(String app, String uri) {
+        return new AppUri(app != null ? app : "", uri != null ? uri : "");
+    }
+
+    @Override
+    public int compareTo(AppUri other) {
+        int result = app.compareTo(other.app);
+        return result != 0 ? result : uri.compareTo(other.uri);
+    }
+}
@@ -0,0 +1,15 @@
+package ru.practicum.statistic.aggregate;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "statistic.bitmap")
+public class BitmapProperties {
+    private boolean enabled = false;
+    private int ipCacheSize = 100000;
+}
@@ -0,0 +1,29 @@
+package ru.practicum.statistic.aggregate;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+@Getter
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor
+public class BucketKey implements Comparable<BucketKey> {
+    private static final Comparator<BucketKey> ORDER = Comparator
+            .comparing(BucketKey::getGranularity)
+            .thenComparing(BucketKey::getBucketStart)
+            .thenComparing(BucketKey::getAppUri);
+
+    private final Granularity granularity;
+    private final LocalDateTime bucketStart;
+    private final AppUri appUri;
+
+    @Override
+    public int compareTo(BucketKey other) {
+        return ORDER.compare(this, other);
+    }
+}
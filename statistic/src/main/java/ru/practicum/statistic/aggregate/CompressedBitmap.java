@@ -0,0 +1,256 @@
+package ru.practicum.statistic.aggregate;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Roaring-style compressed bitmap of unsigned 32-bit ids. Ids are grouped by their high 16 bits;
+ * each group is stored as a sorted array while it holds at most 4096 values and as a 65536-bit
+ * bitmap once it grows past that.
+ */
+public class CompressedBitmap {
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int BITMAP_WORDS = 1024;
+    private static final byte ARRAY = 0;
+    private static final byte BITMAP = 1;
+
+    private final TreeMap<Integer, Container> containers = new TreeMap<>();
+
+    public void add(int id) {
+        int key = id >>> 16;
+        char low = (char) id;
+        Container container = containers.get(key);
+        if (container == null) {
+            container = new ArrayContainer();
+        }
+        containers.put(key, container.add(low));
+    }
+
+    public void or(CompressedBitmap other) {
+        for (Map.Entry<Integer, Container> entry : other.containers.entrySet()) {
+            Container container = containers.get(entry.getKey());
+            containers.put(entry.getKey(),
+                    container == null ? entry.getValue().copy() : container.or(entry.getValue()));
+        }
+    }
+
+    public long cardinality() {
+        long cardinality = 0;
+        for (Container container : containers.values()) {
+            cardinality += container.cardinality();
+        }
+        return cardinality;
+    }
+
+    public byte[] toBytes() {
+        int size = Integer.BYTES;
+        for (Container container : containers.values()) {
+            size += Character.BYTES + 1 + Integer.BYTES + container.sizeInBytes();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(containers.size());
+        for (Map.Entry<Integer, Container> entry : containers.entrySet()) {
+            buffer.putChar((char) entry.getKey().intValue());
+            entry.getValue().writeTo(buffer);
+        }
+        return buffer.array();
+    }
+
+    public static CompressedBitmap fromBytes(byte[] bytes) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            int key = buffer.getChar();
+            byte type = buffer.get();
+            int cardinality = buffer.getInt();
+            if (type == ARRAY) {
+                char[] values = new char[cardinality];
+                buffer.asCharBuffer().get(values);
+                buffer.position(buffer.position() + cardinality * Character.BYTES);
+                bitmap.containers.put(key, new ArrayContainer(values, cardinality));
+            } else {
+                long[] words = new long[BITMAP_WORDS];
+                buffer.asLongBuffer().get(words);
+                buffer.position(buffer.position() + BITMAP_WORDS * Long.BYTES);
+                bitmap.containers.put(key, new BitmapContainer(words, cardinality));
+            }
+        }
+        return bitmap;
+    }
+
+    private interface Container {
+        Container add(char value);
+
+        Container or(Container other);
+
+        Container copy();
+
+        int cardinality();
+
+        int sizeInBytes();
+
+        void writeTo(ByteBuffer buffer);
+    }
+
+    private static final class ArrayContainer implements Container {
+        private char[] values;
+        private int size;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        @Override
+        public Container add(char value) {
+            int index = Arrays.binarySearch(values, 0, size, value);
+            if (index >= 0) {
+                return this;
+            }
+            if (size == ARRAY_LIMIT) {
+                return toBitmap().add(value);
+            }
+            int insertAt = -index - 1;
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, Math.max(4, values.length * 2)));
+            }
+            System.arraycopy(values, insertAt, values, insertAt + 1, size - insertAt);
+            values[insertAt] = value;
+            size++;
+            return this;
+        }
+
+        @Override
+        public Container or(Container other) {
+            if (other instanceof BitmapContainer) {
+                return other.copy().or(this);
+            }
+            ArrayContainer array = (ArrayContainer) other;
+            char[] merged = new char[size + array.size];
+            int i = 0;
+            int j = 0;
+            int k = 0;
+            while (i < size && j < array.size) {
+                if (values[i] < array.values[j]) {
+                    merged[k++] = values[i++];
+                } else if (values[i] > array.values[j]) {
+                    merged[k++] = array.values[j++];
+                } else {
+                    merged[k++] = values[i++];
+                    j++;
+                }
+            }
+            while (i < size) {
+                merged[k++] = values[i++];
+            }
+            while (j < array.size) {
+                merged[k++] = array.values[j++];
+            }
+            ArrayContainer result = new ArrayContainer(merged, k);
+            return k > ARRAY_LIMIT ? result.toBitmap() : result;
+        }
+
+        @Override
+        public Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(size, 1)), size);
+        }
+
+        @Override
+        public int cardinality() {
+            return size;
+        }
+
+        @Override
+        public int sizeInBytes() {
+            return size * Character.BYTES;
+        }
+
+        @Override
+        public void writeTo(ByteBuffer buffer) {
+            buffer.put(ARRAY);
+            buffer.putInt(size);
+            for (int i = 0; i < size; i++) {
+                buffer.putChar(values[i]);
+            }
+        }
+
+        private BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer(new long[BITMAP_WORDS], 0);
+            for (int i = 0; i < size; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    private static final class BitmapContainer implements Container {
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        public Container add(char value) {
+            long mask = 1L << value;
+            int index = value >>> 6;
+            if ((words[index] & mask) == 0) {
+                words[index] |= mask;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        public Container or(Container other) {
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.size; i++) {
+                    add(array.values[i]);
+                }
+                return this;
+            }
+            BitmapContainer bitmap = (BitmapContainer) other;
+            int count = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                words[i] |= bitmap.words[i];
+                count += Long.bitCount(words[i]);
+            }
+            cardinality = count;
+            return this;
+        }
+
+        @Override
+        public Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public int sizeInBytes() {
+            return BITMAP_WORDS * Long.BYTES;
+        }
+
+        @Override
+        public void writeTo(ByteBuffer buffer) {
+            buffer.put(BITMAP);
+            buffer.putInt(cardinality);
+            for (long word : words) {
+                buffer.putLong(word);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package ru.practicum.statistic.aggregate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.storage.EventViewRepository;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Live view counters for {@code /events/{id}} hits keyed by the numeric event id. Increments go to an
+ * in-memory {@link LongLongMap} that is periodically swapped out and added to {@code statistic_event_views};
+ * reads combine the table with whatever has not been flushed yet. A flush commits its batch in one transaction
+ * under the write side of a lock that reads hold, so a read never sees a batch both pending and stored.
+ */
+@Slf4j
+@Component
+public class EventViewCounter {
+    private static final String EVENT_PREFIX = "/events/";
+    private static final int MAX_ID_DIGITS = 18;
+
+    private final EventViewRepository eventViewRepository;
+    private final Object flushLock = new Object();
+    private LongLongMap live = new LongLongMap();
+    private LongLongMap flushing = new LongLongMap();
+    private final ReadWriteLock commitLock = new ReentrantReadWriteLock(true);
+
+    public EventViewCounter(EventViewRepository eventViewRepository) {
+        this.eventViewRepository = eventViewRepository;
+    }
+
+    public static long eventIdOf(String uri) {
+        if (uri == null || !uri.startsWith(EVENT_PREFIX)) {
+            return -1L;
+        }
+        int length = uri.length() - EVENT_PREFIX.length();
+        if (length == 0 || length > MAX_ID_DIGITS) {
+            return -1L;
+        }
+        long id = 0;
+        for (int i = EVENT_PREFIX.length(); i < uri.length(); i++) {
+            char c = uri.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1L;
+            }
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+
+    public void record(List<EndpointHit> endpointHits) {
+        synchronized (this) {
+            for (EndpointHit hit : endpointHits) {
+                long eventId = eventIdOf(hit.getAttributes() != null ? hit.getAttributes().getUri() : null);
+                if (eventId >= 0) {
+                    live.addTo(eventId, hit.getWeight());
+                }
+            }
+        }
+    }
+
+    public Map<Long, Long> views(Collection<Long> eventIds) {
+        commitLock.readLock().lock();
+        try {
+            Map<Long, Long> views = new HashMap<>();
+            synchronized (this) {
+                for (Long eventId : eventIds) {
+                    views.put(eventId, live.get(eventId) + flushing.get(eventId));
+                }
+            }
+            eventViewRepository.findViews(eventIds).forEach((eventId, stored) -> views.merge(eventId, stored, Long::sum));
+            return views;
+        } finally {
+            commitLock.readLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        flush();
+    }
+
+    @Scheduled(fixedDelayString = "${statistic.events.flush-interval-ms:5000}")
+    public void flush() {
+        synchronized (flushLock) {
+            LongLongMap batch;
+            synchronized (this) {
+                if (live.isEmpty()) {
+                    return;
+                }
+                batch = live;
+                live = flushing;
+                flushing = batch;
+            }
+            commitLock.writeLock().lock();
+            try {
+                eventViewRepository.increment(batch);
+                synchronized (this) {
+                    batch.clear();
+                }
+            } catch (RuntimeException e) {
+                log.warn("Could not flush views of {} events, keeping them in memory", batch.size(), e);
+                synchronized (this) {
+                    batch.forEach(live::addTo);
+                    batch.clear();
+                }
+            } finally {
+                commitLock.writeLock().unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package ru.practicum.statistic.aggregate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dense ids for the (app, uri) pairs seen by one query, so that concurrent partial counts can be kept in
+ * {@link LongLongMap}s and merged without hashing strings again.
+ */
+public class GroupIndex {
+    private final Map<AppUri, Integer> ids = new ConcurrentHashMap<>();
+    private final List<AppUri> groups = new ArrayList<>();
+
+    public int idOf(AppUri appUri) {
+        Integer id = ids.get(appUri);
+        return id != null ? id : ids.computeIfAbsent(appUri, this::register);
+    }
+
+    public synchronized AppUri groupOf(long id) {
+        return groups.get((int) id);
+    }
+
+    private synchronized int register(AppUri appUri) {
+        groups.add(appUri);
+        return groups.size() - 1;
+    }
+}
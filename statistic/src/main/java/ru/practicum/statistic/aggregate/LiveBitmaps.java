@@ -0,0 +1,145 @@
+package ru.practicum.statistic.aggregate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.storage.BitmapRepository;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Unique-visitor bitmaps of committed hits that are not yet merged into {@code statistic_bitmap}. Ingestion
+ * only sets bits in memory; a timer merges every pending bitmap into its stored row, so a popular URI costs
+ * one row rewrite per flush rather than one per write batch, and no bitmap row is locked by ingestion.
+ * <p>
+ * Bitmaps merge by union, so readers union {@link #orUnflushedInto unflushed} bitmaps with the stored ones
+ * and a bitmap seen both in memory and in the table does no harm. A bitmap being flushed stays visible
+ * until its flush completes, and goes back to the pending bitmaps if the flush fails.
+ */
+@Slf4j
+@Component
+public class LiveBitmaps {
+    private final BitmapRepository bitmapRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ConcurrentHashMap<BucketKey, CompressedBitmap> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private volatile Map<BucketKey, CompressedBitmap> flushing = Collections.emptyMap();
+
+    public LiveBitmaps(BitmapRepository bitmapRepository, PlatformTransactionManager transactionManager) {
+        this.bitmapRepository = bitmapRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Sets the bits of the hits whose address has an id in {@code ipIds}, as returned by
+     * {@link BitmapRepository#intern} before the hits were written.
+     */
+    public void record(List<EndpointHit> endpointHits, Map<String, Integer> ipIds) {
+        if (ipIds.isEmpty()) {
+            return;
+        }
+        for (EndpointHit hit : endpointHits) {
+            if (hit.getCreatedOn() == null || hit.getAttributes() == null) {
+                continue;
+            }
+            Integer ipId = ipIds.get(hit.getAttributes().getIp());
+            if (ipId == null) {
+                continue;
+            }
+            pending.compute(new BucketKey(BitmapRepository.BITMAP_GRANULARITY,
+                            BitmapRepository.BITMAP_GRANULARITY.floor(hit.getCreatedOn()),
+                            AppUri.of(hit.getApp(), hit.getAttributes().getUri())),
+                    (key, bitmap) -> {
+                        CompressedBitmap target = bitmap != null ? bitmap : new CompressedBitmap();
+                        target.add(ipId);
+                        return target;
+                    });
+        }
+    }
+
+    /**
+     * Unions the unflushed bitmaps of buckets starting in {@code [from, to)} into {@code target}. Callers read
+     * these before the stored bitmaps, so that a bitmap flushed in between is still seen in the table.
+     */
+    public void orUnflushedInto(Map<AppUri, CompressedBitmap> target, LocalDateTime from, LocalDateTime to,
+                                Collection<String> uris) {
+        Set<String> uriFilter = uris != null && !uris.isEmpty() ? new HashSet<>(uris) : null;
+        for (BucketKey key : pending.keySet()) {
+            if (matches(key, from, to, uriFilter)) {
+                pending.computeIfPresent(key, (k, bitmap) -> {
+                    target.computeIfAbsent(k.getAppUri(), appUri -> new CompressedBitmap()).or(bitmap);
+                    return bitmap;
+                });
+            }
+        }
+        flushing.forEach((key, bitmap) -> {
+            if (matches(key, from, to, uriFilter)) {
+                target.computeIfAbsent(key.getAppUri(), appUri -> new CompressedBitmap()).or(bitmap);
+            }
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        flush();
+    }
+
+    @Scheduled(fixedDelayString = "${statistic.bitmap.flush-interval-ms:1000}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            Map<BucketKey, CompressedBitmap> drained = drain();
+            if (drained.isEmpty()) {
+                return;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> bitmapRepository.merge(drained));
+            } catch (RuntimeException e) {
+                log.warn("Could not flush {} bitmaps, retrying on the next flush", drained.size(), e);
+                restore(drained);
+            } finally {
+                flushing = Collections.emptyMap();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Moves the pending bitmaps to {@link #flushing} one by one, each becoming visible there before it
+     * leaves the pending map.
+     */
+    private Map<BucketKey, CompressedBitmap> drain() {
+        Map<BucketKey, CompressedBitmap> drained = new ConcurrentSkipListMap<>();
+        flushing = drained;
+        for (BucketKey key : pending.keySet()) {
+            pending.computeIfPresent(key, (k, bitmap) -> {
+                drained.put(k, bitmap);
+                return null;
+            });
+        }
+        return drained;
+    }
+
+    private void restore(Map<BucketKey, CompressedBitmap> bitmaps) {
+        bitmaps.forEach((key, bitmap) -> pending.merge(key, bitmap, (current, failed) -> {
+            current.or(failed);
+            return current;
+        }));
+    }
+
+    private static boolean matches(BucketKey key, LocalDateTime from, LocalDateTime to, Set<String> uris) {
+        return !key.getBucketStart().isBefore(from) && key.getBucketStart().isBefore(to)
+                && (uris == null || uris.contains(key.getAppUri().getUri()));
+    }
+}
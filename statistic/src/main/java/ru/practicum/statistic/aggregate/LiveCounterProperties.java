@@ -0,0 +1,16 @@
+package ru.practicum.statistic.aggregate;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "statistic.live")
+public class LiveCounterProperties {
+    private Duration retention = Duration.ofMinutes(10);
+}
@@ -0,0 +1,243 @@
+package ru.practicum.statistic.aggregate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.storage.RollupRepository;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Striped per-minute hit counters that stand in front of the rollup tables. Ingestion only increments
+ * a {@link LongAdder}; a timer adds the delta since the previous flush to the minute, hour and day rollups.
+ * <p>
+ * Readers add {@link #forEachUnflushed unflushed} counts to what they read from the rollups inside
+ * {@link #readConsistently}. The flush generation is odd while a flush is being written and is bumped
+ * again once the flushed marks are moved. A read is first run without locking and kept if no flush
+ * overlapped it; otherwise it is run once more under the read side of a lock that every flush holds from
+ * writing the rollups until the marks are moved, so it never counts the same hits twice and never spins.
+ * Buckets idle for longer than the retention are evicted; an evicted counter is kept for one more flush so
+ * that an increment racing with the eviction is still written.
+ */
+@Slf4j
+@Component
+public class LiveCounters {
+    private final RollupRepository rollupRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final LiveCounterProperties properties;
+    private final ConcurrentHashMap<BucketKey, Counter> counters = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ReadWriteLock commitLock = new ReentrantReadWriteLock(true);
+    private volatile Map<BucketKey, Counter> retired = Collections.emptyMap();
+
+    public LiveCounters(RollupRepository rollupRepository, PlatformTransactionManager transactionManager,
+                        LiveCounterProperties properties) {
+        this.rollupRepository = rollupRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.properties = properties;
+    }
+
+    public void record(List<EndpointHit> endpointHits) {
+        for (EndpointHit hit : endpointHits) {
+            if (hit.getCreatedOn() == null) {
+                continue;
+            }
+            String uri = hit.getAttributes() != null ? hit.getAttributes().getUri() : null;
+            BucketKey key = new BucketKey(Granularity.MINUTE, Granularity.MINUTE.floor(hit.getCreatedOn()),
+                    AppUri.of(hit.getApp(), uri));
+            counters.computeIfAbsent(key, k -> new Counter()).total.add(hit.getWeight());
+        }
+    }
+
+    /**
+     * Runs a query that combines the rollups with the unflushed counts. The query must not call back into
+     * this method.
+     */
+    public <T> T readConsistently(Supplier<T> query) {
+        long before = generation.get();
+        if ((before & 1) == 0) {
+            T result = query.get();
+            if (generation.get() == before) {
+                return result;
+            }
+        }
+        return readLocked(query);
+    }
+
+    /**
+     * Runs the action while no flush is writing the rollups; it runs exactly once, so it may write. The action
+     * must not call back into this method.
+     */
+    public <T> T readLocked(Supplier<T> action) {
+        commitLock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            commitLock.readLock().unlock();
+        }
+    }
+
+    public void forEachUnflushed(LocalDateTime from, LocalDateTime to, Collection<String> uris,
+                                 UnflushedHandler handler) {
+        Set<String> uriFilter = uris != null ? new HashSet<>(uris) : null;
+        forEachUnflushed(counters, from, to, uriFilter, handler);
+        forEachUnflushed(retired, from, to, uriFilter, handler);
+    }
+
+    public Map<AppUri, Long> unflushedHits(LocalDateTime from, LocalDateTime to, Collection<String> uris) {
+        Map<AppUri, Long> hits = new HashMap<>();
+        forEachUnflushed(from, to, uris, (appUri, minute, count) -> hits.merge(appUri, count, Long::sum));
+        return hits;
+    }
+
+    /**
+     * Number of tracked minute buckets starting in {@code [from, to)}.
+     */
+    public int trackedBuckets(LocalDateTime from, LocalDateTime to) {
+        return trackedBuckets(counters, from, to) + trackedBuckets(retired, from, to);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        flush();
+    }
+
+    @Scheduled(fixedDelayString = "${statistic.live.flush-interval-ms:1000}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            Map<Counter, Long> totals = new HashMap<>();
+            Map<BucketKey, Long> deltas = pendingDeltas(totals);
+            if (!deltas.isEmpty()) {
+                commitLock.writeLock().lock();
+                generation.incrementAndGet();
+                try {
+                    transactionTemplate.executeWithoutResult(status -> rollupRepository.increment(deltas));
+                    totals.forEach((counter, total) -> counter.flushed = total);
+                } catch (RuntimeException e) {
+                    log.warn("Could not flush {} live counters to the rollups, retrying on the next flush",
+                            deltas.size(), e);
+                    return;
+                } finally {
+                    generation.incrementAndGet();
+                    commitLock.writeLock().unlock();
+                }
+            }
+            evictIdle(LocalDateTime.now().minus(properties.getRetention()));
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the unflushed counts within the caller's transaction. The timer is held off and readers wait
+     * until that transaction completes, and the counts are marked flushed only if it commits.
+     */
+    public void flushInCurrentTransaction() {
+        flushLock.lock();
+        Map<Counter, Long> totals = new HashMap<>();
+        Map<BucketKey, Long> deltas = pendingDeltas(totals);
+        try {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (!deltas.isEmpty()) {
+                        if (status == STATUS_COMMITTED) {
+                            totals.forEach((counter, total) -> counter.flushed = total);
+                        }
+                        generation.incrementAndGet();
+                        commitLock.writeLock().unlock();
+                    }
+                    flushLock.unlock();
+                }
+            });
+        } catch (RuntimeException e) {
+            flushLock.unlock();
+            throw e;
+        }
+        if (!deltas.isEmpty()) {
+            commitLock.writeLock().lock();
+            generation.incrementAndGet();
+            rollupRepository.increment(deltas);
+        }
+    }
+
+    private Map<BucketKey, Long> pendingDeltas(Map<Counter, Long> totals) {
+        List<Map.Entry<BucketKey, Counter>> snapshot = new ArrayList<>(retired.entrySet());
+        snapshot.addAll(counters.entrySet());
+        Map<BucketKey, Long> deltas = new TreeMap<>();
+        for (Map.Entry<BucketKey, Counter> entry : snapshot) {
+            Counter counter = entry.getValue();
+            long total = counter.total.sum();
+            if (total > counter.flushed) {
+                totals.put(counter, total);
+                deltas.merge(entry.getKey(), total - counter.flushed, Long::sum);
+            }
+        }
+        return deltas;
+    }
+
+    private void evictIdle(LocalDateTime horizon) {
+        Map<BucketKey, Counter> evicted = new HashMap<>();
+        for (Map.Entry<BucketKey, Counter> entry : counters.entrySet()) {
+            Counter counter = entry.getValue();
+            if (entry.getKey().getBucketStart().isBefore(horizon) && counter.total.sum() == counter.flushed
+                    && counters.remove(entry.getKey(), counter)) {
+                evicted.put(entry.getKey(), counter);
+            }
+        }
+        retired = evicted;
+    }
+
+    private static int trackedBuckets(Map<BucketKey, Counter> source, LocalDateTime from, LocalDateTime to) {
+        int buckets = 0;
+        for (BucketKey key : source.keySet()) {
+            if (!key.getBucketStart().isBefore(from) && key.getBucketStart().isBefore(to)) {
+                buckets++;
+            }
+        }
+        return buckets;
+    }
+
+    private static void forEachUnflushed(Map<BucketKey, Counter> source, LocalDateTime from, LocalDateTime to,
+                                         Collection<String> uris, UnflushedHandler handler) {
+        source.forEach((key, counter) -> {
+            LocalDateTime minute = key.getBucketStart();
+            if (minute.isBefore(from) || !minute.isBefore(to)
+                    || (uris != null && !uris.contains(key.getAppUri().getUri()))) {
+                return;
+            }
+            long unflushed = counter.total.sum() - counter.flushed;
+            if (unflushed > 0) {
+                handler.handle(key.getAppUri(), minute, unflushed);
+            }
+        });
+    }
+
+    @FunctionalInterface
+    public interface UnflushedHandler {
+        void handle(AppUri appUri, LocalDateTime minute, long hits);
+    }
+
+    private static class Counter {
+        private final LongAdder total = new LongAdder();
+        private volatile long flushed;
+    }
+}
@@ -0,0 +1,182 @@
+package ru.practicum.statistic.aggregate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.storage.SketchRepository;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Unique-count sketches of committed hits that are not yet merged into {@code statistic_sketch}. Ingestion
+ * only sets registers in memory; a timer merges every pending sketch into its stored row, so a popular URI
+ * costs one upsert per flush rather than one per write batch.
+ * <p>
+ * Registers merge by maximum, so readers merge {@link #forEachUnflushed unflushed} sketches with the stored
+ * ones and a sketch seen both in memory and in the table does no harm. A sketch being flushed stays visible
+ * until its flush completes, and goes back to the pending sketches if the flush fails.
+ */
+@Slf4j
+@Component
+public class LiveSketches {
+    private final SketchRepository sketchRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final SketchProperties properties;
+    private final ConcurrentHashMap<BucketKey, HyperLogLog> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private volatile Map<BucketKey, HyperLogLog> flushing = Collections.emptyMap();
+
+    public LiveSketches(SketchRepository sketchRepository, PlatformTransactionManager transactionManager,
+                        SketchProperties properties) {
+        this.sketchRepository = sketchRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.properties = properties;
+    }
+
+    public void record(List<EndpointHit> endpointHits) {
+        for (EndpointHit hit : endpointHits) {
+            if (hit.getCreatedOn() == null || hit.getAttributes() == null || hit.getAttributes().getIp() == null) {
+                continue;
+            }
+            AppUri appUri = AppUri.of(hit.getApp(), hit.getAttributes().getUri());
+            for (Granularity granularity : SketchRepository.SKETCH_GRANULARITIES) {
+                pending.compute(new BucketKey(granularity, granularity.floor(hit.getCreatedOn()), appUri),
+                        (key, sketch) -> {
+                            HyperLogLog target = sketch != null ? sketch : new HyperLogLog(properties.getPrecision());
+                            target.add(hit.getAttributes().getIp());
+                            return target;
+                        });
+            }
+        }
+    }
+
+    /**
+     * Hands copies of the unflushed sketches of the given range to {@code handler}. Callers read these before
+     * the stored sketches, so that a sketch flushed in between is still seen in the table.
+     */
+    public void forEachUnflushed(Granularity granularity, LocalDateTime from, LocalDateTime to,
+                                 Collection<String> uris, SketchRepository.SketchHandler handler) {
+        Set<String> uriFilter = uris != null && !uris.isEmpty() ? new HashSet<>(uris) : null;
+        for (BucketKey key : pending.keySet()) {
+            if (matches(key, granularity, from, to, uriFilter)) {
+                HyperLogLog[] copy = {null};
+                pending.computeIfPresent(key, (k, sketch) -> {
+                    copy[0] = HyperLogLog.fromBytes(sketch.toBytes());
+                    return sketch;
+                });
+                if (copy[0] != null) {
+                    handler.handle(key.getAppUri(), key.getBucketStart(), copy[0]);
+                }
+            }
+        }
+        flushing.forEach((key, sketch) -> {
+            if (matches(key, granularity, from, to, uriFilter)) {
+                handler.handle(key.getAppUri(), key.getBucketStart(), HyperLogLog.fromBytes(sketch.toBytes()));
+            }
+        });
+    }
+
+    public void mergeUnflushedInto(Map<AppUri, HyperLogLog> target, Granularity granularity,
+                                   LocalDateTime from, LocalDateTime to, Collection<String> uris) {
+        forEachUnflushed(granularity, from, to, uris, (appUri, bucketStart, sketch) ->
+                target.merge(appUri, sketch, (left, right) -> {
+                    left.merge(right);
+                    return left;
+                }));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        flush();
+    }
+
+    @Scheduled(fixedDelayString = "${statistic.sketch.flush-interval-ms:1000}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            Map<BucketKey, HyperLogLog> drained = drain();
+            if (drained.isEmpty()) {
+                return;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> sketchRepository.merge(drained));
+            } catch (RuntimeException e) {
+                log.warn("Could not flush {} sketches, retrying on the next flush", drained.size(), e);
+                restore(drained);
+            } finally {
+                flushing = Collections.emptyMap();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Merges the pending sketches within the caller's transaction. The timer is held off until that
+     * transaction completes, and the sketches are pending again if it rolls back.
+     */
+    public void flushInCurrentTransaction() {
+        flushLock.lock();
+        Map<BucketKey, HyperLogLog> drained;
+        try {
+            drained = drain();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        restore(drained);
+                    }
+                    flushing = Collections.emptyMap();
+                    flushLock.unlock();
+                }
+            });
+        } catch (RuntimeException e) {
+            restore(flushing);
+            flushing = Collections.emptyMap();
+            flushLock.unlock();
+            throw e;
+        }
+        sketchRepository.merge(drained);
+    }
+
+    /**
+     * Moves the pending sketches to {@link #flushing} one by one, each becoming visible there before it
+     * leaves the pending map.
+     */
+    private Map<BucketKey, HyperLogLog> drain() {
+        Map<BucketKey, HyperLogLog> drained = new ConcurrentSkipListMap<>();
+        flushing = drained;
+        for (BucketKey key : pending.keySet()) {
+            pending.computeIfPresent(key, (k, sketch) -> {
+                drained.put(k, sketch);
+                return null;
+            });
+        }
+        return drained;
+    }
+
+    private void restore(Map<BucketKey, HyperLogLog> sketches) {
+        sketches.forEach((key, sketch) -> pending.merge(key, sketch, (current, failed) -> {
+            current.merge(failed);
+            return current;
+        }));
+    }
+
+    private static boolean matches(BucketKey key, Granularity granularity, LocalDateTime from, LocalDateTime to,
+                                   Set<String> uris) {
+        return key.getGranularity() == granularity && !key.getBucketStart().isBefore(from)
+                && key.getBucketStart().isBefore(to) && (uris == null || uris.contains(key.getAppUri().getUri()));
+    }
+}
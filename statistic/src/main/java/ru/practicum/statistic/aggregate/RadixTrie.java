@@ -0,0 +1,119 @@
+package ru.practicum.statistic.aggregate;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Radix (path-compressed) trie from strings to non-negative int ids. Each edge holds the longest run of
+ * characters shared by every key below it, so a lookup or a prefix walk costs O(length of the key) no matter
+ * how many keys are stored. All methods are synchronized; writes are rare compared to lookups.
+ */
+public class RadixTrie {
+    private static final int NO_VALUE = -1;
+
+    private final Node root = new Node("");
+    private int size;
+
+    public synchronized void put(String key, int value) {
+        Node node = root;
+        int position = 0;
+        while (position < key.length()) {
+            Node child = node.children.get(key.charAt(position));
+            if (child == null) {
+                Node leaf = new Node(key.substring(position));
+                leaf.value = value;
+                node.children.put(leaf.label.charAt(0), leaf);
+                size++;
+                return;
+            }
+            int common = commonPrefixLength(child.label, key, position);
+            if (common < child.label.length()) {
+                Node middle = new Node(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                middle.children.put(child.label.charAt(0), child);
+                node.children.put(middle.label.charAt(0), middle);
+                child = middle;
+            }
+            node = child;
+            position += common;
+        }
+        if (node.value == NO_VALUE) {
+            size++;
+        }
+        node.value = value;
+    }
+
+    public synchronized int get(String key) {
+        Node node = root;
+        int position = 0;
+        while (position < key.length()) {
+            Node child = node.children.get(key.charAt(position));
+            if (child == null || !key.startsWith(child.label, position)) {
+                return NO_VALUE;
+            }
+            node = child;
+            position += child.label.length();
+        }
+        return node.value;
+    }
+
+    public synchronized void forEachWithPrefix(String prefix, ObjIntConsumer<String> consumer) {
+        Node node = root;
+        StringBuilder path = new StringBuilder();
+        int position = 0;
+        while (position < prefix.length()) {
+            Node child = node.children.get(prefix.charAt(position));
+            if (child == null) {
+                return;
+            }
+            int remaining = prefix.length() - position;
+            if (remaining <= child.label.length()) {
+                if (!child.label.startsWith(prefix.substring(position))) {
+                    return;
+                }
+            } else if (!prefix.startsWith(child.label, position)) {
+                return;
+            }
+            path.append(child.label);
+            position += child.label.length();
+            node = child;
+        }
+        collect(node, path, consumer);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private static void collect(Node node, StringBuilder path, ObjIntConsumer<String> consumer) {
+        if (node.value != NO_VALUE) {
+            consumer.accept(path.toString(), node.value);
+        }
+        for (Node child : node.children.values()) {
+            int length = path.length();
+            path.append(child.label);
+            collect(child, path, consumer);
+            path.setLength(length);
+        }
+    }
+
+    private static int commonPrefixLength(String label, String key, int offset) {
+        int length = Math.min(label.length(), key.length() - offset);
+        int common = 0;
+        while (common < length && label.charAt(common) == key.charAt(offset + common)) {
+            common++;
+        }
+        return common;
+    }
+
+    private static class Node {
+        private String label;
+        private final Map<Character, Node> children = new TreeMap<>();
+        private int value = NO_VALUE;
+
+        Node(String label) {
+            this.label = label;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package ru.practicum.statistic.aggregate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class RollupPlanner {
+    private static final Granularity[] ALL_COARSEST_FIRST = {Granularity.DAY, Granularity.HOUR, Granularity.MINUTE};
+
+    private RollupPlanner() {
+    }
+
+    public static List<TimeSlice> plan(LocalDateTime from, LocalDateTime to) {
+        return plan(from, to, ALL_COARSEST_FIRST);
+    }
+
+    public static List<TimeSlice> plan(LocalDateTime from, LocalDateTime to, Granularity... coarsestFirst) {
+        List<TimeSlice> slices = new ArrayList<>();
+        plan(from, to, coarsestFirst, 0, slices);
+        return slices;
+    }
+
+    private static void plan(LocalDateTime from, LocalDateTime to, Granularity[] coarsestFirst, int level,
+                             List<TimeSlice> slices) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+        if (level == coarsestFirst.length) {
+            slices.add(new TimeSlice(null, from, to));
+            return;
+        }
+        Granularity granularity = coarsestFirst[level];
+        LocalDateTime alignedFrom = granularity.ceil(from);
+        LocalDateTime alignedTo = granularity.floor(to);
+        if (!alignedFrom.isBefore(alignedTo)) {
+            plan(from, to, coarsestFirst, level + 1, slices);
+            return;
+        }
+        plan(from, alignedFrom, coarsestFirst, level + 1, slices);
+        slices.add(new TimeSlice(granularity, alignedFrom, alignedTo));
+        plan(alignedTo, to, coarsestFirst, level + 1, slices);
+    }
+}
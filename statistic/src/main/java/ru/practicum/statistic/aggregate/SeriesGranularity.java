@@ -0,0 +1,42 @@
+package ru.practicum.statistic.aggregate;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
+
+public enum SeriesGranularity {
+    MINUTE(Granularity.MINUTE, Duration.ofMinutes(1)),
+    HOUR(Granularity.HOUR, Duration.ofHours(1)),
+    DAY(Granularity.DAY, Duration.ofDays(1)),
+    WEEK(Granularity.DAY, Duration.ofDays(7));
+
+    private final Granularity storedAs;
+    private final Duration length;
+
+    SeriesGranularity(Granularity storedAs, Duration length) {
+        this.storedAs = storedAs;
+        this.length = length;
+    }
+
+    public Granularity getStoredAs() {
+        return storedAs;
+    }
+
+    public LocalDateTime floor(LocalDateTime time) {
+        LocalDateTime floor = storedAs.floor(time);
+        return this == WEEK ? floor.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)) : floor;
+    }
+
+    public LocalDateTime next(LocalDateTime bucketStart) {
+        return bucketStart.plus(length);
+    }
+
+    public long bucketsBetween(LocalDateTime from, LocalDateTime to) {
+        return Duration.between(floor(from), to).toMillis() / length.toMillis() + 1;
+    }
+
+    public SeriesGranularity coarser() {
+        return this == WEEK ? null : values()[ordinal() + 1];
+    }
+}
@@ -0,0 +1,15 @@
+package ru.practicum.statistic.aggregate;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "statistic.sketch")
+public class SketchProperties {
+    private int precision = 12;
+    private boolean rebuildOnPrecisionChange = false;
+}
@@ -0,0 +1,87 @@
+package ru.practicum.statistic.aggregate;
+
+import java.util.*;
+
+/**
+ * Space-Saving heavy-hitter summary that tracks at most {@code capacity} keys. When a new key
+ * arrives at a full summary it replaces the key with the smallest count and inherits that count
+ * as its error, so every reported count overestimates the true one by at most {@link Entry#getError()}.
+ */
+public class SpaceSaving<K extends Comparable<K>> {
+    private final int capacity;
+    private final Map<K, Entry<K>> entries = new HashMap<>();
+    private final TreeSet<Entry<K>> byCount = new TreeSet<>(Comparator
+            .comparingLong((Entry<K> entry) -> entry.count)
+            .thenComparing(entry -> entry.key));
+
+    public SpaceSaving(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public void offer(K key, long increment) {
+        offer(key, increment, 0);
+    }
+
+    public void merge(SpaceSaving<K> other) {
+        for (Entry<K> entry : other.entries.values()) {
+            offer(entry.key, entry.count, entry.error);
+        }
+    }
+
+    public List<Entry<K>> top(int k) {
+        List<Entry<K>> top = new ArrayList<>(Math.min(k, byCount.size()));
+        Iterator<Entry<K>> iterator = byCount.descendingIterator();
+        while (iterator.hasNext() && top.size() < k) {
+            top.add(iterator.next());
+        }
+        return top;
+    }
+
+    public Collection<Entry<K>> entries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    public void offer(K key, long increment, long error) {
+        Entry<K> entry = entries.get(key);
+        if (entry != null) {
+            byCount.remove(entry);
+            entry.count += increment;
+            entry.error += error;
+            byCount.add(entry);
+            return;
+        }
+        if (entries.size() < capacity) {
+            entry = new Entry<>(key, increment, error);
+        } else {
+            Entry<K> min = byCount.pollFirst();
+            entries.remove(min.key);
+            entry = new Entry<>(key, min.count + increment, min.count + error);
+        }
+        entries.put(key, entry);
+        byCount.add(entry);
+    }
+
+    public static final class Entry<K> {
+        private final K key;
+        private long count;
+        private long error;
+
+        private Entry(K key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package ru.practicum.statistic.aggregate;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "statistic.timeseries")
+public class TimeSeriesProperties {
+    private int maxPoints = 1000;
+}
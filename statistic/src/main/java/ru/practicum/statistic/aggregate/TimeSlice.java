@@ -0,0 +1,20 @@
+package ru.practicum.statistic.aggregate;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+@Getter
+@ToString
+@AllArgsConstructor
+public class TimeSlice {
+    private final Granularity granularity;
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+
+    public boolean isRaw() {
+        return granularity == null;
+    }
+}
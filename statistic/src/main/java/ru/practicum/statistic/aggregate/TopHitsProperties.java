@@ -0,0 +1,18 @@
+package ru.practicum.statistic.aggregate;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "statistic.top")
+public class TopHitsProperties {
+    private int capacity = 1000;
+    private Duration retention = Duration.ofHours(24);
+    private String checkpointFile = "top-hits.bin";
+}
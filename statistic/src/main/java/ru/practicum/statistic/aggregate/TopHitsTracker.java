@@ -0,0 +1,118 @@
+package ru.practicum.statistic.aggregate;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.statistic.model.EndpointHit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TopHitsTracker {
+    private final TopHitsProperties properties;
+    private final ConcurrentSkipListMap<LocalDateTime, SpaceSaving<AppUri>> minutes = new ConcurrentSkipListMap<>();
+
+    @PostConstruct
+    void restore() {
+        Path file = Paths.get(properties.getCheckpointFile());
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int minuteCount = in.readInt();
+            for (int i = 0; i < minuteCount; i++) {
+                LocalDateTime minute = LocalDateTime.ofEpochSecond(in.readLong(), 0, ZoneOffset.UTC);
+                SpaceSaving<AppUri> summary = new SpaceSaving<>(properties.getCapacity());
+                int entryCount = in.readInt();
+                for (int j = 0; j < entryCount; j++) {
+                    summary.offer(new AppUri(in.readUTF(), in.readUTF()), in.readLong(), in.readLong());
+                }
+                minutes.put(minute, summary);
+            }
+            log.info("Restored top hits for {} minutes from {}", minuteCount, file);
+        } catch (IOException e) {
+            log.warn("Could not restore top hits from {}", file, e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        checkpoint();
+    }
+
+    public void record(List<EndpointHit> endpointHits) {
+        LocalDateTime horizon = LocalDateTime.now().minus(properties.getRetention());
+        Map<LocalDateTime, Map<AppUri, Long>> increments = new HashMap<>();
+        for (EndpointHit hit : endpointHits) {
+            if (hit.getCreatedOn() == null || hit.getCreatedOn().isBefore(horizon)) {
+                continue;
+            }
+            String uri = hit.getAttributes() != null ? hit.getAttributes().getUri() : null;
+            increments.computeIfAbsent(Granularity.MINUTE.floor(hit.getCreatedOn()), minute -> new HashMap<>())
+                    .merge(AppUri.of(hit.getApp(), uri), (long) hit.getWeight(), Long::sum);
+        }
+        increments.forEach((minute, counts) -> {
+            SpaceSaving<AppUri> summary = minutes.computeIfAbsent(minute,
+                    key -> new SpaceSaving<>(properties.getCapacity()));
+            synchronized (summary) {
+                counts.forEach(summary::offer);
+            }
+        });
+    }
+
+    public List<SpaceSaving.Entry<AppUri>> top(LocalDateTime start, LocalDateTime end, int k, String app) {
+        SpaceSaving<AppUri> merged = new SpaceSaving<>(Integer.MAX_VALUE);
+        for (SpaceSaving<AppUri> summary : minutes.subMap(Granularity.MINUTE.floor(start), true, end, true).values()) {
+            synchronized (summary) {
+                for (SpaceSaving.Entry<AppUri> entry : summary.entries()) {
+                    if (app == null || app.equals(entry.getKey().getApp())) {
+                        merged.offer(entry.getKey(), entry.getCount(), entry.getError());
+                    }
+                }
+            }
+        }
+        return merged.top(k);
+    }
+
+    @Scheduled(fixedDelayString = "${statistic.top.checkpoint-interval-ms:60000}")
+    public void checkpoint() {
+        minutes.headMap(LocalDateTime.now().minus(properties.getRetention())).clear();
+        Path file = Paths.get(properties.getCheckpointFile()).toAbsolutePath();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                Map<LocalDateTime, SpaceSaving<AppUri>> snapshot = new TreeMap<>(minutes);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<LocalDateTime, SpaceSaving<AppUri>> minute : snapshot.entrySet()) {
+                    out.writeLong(minute.getKey().toEpochSecond(ZoneOffset.UTC));
+                    synchronized (minute.getValue()) {
+                        Collection<SpaceSaving.Entry<AppUri>> entries = minute.getValue().entries();
+                        out.writeInt(entries.size());
+                        for (SpaceSaving.Entry<AppUri> entry : entries) {
+                            out.writeUTF(entry.getKey().getApp());
+                            out.writeUTF(entry.getKey().getUri());
+                            out.writeLong(entry.getCount());
+                            out.writeLong(entry.getError());
+                        }
+                    }
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not checkpoint top hits to {}", file, e);
+        }
+    }
+}
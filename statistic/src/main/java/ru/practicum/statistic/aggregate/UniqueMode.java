@@ -0,0 +1,6 @@
+package ru.practicum.statistic.aggregate;
+
+public enum UniqueMode {
+    APPROXIMATE,
+    EXACT
+}
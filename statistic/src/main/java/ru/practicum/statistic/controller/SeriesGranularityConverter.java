@@ -0,0 +1,15 @@
+package ru.practicum.statistic.controller;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.stereotype.Component;
+import ru.practicum.statistic.aggregate.SeriesGranularity;
+
+import java.util.Locale;
+
+@Component
+public class SeriesGranularityConverter implements Converter<String, SeriesGranularity> {
+    @Override
+    public SeriesGranularity convert(String source) {
+        return SeriesGranularity.valueOf(source.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -1,30 +1,64 @@
 package ru.practicum.statistic.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.practicum.statistic.aggregate.SeriesGranularity;
+import ru.practicum.statistic.aggregate.UniqueMode;
 import ru.practicum.statistic.dto.EndpointHitDto;
+import ru.practicum.statistic.dto.StatsQueryDto;
+import ru.practicum.statistic.dto.ViewStatsDto;
 import ru.practicum.statistic.service.StatisticService;
+import ru.practicum.statistic.shard.ShardCoordinator;
 
+import javax.validation.constraints.Positive;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 @RestController
 @Slf4j
 @RequiredArgsConstructor
 @Validated
 public class StatisticController {
+    private static final String NDJSON = "application/x-ndjson";
+
     private final StatisticService statisticService;
+    private final ShardCoordinator shardCoordinator;
+    private final ObjectMapper objectMapper;
 
     @PostMapping("/hit")
     @ResponseStatus(HttpStatus.OK)
-    void postStatistic(@RequestBody EndpointHitDto endpointHitDto) {
+    void postStatistic(@RequestBody EndpointHitDto endpointHitDto,
+                       @RequestHeader(value = ShardCoordinator.LOCAL_HEADER, defaultValue = "false") boolean local) {
         log.info("Saving statistic from ewm = {}", endpointHitDto);
-        statisticService.postStatistic(endpointHitDto);
+        if (local) {
+            statisticService.postStatistic(endpointHitDto);
+        } else {
+            shardCoordinator.postStatistic(endpointHitDto);
+        }
+    }
+
+    @PostMapping("/hits")
+    @ResponseStatus(HttpStatus.OK)
+    void postStatistics(@RequestBody List<EndpointHitDto> endpointHitDtos,
+                        @RequestHeader(value = ShardCoordinator.LOCAL_HEADER, defaultValue = "false") boolean local) {
+        log.info("Saving batch of {} statistic records from ewm", endpointHitDtos.size());
+        if (local) {
+            statisticService.postStatistics(endpointHitDtos);
+        } else {
+            shardCoordinator.postStatistics(endpointHitDtos);
+        }
     }
 
     @GetMapping("/stats")
@@ -36,8 +70,126 @@ public class StatisticController {
             @DateTimeFormat(iso = DateTimeFormat.ISO.DATE, pattern = "yyyy-MM-dd HH:mm:ss")
             LocalDateTime end,
             @RequestParam(required = false) List<String> uris,
-            @RequestParam(defaultValue = "false", required = false) Boolean unique) {
-        log.info("Getting statistic start = {}, end = {}, uris = {}, unique = {}", start, end, uris, unique);
-        return new ResponseEntity<>(statisticService.getStatistic(start, end, uris, unique), HttpStatus.OK);
+            @RequestParam(defaultValue = "false", required = false) Boolean unique,
+            @RequestParam(defaultValue = "APPROXIMATE", required = false) UniqueMode uniqueMode,
+            @RequestParam(defaultValue = "false", required = false) Boolean explain,
+            @RequestHeader(value = ShardCoordinator.LOCAL_HEADER, defaultValue = "false") boolean local) {
+        log.info("Getting statistic start = {}, end = {}, uris = {}, unique = {}, uniqueMode = {}",
+                start, end, uris, unique, uniqueMode);
+        if (Boolean.TRUE.equals(explain)) {
+            shardCoordinator.requireLocal("explain", local);
+            return new ResponseEntity<>(statisticService.explainStatistic(start, end, uris, unique, uniqueMode),
+                    HttpStatus.OK);
+        }
+        return new ResponseEntity<>(local
+                ? statisticService.getStatistic(start, end, uris, unique, uniqueMode)
+                : shardCoordinator.getStatistic(start, end, uris, unique, uniqueMode),
+                HttpStatus.OK);
+    }
+
+    @PostMapping("/stats/query")
+    public ResponseEntity<Object> getStatistics(
+            @RequestBody List<StatsQueryDto> queries,
+            @RequestHeader(value = ShardCoordinator.LOCAL_HEADER, defaultValue = "false") boolean local) {
+        log.info("Getting statistic for a batch of {} queries", queries.size());
+        return new ResponseEntity<>(local
+                ? statisticService.getStatistics(queries)
+                : shardCoordinator.getStatistics(queries),
+                HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/stats", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamStatistic(
+            @RequestParam(required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE, pattern = "yyyy-MM-dd HH:mm:ss")
+            LocalDateTime start,
+            @RequestParam(required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE, pattern = "yyyy-MM-dd HH:mm:ss")
+            LocalDateTime end,
+            @RequestParam(required = false) List<String> uris,
+            @RequestParam(defaultValue = "false", required = false) Boolean unique,
+            @RequestHeader(value = ShardCoordinator.LOCAL_HEADER, defaultValue = "false") boolean local) {
+        log.info("Streaming statistic start = {}, end = {}, uris = {}, unique = {}", start, end, uris, unique);
+        StreamingResponseBody body = outputStream -> {
+            AtomicBoolean first = new AtomicBoolean(true);
+            Consumer<ViewStatsDto> writer = viewStatsDto -> {
+                try {
+                    outputStream.write(objectMapper.writeValueAsBytes(viewStatsDto));
+                    outputStream.write('\n');
+                    if (first.getAndSet(false)) {
+                        outputStream.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            if (local) {
+                statisticService.streamStatistic(start, end, uris, unique, writer);
+            } else {
+                shardCoordinator.streamStatistic(start, end, uris, unique, writer);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    @GetMapping("/stats/top")
+    public ResponseEntity<Object> getTopHits(
+            @RequestParam
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE, pattern = "yyyy-MM-dd HH:mm:ss")
+            LocalDateTime start,
+            @RequestParam
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE, pattern = "yyyy-MM-dd HH:mm:ss")
+            LocalDateTime end,
+            @Positive @RequestParam(defaultValue = "10", required = false) Integer k,
+            @RequestParam(required = false) String app,
+            @RequestHeader(value = ShardCoordinator.LOCAL_HEADER, defaultValue = "false") boolean local) {
+        log.info("Getting top {} hits start = {}, end = {}, app = {}", k, start, end, app);
+        shardCoordinator.requireLocal("/stats/top", local);
+        return new ResponseEntity<>(statisticService.getTopHits(start, end, k, app), HttpStatus.OK);
+    }
+
+    @GetMapping("/stats/events")
+    public ResponseEntity<Object> getEventViews(
+            @RequestParam List<Long> ids,
+            @RequestHeader(value = ShardCoordinator.LOCAL_HEADER, defaultValue = "false") boolean local) {
+        log.info("Getting views of events {}", ids);
+        return new ResponseEntity<>(local
+                ? statisticService.getEventViews(ids)
+                : shardCoordinator.getEventViews(ids),
+                HttpStatus.OK);
+    }
+
+    @GetMapping("/stats/timeseries")
+    public ResponseEntity<Object> getTimeSeries(
+            @RequestParam
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE, pattern = "yyyy-MM-dd HH:mm:ss")
+            LocalDateTime start,
+            @RequestParam
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE, pattern = "yyyy-MM-dd HH:mm:ss")
+            LocalDateTime end,
+            @RequestParam(required = false) List<String> uris,
+            @RequestParam(defaultValue = "hour", required = false) SeriesGranularity granularity,
+            @RequestParam(defaultValue = "false", required = false) Boolean unique,
+            @RequestHeader(value = ShardCoordinator.LOCAL_HEADER, defaultValue = "false") boolean local) {
+        log.info("Getting time series start = {}, end = {}, uris = {}, granularity = {}, unique = {}",
+                start, end, uris, granularity, unique);
+        shardCoordinator.requireLocal("/stats/timeseries", local);
+        return new ResponseEntity<>(statisticService.getTimeSeries(start, end, uris, granularity, unique),
+                HttpStatus.OK);
+    }
+
+    @PostMapping("/admin/rebuild")
+    public ResponseEntity<Object> startRebuild(
+            @RequestHeader(value = ShardCoordinator.LOCAL_HEADER, defaultValue = "false") boolean local) {
+        log.info("Starting a rebuild of the statistic aggregates");
+        shardCoordinator.requireLocal("/admin/rebuild", local);
+        return new ResponseEntity<>(statisticService.startRebuild(), HttpStatus.ACCEPTED);
+    }
+
+    @GetMapping("/admin/rebuild")
+    public ResponseEntity<Object> getRebuildStatus(
+            @RequestHeader(value = ShardCoordinator.LOCAL_HEADER, defaultValue = "false") boolean local) {
+        shardCoordinator.requireLocal("/admin/rebuild", local);
+        return new ResponseEntity<>(statisticService.getRebuildStatus(), HttpStatus.OK);
     }
 }
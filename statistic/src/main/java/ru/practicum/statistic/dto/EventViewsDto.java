@@ -0,0 +1,15 @@
+package ru.practicum.statistic.dto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class EventViewsDto {
+    private Long eventId;
+    private Long views;
+}
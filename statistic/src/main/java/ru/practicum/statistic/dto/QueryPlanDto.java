@@ -0,0 +1,21 @@
+package ru.practicum.statistic.dto;
+
+import lombok.*;
+import ru.practicum.statistic.service.AccessPath;
+
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class QueryPlanDto {
+    private AccessPath accessPath;
+    private Long estimatedCost;
+    private Map<AccessPath, Long> candidates;
+    private List<QueryPlanStepDto> steps;
+}
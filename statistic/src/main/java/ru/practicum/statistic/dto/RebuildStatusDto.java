@@ -0,0 +1,26 @@
+package ru.practicum.statistic.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.*;
+import ru.practicum.statistic.storage.RebuildState;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RebuildStatusDto {
+    private RebuildState state;
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime startedOn;
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime finishedOn;
+    private Integer days;
+    private Integer daysRebuilt;
+    private Long rowsRead;
+    private String error;
+}
@@ -0,0 +1,20 @@
+package ru.practicum.statistic.dto;
+
+import lombok.*;
+import ru.practicum.statistic.aggregate.SeriesGranularity;
+
+import java.util.List;
+
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TimeSeriesDto {
+    private String app;
+    private String uri;
+    private SeriesGranularity granularity;
+    private List<TimeSeriesPointDto> points;
+}
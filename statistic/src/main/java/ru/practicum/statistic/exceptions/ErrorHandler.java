@@ -0,0 +1,111 @@
+package ru.practicum.statistic.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import ru.practicum.statistic.exceptions.dto.ApiError;
+
+import javax.validation.ConstraintViolationException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+
+@RestControllerAdvice
+public class ErrorHandler {
+    @ExceptionHandler
+    public ResponseEntity<ApiError> overloadException(final OverloadException e) {
+        return new ResponseEntity<>(ApiError.builder()
+                .errors(Collections.singletonList("Error"))
+                .message(e.getMessage())
+                .reason("The statistic service is overloaded, retry later.")
+                .status(HttpStatus.TOO_MANY_REQUESTS.toString())
+                .timestamp(LocalDateTime.now().toString())
+                .build(),
+                HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ApiError> shardUnavailableException(final ShardUnavailableException e) {
+        return new ResponseEntity<>(ApiError.builder()
+                .errors(Collections.singletonList("Error"))
+                .message(e.getMessage())
+                .reason("A statistic shard did not respond.")
+                .status(HttpStatus.SERVICE_UNAVAILABLE.toString())
+                .timestamp(LocalDateTime.now().toString())
+                .build(),
+                HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ApiError> partialShardWriteException(final PartialShardWriteException e) {
+        return new ResponseEntity<>(ApiError.builder()
+                .errors(new ArrayList<>(e.getRejectedHits()))
+                .message(e.getMessage())
+                .reason("Some statistic shards did not store their hits, retry only the listed ones.")
+                .status(HttpStatus.SERVICE_UNAVAILABLE.toString())
+                .timestamp(LocalDateTime.now().toString())
+                .build(),
+                HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ApiError> shardingUnsupportedException(final ShardingUnsupportedException e) {
+        return new ResponseEntity<>(ApiError.builder()
+                .errors(Collections.singletonList("Error"))
+                .message(e.getMessage())
+                .reason("The request is not supported while the statistic is sharded.")
+                .status(HttpStatus.NOT_IMPLEMENTED.toString())
+                .timestamp(LocalDateTime.now().toString())
+                .build(),
+                HttpStatus.NOT_IMPLEMENTED);
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ApiError> rebuildRejectedException(final RebuildRejectedException e) {
+        return new ResponseEntity<>(ApiError.builder()
+                .errors(Collections.singletonList("Error"))
+                .message(e.getMessage())
+                .reason("The aggregate rebuild could not be started.")
+                .status(HttpStatus.CONFLICT.toString())
+                .timestamp(LocalDateTime.now().toString())
+                .build(),
+                HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ApiError> invalidRangeException(final InvalidRangeException e) {
+        return new ResponseEntity<>(ApiError.builder()
+                .errors(Collections.singletonList("Error"))
+                .message(e.getMessage())
+                .reason("Incorrectly made request.")
+                .status(HttpStatus.BAD_REQUEST.toString())
+                .timestamp(LocalDateTime.now().toString())
+                .build(),
+                HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ApiError> invalidHitException(final InvalidHitException e) {
+        return new ResponseEntity<>(ApiError.builder()
+                .errors(Collections.singletonList("Error"))
+                .message(e.getMessage())
+                .reason("Incorrectly made request.")
+                .status(HttpStatus.BAD_REQUEST.toString())
+                .timestamp(LocalDateTime.now().toString())
+                .build(),
+                HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ApiError> constraintViolationException(final ConstraintViolationException e) {
+        return new ResponseEntity<>(ApiError.builder()
+                .errors(Collections.singletonList("Error"))
+                .message(e.getMessage())
+                .reason("Incorrectly made request.")
+                .status(HttpStatus.BAD_REQUEST.toString())
+                .timestamp(LocalDateTime.now().toString())
+                .build(),
+                HttpStatus.BAD_REQUEST);
+    }
+}
@@ -0,0 +1,7 @@
+package ru.practicum.statistic.exceptions;
+
+public class InvalidHitException extends RuntimeException {
+    public InvalidHitException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package ru.practicum.statistic.exceptions;
+
+public class InvalidRangeException extends RuntimeException {
+    public InvalidRangeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,15 @@
+package ru.practicum.statistic.exceptions;
+
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+public class PartialShardWriteException extends RuntimeException {
+    private final List<Integer> rejectedHits;
+
+    public PartialShardWriteException(String message, List<Integer> rejectedHits) {
+        super(message);
+        this.rejectedHits = rejectedHits;
+    }
+}
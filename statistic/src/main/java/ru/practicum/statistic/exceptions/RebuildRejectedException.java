@@ -0,0 +1,7 @@
+package ru.practicum.statistic.exceptions;
+
+public class RebuildRejectedException extends RuntimeException {
+    public RebuildRejectedException(String message) {
+        super(message);
+    }
+}
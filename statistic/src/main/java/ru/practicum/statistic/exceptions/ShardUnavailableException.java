@@ -0,0 +1,7 @@
+package ru.practicum.statistic.exceptions;
+
+public class ShardUnavailableException extends RuntimeException {
+    public ShardUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,7 @@
+package ru.practicum.statistic.exceptions;
+
+public class ShardingUnsupportedException extends RuntimeException {
+    public ShardingUnsupportedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,20 @@
+package ru.practicum.statistic.ingest;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "statistic.ingest.dedupe")
+public class DedupeProperties {
+    private boolean enabled = false;
+    private Duration window = Duration.ofSeconds(10);
+    private Duration bucket = Duration.ofSeconds(1);
+    private long expectedHits = 1000000;
+    private double falsePositiveRate = 0.001;
+}
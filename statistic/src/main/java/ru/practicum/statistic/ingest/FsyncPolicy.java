@@ -0,0 +1,7 @@
+package ru.practicum.statistic.ingest;
+
+public enum FsyncPolicy {
+    ALWAYS,
+    INTERVAL,
+    NONE
+}
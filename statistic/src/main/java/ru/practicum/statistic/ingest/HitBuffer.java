@@ -0,0 +1,204 @@
+package ru.practicum.statistic.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.statistic.exceptions.OverloadException;
+import ru.practicum.statistic.model.EndpointHit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+public class HitBuffer {
+    private static final int FLUSH_ATTEMPTS = 3;
+
+    private final HitWriter hitWriter;
+    private final HitWriteAheadLog writeAheadLog;
+    private final IngestProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final List<Shard> shards = new ArrayList<>();
+    private Timer flushTimer;
+    private Counter droppedCounter;
+    private Counter rejectedCounter;
+    private volatile boolean running;
+
+    public HitBuffer(HitWriter hitWriter, HitWriteAheadLog writeAheadLog,
+                     IngestProperties properties, MeterRegistry meterRegistry) {
+        this.hitWriter = hitWriter;
+        this.writeAheadLog = writeAheadLog;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!properties.isAsync()) {
+            return;
+        }
+        flushTimer = meterRegistry.timer(HitSampler.FLUSH_TIMER);
+        droppedCounter = meterRegistry.counter("statistic.ingest.dropped");
+        rejectedCounter = meterRegistry.counter("statistic.ingest.rejected");
+        running = true;
+        for (int i = 0; i < properties.getShards(); i++) {
+            Shard shard = new Shard(i, new ArrayBlockingQueue<>(properties.getCapacity()));
+            Gauge.builder("statistic.ingest.queue.depth", shard.queue, BlockingQueue::size)
+                    .tag("shard", String.valueOf(i))
+                    .register(meterRegistry);
+            shards.add(shard);
+            shard.thread.start();
+        }
+        log.info("Started {} hit flushers, capacity = {}, overflow policy = {}",
+                shards.size(), properties.getCapacity(), properties.getOverflowPolicy());
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        for (Shard shard : shards) {
+            shard.thread.interrupt();
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return running;
+    }
+
+    public int getDepth() {
+        return shards.stream().mapToInt(shard -> shard.queue.size()).sum();
+    }
+
+    public void offer(EndpointHit endpointHit) {
+        BlockingQueue<PendingHit> queue = shardOf(endpointHit).queue;
+        long walPosition = writeAheadLog.isEnabled()
+                ? writeAheadLog.append(endpointHit) : HitWriteAheadLog.NO_POSITION;
+        PendingHit pendingHit = new PendingHit(endpointHit, walPosition);
+        switch (properties.getOverflowPolicy()) {
+            case BLOCK:
+                try {
+                    queue.put(pendingHit);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    writeAheadLog.acknowledge(walPosition);
+                    throw new OverloadException("Interrupted while waiting for space in the hit buffer.");
+                }
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(pendingHit)) {
+                    PendingHit dropped = queue.poll();
+                    if (dropped != null) {
+                        writeAheadLog.acknowledge(dropped.getWalPosition());
+                        droppedCounter.increment();
+                    }
+                }
+                break;
+            case REJECT:
+                if (!queue.offer(pendingHit)) {
+                    writeAheadLog.acknowledge(walPosition);
+                    rejectedCounter.increment();
+                    throw new OverloadException("Hit buffer is full.");
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown overflow policy " + properties.getOverflowPolicy());
+        }
+    }
+
+    private Shard shardOf(EndpointHit endpointHit) {
+        String uri = endpointHit.getAttributes() != null ? endpointHit.getAttributes().getUri() : null;
+        int hash = uri != null ? uri.hashCode() : 0;
+        return shards.get(Math.floorMod(hash, shards.size()));
+    }
+
+    private void flush(List<PendingHit> batch) {
+        List<EndpointHit> endpointHits = batch.stream()
+                .map(PendingHit::getEndpointHit)
+                .collect(Collectors.toList());
+        for (int attempt = 1; attempt <= FLUSH_ATTEMPTS; attempt++) {
+            try {
+                flushTimer.record(() -> hitWriter.write(endpointHits));
+            } catch (RuntimeException e) {
+                log.warn("Flush of {} hits failed, attempt {} of {}", batch.size(), attempt, FLUSH_ATTEMPTS, e);
+                if (attempt < FLUSH_ATTEMPTS) {
+                    sleepQuietly(properties.getFlushInterval().toMillis() * attempt);
+                }
+                continue;
+            }
+            batch.forEach(pendingHit -> writeAheadLog.acknowledge(pendingHit.getWalPosition()));
+            return;
+        }
+        if (writeAheadLog.isEnabled()) {
+            log.error("Could not flush {} hits after {} attempts, they stay in the write-ahead log for replay",
+                    batch.size(), FLUSH_ATTEMPTS);
+        } else {
+            log.error("Dropping {} hits after {} failed flush attempts", batch.size(), FLUSH_ATTEMPTS);
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private class Shard implements Runnable {
+        private final BlockingQueue<PendingHit> queue;
+        private final Thread thread;
+
+        Shard(int index, BlockingQueue<PendingHit> queue) {
+            this.queue = queue;
+            this.thread = new Thread(this, "hit-flusher-" + index);
+        }
+
+        @Override
+        public void run() {
+            int batchSize = properties.getBatchSize();
+            long intervalNanos = properties.getFlushInterval().toNanos();
+            List<PendingHit> batch = new ArrayList<>(batchSize);
+            while (running) {
+                long deadline = System.nanoTime() + intervalNanos;
+                try {
+                    while (batch.size() < batchSize) {
+                        long remaining = deadline - System.nanoTime();
+                        PendingHit hit = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                        if (hit == null) {
+                            break;
+                        }
+                        batch.add(hit);
+                        queue.drainTo(batch, batchSize - batch.size());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.interrupted();
+                }
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                    batch.clear();
+                }
+            }
+            while (queue.drainTo(batch, batchSize) > 0) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ru.practicum.statistic.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import ru.practicum.statistic.model.Attributes;
+import ru.practicum.statistic.model.EndpointHit;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drops repeated hits of the same (app, uri, ip, time bucket) seen within the dedupe window.
+ * Two Bloom filters rotate every window: a hit is checked against both and recorded in the current one,
+ * so a repeat is remembered for at least one and at most two windows at a fixed memory cost.
+ * False positives drop a small fraction of distinct hits, bounded by the configured rate.
+ */
+@Component
+public class HitDeduplicator {
+    private final DedupeProperties properties;
+    private final Counter suppressedCounter;
+    private BloomFilter current;
+    private BloomFilter previous;
+    private long rotatedAt;
+
+    public HitDeduplicator(DedupeProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.suppressedCounter = meterRegistry.counter("statistic.ingest.deduplicated");
+        if (properties.isEnabled()) {
+            this.current = newFilter();
+            this.previous = newFilter();
+            this.rotatedAt = System.nanoTime();
+        }
+    }
+
+    public List<EndpointHit> filter(List<EndpointHit> endpointHits) {
+        if (!properties.isEnabled()) {
+            return endpointHits;
+        }
+        List<EndpointHit> accepted = new ArrayList<>(endpointHits.size());
+        for (EndpointHit endpointHit : endpointHits) {
+            if (isDuplicate(keyOf(endpointHit))) {
+                suppressedCounter.increment();
+            } else {
+                accepted.add(endpointHit);
+            }
+        }
+        return accepted;
+    }
+
+    private synchronized boolean isDuplicate(String key) {
+        long now = System.nanoTime();
+        if (now - rotatedAt >= properties.getWindow().toNanos()) {
+            previous = now - rotatedAt >= 2 * properties.getWindow().toNanos() ? newFilter() : current;
+            current = newFilter();
+            rotatedAt = now;
+        }
+        if (current.mightContain(key) || previous.mightContain(key)) {
+            return true;
+        }
+        current.put(key);
+        return false;
+    }
+
+    private String keyOf(EndpointHit endpointHit) {
+        Attributes attributes = endpointHit.getAttributes();
+        LocalDateTime createdOn = endpointHit.getCreatedOn() != null ? endpointHit.getCreatedOn() : LocalDateTime.now();
+        long epochMillis = createdOn.toInstant(ZoneOffset.UTC).toEpochMilli();
+        long bucket = Math.floorDiv(epochMillis, Math.max(1, properties.getBucket().toMillis()));
+        return endpointHit.getApp() + '\u0000'
+                + (attributes != null ? attributes.getUri() : null) + '\u0000'
+                + (attributes != null ? attributes.getIp() : null) + '\u0000'
+                + bucket;
+    }
+
+    private BloomFilter newFilter() {
+        return new BloomFilter(properties.getExpectedHits(), properties.getFalsePositiveRate());
+    }
+}
@@ -0,0 +1,105 @@
+package ru.practicum.statistic.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.statistic.model.EndpointHit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overload mode for ingestion. While the hit buffer fills past the high watermark or flushes get slower
+ * than the latency limit, hits are kept with probability {@code 1 / weight} and each kept hit carries
+ * the weight, so summed counts stay unbiased estimates. The weight doubles on every overloaded check,
+ * up to the maximum, and halves back to 1 once the buffer drains below the low watermark.
+ */
+@Slf4j
+@Component
+public class HitSampler {
+    public static final String FLUSH_TIMER = "statistic.ingest.flush";
+
+    private final SamplingProperties properties;
+    private final IngestProperties ingestProperties;
+    private final HitBuffer hitBuffer;
+    private final MeterRegistry meterRegistry;
+    private final Counter sampledOutCounter;
+    private volatile int weight = 1;
+    private long lastFlushCount;
+    private double lastFlushNanos;
+
+    public HitSampler(SamplingProperties properties, IngestProperties ingestProperties, HitBuffer hitBuffer,
+                      MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.ingestProperties = ingestProperties;
+        this.hitBuffer = hitBuffer;
+        this.meterRegistry = meterRegistry;
+        this.sampledOutCounter = meterRegistry.counter("statistic.ingest.sampled.out");
+        Gauge.builder("statistic.ingest.sampling.weight", this, HitSampler::getWeight).register(meterRegistry);
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public List<EndpointHit> sample(List<EndpointHit> endpointHits) {
+        int current = weight;
+        if (current == 1) {
+            return endpointHits;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<EndpointHit> kept = new ArrayList<>(endpointHits.size() / current + 1);
+        for (EndpointHit endpointHit : endpointHits) {
+            if (random.nextInt(current) == 0) {
+                endpointHit.setWeight(endpointHit.getWeight() * current);
+                kept.add(endpointHit);
+            } else {
+                sampledOutCounter.increment();
+            }
+        }
+        return kept;
+    }
+
+    @Scheduled(fixedDelayString = "${statistic.ingest.sampling.check-interval-ms:1000}")
+    public void adjust() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        double fill = hitBuffer.isEnabled()
+                ? (double) hitBuffer.getDepth() / ((long) ingestProperties.getShards() * ingestProperties.getCapacity())
+                : 0;
+        long latency = recentFlushLatencyNanos();
+        long maxLatency = properties.getMaxFlushLatency().toNanos();
+        int current = weight;
+        if ((fill >= properties.getHighWatermark() || latency >= maxLatency) && current < properties.getMaxWeight()) {
+            weight = Math.min(current * 2, properties.getMaxWeight());
+            log.warn("Ingestion overloaded (buffer fill {}, flush latency {} ms), sampling 1 in {} hits",
+                    String.format("%.2f", fill), TimeUnit.NANOSECONDS.toMillis(latency), weight);
+        } else if (fill <= properties.getLowWatermark() && latency < maxLatency / 2 && current > 1) {
+            weight = current / 2;
+            if (weight == 1) {
+                log.info("Ingestion load dropped, sampling switched off");
+            }
+        }
+    }
+
+    private long recentFlushLatencyNanos() {
+        Timer timer = meterRegistry.find(FLUSH_TIMER).timer();
+        if (timer == null) {
+            return 0;
+        }
+        long count = timer.count();
+        double totalNanos = timer.totalTime(TimeUnit.NANOSECONDS);
+        long flushes = count - lastFlushCount;
+        double nanos = totalNanos - lastFlushNanos;
+        lastFlushCount = count;
+        lastFlushNanos = totalNanos;
+        return flushes > 0 ? (long) (nanos / flushes) : 0;
+    }
+}
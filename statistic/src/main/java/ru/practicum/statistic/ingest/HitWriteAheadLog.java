@@ -0,0 +1,309 @@
+package ru.practicum.statistic.ingest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.statistic.model.Attributes;
+import ru.practicum.statistic.model.EndpointHit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Append-only log of hits accepted by the write-behind buffer but not yet flushed to the database.
+ * Each segment is a memory-mapped file of records laid out as
+ * {@code [status:byte][length:int][payload:length bytes]}; the status byte is written last,
+ * so a torn record is read as the end of the segment. Segments are deleted once every record
+ * in them is acknowledged, and pending records are replayed into the database on startup.
+ */
+@Slf4j
+@Component
+public class HitWriteAheadLog {
+    public static final long NO_POSITION = -1L;
+    private static final byte EMPTY = 0;
+    private static final byte PENDING = 1;
+    private static final byte ACKNOWLEDGED = 2;
+    private static final int HEADER_SIZE = 5;
+    private static final String SEGMENT_FORMAT = "hits-%010d.wal";
+    private static final String SEGMENT_REGEX = "hits-\\d{10}\\.wal";
+
+    private final WalProperties properties;
+    private final IngestProperties ingestProperties;
+    private final HitWriter hitWriter;
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+    private Path directory;
+    private volatile Segment current;
+    private ScheduledExecutorService fsyncExecutor;
+    private boolean enabled;
+
+    public HitWriteAheadLog(WalProperties properties, IngestProperties ingestProperties,
+                            HitWriter hitWriter) {
+        this.properties = properties;
+        this.ingestProperties = ingestProperties;
+        this.hitWriter = hitWriter;
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        directory = Paths.get(properties.getDirectory());
+        int nextIndex = replay();
+        enabled = properties.isEnabled() && ingestProperties.isAsync();
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        current = openSegment(nextIndex);
+        if (properties.getFsyncPolicy() == FsyncPolicy.INTERVAL) {
+            long interval = properties.getFsyncInterval().toMillis();
+            fsyncExecutor = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "hit-wal-fsync"));
+            fsyncExecutor.scheduleWithFixedDelay(() -> current.buffer.force(), interval, interval,
+                    TimeUnit.MILLISECONDS);
+        }
+        log.info("Hit write-ahead log started in {}, fsync policy = {}", directory.toAbsolutePath(),
+                properties.getFsyncPolicy());
+    }
+
+    @PreDestroy
+    void stop() {
+        if (fsyncExecutor != null) {
+            fsyncExecutor.shutdownNow();
+        }
+        if (current != null) {
+            current.buffer.force();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized long append(EndpointHit endpointHit) {
+        byte[] payload = encode(endpointHit);
+        int size = HEADER_SIZE + payload.length;
+        if (current.buffer.remaining() < size) {
+            roll();
+            if (current.buffer.remaining() < size) {
+                throw new IllegalArgumentException("Hit does not fit into a write-ahead log segment.");
+            }
+        }
+        Segment segment = current;
+        int offset = segment.buffer.position();
+        segment.buffer.position(offset + 1);
+        segment.buffer.putInt(payload.length);
+        segment.buffer.put(payload);
+        segment.buffer.put(offset, PENDING);
+        segment.pending.incrementAndGet();
+        if (properties.getFsyncPolicy() == FsyncPolicy.ALWAYS) {
+            segment.buffer.force();
+        }
+        return ((long) segment.index << 32) | offset;
+    }
+
+    public void acknowledge(long position) {
+        if (position == NO_POSITION) {
+            return;
+        }
+        Segment segment = segments.get((int) (position >>> 32));
+        if (segment == null) {
+            return;
+        }
+        segment.buffer.put((int) position, ACKNOWLEDGED);
+        if (segment.pending.decrementAndGet() == 0 && segment.sealed) {
+            delete(segment);
+        }
+    }
+
+    private void roll() {
+        Segment sealed = current;
+        current = openSegment(sealed.index + 1);
+        sealed.buffer.force();
+        sealed.sealed = true;
+        if (sealed.pending.get() == 0) {
+            delete(sealed);
+        }
+    }
+
+    private Segment openSegment(int index) {
+        Path file = directory.resolve(String.format(SEGMENT_FORMAT, index));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Segment segment = new Segment(index, file,
+                    channel.map(FileChannel.MapMode.READ_WRITE, 0, properties.getSegmentSize().toBytes()));
+            segments.put(index, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void delete(Segment segment) {
+        if (segments.remove(segment.index) == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(segment.file);
+        } catch (IOException e) {
+            log.warn("Could not delete write-ahead log segment {}", segment.file, e);
+        }
+    }
+
+    private int replay() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(file -> file.getFileName().toString().matches(SEGMENT_REGEX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        int nextIndex = 0;
+        int replayed = 0;
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            nextIndex = Math.max(nextIndex, Integer.parseInt(name.substring(5, 15)) + 1);
+            replayed += replaySegment(file);
+            Files.delete(file);
+        }
+        if (replayed > 0) {
+            log.info("Replayed {} hits from the write-ahead log", replayed);
+        }
+        return nextIndex;
+    }
+
+    private int replaySegment(Path file) throws IOException {
+        int replayed = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            List<EndpointHit> batch = new ArrayList<>();
+            List<Integer> offsets = new ArrayList<>();
+            while (buffer.remaining() >= HEADER_SIZE) {
+                int offset = buffer.position();
+                byte status = buffer.get();
+                int length = buffer.getInt();
+                if (status == EMPTY || length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(payload);
+                if (status == PENDING) {
+                    batch.add(decode(payload));
+                    offsets.add(offset);
+                }
+                if (batch.size() >= ingestProperties.getBatchSize()) {
+                    replayed += replayBatch(buffer, batch, offsets);
+                }
+            }
+            replayed += replayBatch(buffer, batch, offsets);
+            buffer.force();
+        }
+        return replayed;
+    }
+
+    private int replayBatch(MappedByteBuffer buffer, List<EndpointHit> batch, List<Integer> offsets) {
+        int size = batch.size();
+        if (size == 0) {
+            return 0;
+        }
+        hitWriter.write(batch);
+        offsets.forEach(offset -> buffer.put(offset, ACKNOWLEDGED));
+        batch.clear();
+        offsets.clear();
+        return size;
+    }
+
+    private static byte[] encode(EndpointHit endpointHit) {
+        Attributes attributes = endpointHit.getAttributes();
+        byte[] app = bytesOf(endpointHit.getApp());
+        byte[] uri = bytesOf(attributes != null ? attributes.getUri() : null);
+        byte[] ip = bytesOf(attributes != null ? attributes.getIp() : null);
+        ByteBuffer buffer = ByteBuffer.allocate(3 * Integer.BYTES + lengthOf(app) + lengthOf(uri) + lengthOf(ip)
+                + 1 + Long.BYTES + 2 * Integer.BYTES);
+        putBytes(buffer, app);
+        putBytes(buffer, uri);
+        putBytes(buffer, ip);
+        LocalDateTime createdOn = endpointHit.getCreatedOn();
+        buffer.put((byte) (createdOn != null ? 1 : 0));
+        buffer.putLong(createdOn != null ? createdOn.toEpochSecond(ZoneOffset.UTC) : 0L);
+        buffer.putInt(createdOn != null ? createdOn.getNano() : 0);
+        buffer.putInt(endpointHit.getWeight());
+        return buffer.array();
+    }
+
+    private static EndpointHit decode(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        String app = getString(buffer);
+        String uri = getString(buffer);
+        String ip = getString(buffer);
+        boolean hasCreatedOn = buffer.get() == 1;
+        long epochSecond = buffer.getLong();
+        int nano = buffer.getInt();
+        int weight = buffer.remaining() >= Integer.BYTES ? buffer.getInt() : 1;
+        return EndpointHit.builder()
+                .app(app)
+                .attributes(new Attributes(uri, ip))
+                .createdOn(hasCreatedOn ? LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC) : null)
+                .weight(weight)
+                .build();
+    }
+
+    private static byte[] bytesOf(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int lengthOf(byte[] bytes) {
+        return bytes != null ? bytes.length : 0;
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes != null ? bytes.length : -1);
+        if (bytes != null) {
+            buffer.put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static class Segment {
+        private final int index;
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean sealed;
+
+        Segment(int index, Path file, MappedByteBuffer buffer) {
+            this.index = index;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+}
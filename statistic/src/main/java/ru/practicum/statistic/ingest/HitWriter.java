@@ -0,0 +1,125 @@
+package ru.practicum.statistic.ingest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.statistic.aggregate.EventViewCounter;
+import ru.practicum.statistic.aggregate.LiveBitmaps;
+import ru.practicum.statistic.aggregate.LiveCounters;
+import ru.practicum.statistic.aggregate.LiveSketches;
+import ru.practicum.statistic.aggregate.TopHitsTracker;
+import ru.practicum.statistic.model.Attributes;
+import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.service.StatisticCache;
+import ru.practicum.statistic.storage.AggregateRebuilder;
+import ru.practicum.statistic.storage.BitmapRepository;
+import ru.practicum.statistic.storage.HitDictionary;
+import ru.practicum.statistic.storage.IpAddresses;
+import ru.practicum.statistic.storage.HitStorage;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores a batch of hits and, once the write commits, feeds them to the in-memory aggregates. App names, uris
+ * and addresses are interned before the write transaction opens, so the batch holds a single pooled connection.
+ * Addresses are stored in canonical form; the endpoints reject anything that is not an IP literal, so an
+ * unparsable address only reaches this point from an old write-ahead log and is logged.
+ */
+@Slf4j
+@Component
+public class HitWriter {
+    private final HitStorage hitStorage;
+    private final LiveCounters liveCounters;
+    private final LiveSketches liveSketches;
+    private final LiveBitmaps liveBitmaps;
+    private final BitmapRepository bitmapRepository;
+    private final TopHitsTracker topHitsTracker;
+    private final EventViewCounter eventViewCounter;
+    private final StatisticCache statisticCache;
+    private final AggregateRebuilder aggregateRebuilder;
+    private final HitDictionary hitDictionary;
+    private final TransactionTemplate transactionTemplate;
+
+    public HitWriter(HitStorage hitStorage, LiveCounters liveCounters, LiveSketches liveSketches,
+                     LiveBitmaps liveBitmaps, BitmapRepository bitmapRepository, TopHitsTracker topHitsTracker,
+                     EventViewCounter eventViewCounter, StatisticCache statisticCache,
+                     AggregateRebuilder aggregateRebuilder, HitDictionary hitDictionary,
+                     PlatformTransactionManager transactionManager) {
+        this.hitStorage = hitStorage;
+        this.liveCounters = liveCounters;
+        this.liveSketches = liveSketches;
+        this.liveBitmaps = liveBitmaps;
+        this.bitmapRepository = bitmapRepository;
+        this.topHitsTracker = topHitsTracker;
+        this.eventViewCounter = eventViewCounter;
+        this.statisticCache = statisticCache;
+        this.aggregateRebuilder = aggregateRebuilder;
+        this.hitDictionary = hitDictionary;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public void write(List<EndpointHit> endpointHits) {
+        canonicalize(endpointHits);
+        hitDictionary.intern(endpointHits);
+        Map<String, Integer> ipIds = bitmapRepository.intern(endpointHits);
+        transactionTemplate.executeWithoutResult(status -> writeInTransaction(endpointHits, ipIds));
+    }
+
+    private void canonicalize(List<EndpointHit> endpointHits) {
+        int unparsed = 0;
+        for (EndpointHit endpointHit : endpointHits) {
+            Attributes attributes = endpointHit.getAttributes();
+            if (attributes == null || attributes.getIp() == null) {
+                continue;
+            }
+            String canonical = IpAddresses.canonical(attributes.getIp());
+            if (canonical != null) {
+                attributes.setIp(canonical);
+            } else {
+                unparsed++;
+            }
+        }
+        if (unparsed > 0) {
+            log.warn("Storing {} hits with an ip that is not an IP literal as given", unparsed);
+        }
+    }
+
+    private void writeInTransaction(List<EndpointHit> endpointHits, Map<String, Integer> ipIds) {
+        aggregateRebuilder.beginCommit();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                aggregateRebuilder.track(endpointHits);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                aggregateRebuilder.endCommit();
+            }
+        });
+        hitStorage.saveAllInBatch(endpointHits);
+        statisticCache.beginCommit(endpointHits);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private boolean recorded;
+
+            @Override
+            public void afterCommit() {
+                liveCounters.record(endpointHits);
+                liveSketches.record(endpointHits);
+                liveBitmaps.record(endpointHits, ipIds);
+                topHitsTracker.record(endpointHits);
+                eventViewCounter.record(endpointHits);
+                recorded = true;
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                statisticCache.endCommit(endpointHits, recorded);
+            }
+        });
+    }
+}
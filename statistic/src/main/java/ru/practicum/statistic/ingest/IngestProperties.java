@@ -0,0 +1,21 @@
+package ru.practicum.statistic.ingest;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "statistic.ingest")
+public class IngestProperties {
+    private boolean async = false;
+    private int shards = 4;
+    private int capacity = 10000;
+    private int batchSize = 500;
+    private Duration flushInterval = Duration.ofSeconds(1);
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+}
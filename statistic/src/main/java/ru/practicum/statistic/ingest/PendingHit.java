@@ -0,0 +1,12 @@
+package ru.practicum.statistic.ingest;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import ru.practicum.statistic.model.EndpointHit;
+
+@Getter
+@AllArgsConstructor
+public class PendingHit {
+    private final EndpointHit endpointHit;
+    private final long walPosition;
+}
@@ -0,0 +1,20 @@
+package ru.practicum.statistic.ingest;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "statistic.ingest.sampling")
+public class SamplingProperties {
+    private boolean enabled = false;
+    private int maxWeight = 64;
+    private double highWatermark = 0.8;
+    private double lowWatermark = 0.3;
+    private Duration maxFlushLatency = Duration.ofSeconds(2);
+}
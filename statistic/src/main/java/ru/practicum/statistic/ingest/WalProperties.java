@@ -0,0 +1,21 @@
+package ru.practicum.statistic.ingest;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "statistic.wal")
+public class WalProperties {
+    private boolean enabled = false;
+    private String directory = "wal";
+    private DataSize segmentSize = DataSize.ofMegabytes(64);
+    private FsyncPolicy fsyncPolicy = FsyncPolicy.INTERVAL;
+    private Duration fsyncInterval = Duration.ofSeconds(1);
+}
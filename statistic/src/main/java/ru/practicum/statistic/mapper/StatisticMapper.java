@@ -8,6 +8,7 @@ import org.mapstruct.factory.Mappers;
 import ru.practicum.statistic.dto.EndpointHitDto;
 import ru.practicum.statistic.dto.ViewStatsDto;
 import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.model.ViewStats;
 
 @Mapper(componentModel = "spring")
 public interface StatisticMapper {
@@ -17,9 +18,8 @@ public interface StatisticMapper {
     @Mapping(source = "timestamp", target = "createdOn")
     @Mapping(source = "uri", target = "attributes.uri")
     @Mapping(source = "ip", target = "attributes.ip")
+    @Mapping(target = "weight", ignore = true)
     EndpointHit toEndpointHitFromEndpointHitDto(EndpointHitDto dto);
 
-    @BeanMapping(nullValuePropertyMappingStrategy = NullValuePropertyMappingStrategy.IGNORE)
-    @Mapping(source = "attributes.uri", target = "uri")
-    ViewStatsDto toViewStatsDtoFromEndpointHit(EndpointHit endpointHit);
+    ViewStatsDto toViewStatsDtoFromViewStats(ViewStats viewStats);
 }
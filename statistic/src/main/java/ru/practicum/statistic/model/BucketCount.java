@@ -0,0 +1,17 @@
+package ru.practicum.statistic.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+@Getter
+@ToString
+@AllArgsConstructor
+public class BucketCount implements ViewStats {
+    private final String app;
+    private final String uri;
+    private final LocalDateTime bucket;
+    private final Long hits;
+}
@@ -1,14 +1,8 @@
 package ru.practicum.statistic.model;
 
-import com.vladmihalcea.hibernate.type.json.JsonBinaryType;
 import lombok.*;
-import org.hibernate.Hibernate;
-import org.hibernate.annotations.Type;
-import org.hibernate.annotations.TypeDef;
 
-import javax.persistence.*;
 import java.time.LocalDateTime;
-import java.util.Objects;
 
 @Getter
 @Setter
@@ -16,30 +10,11 @@ import java.util.Objects;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-@Entity
-@Table(name = "statistic")
-@TypeDef(name = "jsonb", typeClass = JsonBinaryType.class)
 public class EndpointHit {
-    @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     private String app;
-    @Type(type = "jsonb")
-    @Column(name = "attributes", columnDefinition = "jsonb")
     private Attributes attributes;
-    @Column(name = "created_on")
     private LocalDateTime createdOn;
-
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o)) return false;
-        EndpointHit that = (EndpointHit) o;
-        return id != null && Objects.equals(id, that.id);
-    }
-
-    @Override
-    public int hashCode() {
-        return getClass().hashCode();
-    }
+    @Builder.Default
+    private int weight = 1;
 }
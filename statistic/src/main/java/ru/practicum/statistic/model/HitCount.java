@@ -0,0 +1,14 @@
+package ru.practicum.statistic.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@ToString
+@AllArgsConstructor
+public class HitCount implements ViewStats {
+    private final String app;
+    private final String uri;
+    private final Long hits;
+}
@@ -0,0 +1,9 @@
+package ru.practicum.statistic.model;
+
+public interface ViewStats {
+    String getApp();
+
+    String getUri();
+
+    Long getHits();
+}
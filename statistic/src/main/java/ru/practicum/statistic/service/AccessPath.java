@@ -0,0 +1,9 @@
+package ru.practicum.statistic.service;
+
+public enum AccessPath {
+    RAW,
+    ROLLUP,
+    SKETCH,
+    BITMAP,
+    LIVE
+}
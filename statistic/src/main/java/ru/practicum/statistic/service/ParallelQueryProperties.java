@@ -0,0 +1,17 @@
+package ru.practicum.statistic.service;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "statistic.query.parallel")
+public class ParallelQueryProperties {
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private Duration slice = Duration.ofDays(7);
+}
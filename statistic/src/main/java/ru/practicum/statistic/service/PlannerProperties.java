@@ -0,0 +1,18 @@
+package ru.practicum.statistic.service;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "statistic.planner")
+public class PlannerProperties {
+    private double rawRowsPerSecond = 50;
+    private double rollupRowCost = 1;
+    private double sketchRowCost = 8;
+    private double bitmapRowCost = 4;
+    private double liveBucketCost = 1;
+}
@@ -0,0 +1,32 @@
+package ru.practicum.statistic.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import ru.practicum.statistic.aggregate.TimeSlice;
+
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@ToString
+@AllArgsConstructor
+public class QueryPlan {
+    private final AccessPath accessPath;
+    private final List<Step> steps;
+    private final long cost;
+    private final Map<AccessPath, Long> candidates;
+
+    public boolean usesLiveCounters() {
+        return steps.stream().anyMatch(step -> step.getSource() == AccessPath.LIVE);
+    }
+
+    @Getter
+    @ToString
+    @AllArgsConstructor
+    public static class Step {
+        private final AccessPath source;
+        private final TimeSlice slice;
+        private final long cost;
+    }
+}
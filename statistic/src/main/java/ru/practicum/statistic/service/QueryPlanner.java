@@ -0,0 +1,131 @@
+package ru.practicum.statistic.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.practicum.statistic.aggregate.Granularity;
+import ru.practicum.statistic.aggregate.LiveCounters;
+import ru.practicum.statistic.aggregate.RollupPlanner;
+import ru.practicum.statistic.aggregate.TimeSlice;
+import ru.practicum.statistic.aggregate.UniqueMode;
+import ru.practicum.statistic.storage.BitmapRepository;
+import ru.practicum.statistic.storage.HitDictionary;
+import ru.practicum.statistic.storage.PartitionManager;
+import ru.practicum.statistic.storage.RawHitCompactor;
+import ru.practicum.statistic.storage.SketchRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Picks the cheapest access path for a /stats query. Costs are estimated rows read: a raw scan reads the
+ * expected hits of the range (the configured hit rate, scaled down by the share of uris requested), while a
+ * pre-aggregated path reads one row per bucket and uri, weighted by how expensive the row is to merge, plus
+ * raw scans of the edges the buckets do not cover. Rollups also scan the live counters when they hold
+ * hits of the range not flushed yet, which keeps rollup answers as fresh as a raw scan. Ties go to the raw scan.
+ * Ranges starting before the raw horizon, the later of what {@link RawHitCompactor} compacted and what the
+ * {@link PartitionManager} retention expired, cannot be scanned raw: they are widened to whole buckets of the
+ * finest granularity of each path instead, and exact unique counts fall back to sketches when bitmaps are
+ * disabled.
+ */
+@Component
+@RequiredArgsConstructor
+public class QueryPlanner {
+    private final PlannerProperties properties;
+    private final HitDictionary hitDictionary;
+    private final LiveCounters liveCounters;
+    private final BitmapRepository bitmapRepository;
+    private final RawHitCompactor rawHitCompactor;
+    private final PartitionManager partitionManager;
+
+    public QueryPlan plan(LocalDateTime from, LocalDateTime to, List<String> uris, boolean unique,
+                          UniqueMode uniqueMode) {
+        long knownUris = Math.max(1, hitDictionary.uriCount());
+        long groups = uris != null ? Math.min(uris.size(), knownUris) : knownUris;
+        double selectivity = (double) groups / knownUris;
+        LocalDateTime horizon = rawHorizon();
+        boolean rawAvailable = horizon == null || !from.isBefore(horizon);
+        List<QueryPlan> candidates = new ArrayList<>();
+        if (rawAvailable) {
+            candidates.add(planOf(AccessPath.RAW, Collections.singletonList(new TimeSlice(null, from, to)),
+                    1, groups, selectivity, 0));
+        }
+        if (!unique) {
+            candidates.add(planOf(AccessPath.ROLLUP,
+                    slicesOf(from, to, horizon, Granularity.DAY, Granularity.HOUR, Granularity.MINUTE),
+                    properties.getRollupRowCost(), groups, selectivity, liveCounters.trackedBuckets(from, to)));
+        } else if (uniqueMode == UniqueMode.EXACT && bitmapRepository.isEnabled()) {
+            candidates.add(planOf(AccessPath.BITMAP,
+                    slicesOf(from, to, horizon, BitmapRepository.BITMAP_GRANULARITY),
+                    properties.getBitmapRowCost(), groups, selectivity, 0));
+        } else if (uniqueMode != UniqueMode.EXACT || !rawAvailable) {
+            candidates.add(planOf(AccessPath.SKETCH,
+                    slicesOf(from, to, horizon, SketchRepository.SKETCH_GRANULARITIES),
+                    properties.getSketchRowCost(), groups, selectivity, 0));
+        }
+        QueryPlan cheapest = candidates.get(0);
+        Map<AccessPath, Long> costs = new LinkedHashMap<>();
+        for (QueryPlan candidate : candidates) {
+            costs.put(candidate.getAccessPath(), candidate.getCost());
+            if (candidate.getCost() < cheapest.getCost()) {
+                cheapest = candidate;
+            }
+        }
+        return new QueryPlan(cheapest.getAccessPath(), cheapest.getSteps(), cheapest.getCost(), costs);
+    }
+
+    /**
+     * Whether raw hits from {@code from} on are still stored, i.e. the range does not reach into compacted hours.
+     */
+    public boolean isRawAvailable(LocalDateTime from) {
+        LocalDateTime horizon = rawHorizon();
+        return horizon == null || !from.isBefore(horizon);
+    }
+
+    private LocalDateTime rawHorizon() {
+        LocalDateTime compacted = rawHitCompactor.getRawHorizon();
+        LocalDateTime expired = partitionManager.getRawHorizon();
+        if (compacted == null || expired == null) {
+            return compacted != null ? compacted : expired;
+        }
+        return compacted.isAfter(expired) ? compacted : expired;
+    }
+
+    private static List<TimeSlice> slicesOf(LocalDateTime from, LocalDateTime to, LocalDateTime horizon,
+                                            Granularity... coarsestFirst) {
+        if (horizon == null || !from.isBefore(horizon)) {
+            return RollupPlanner.plan(from, to, coarsestFirst);
+        }
+        Granularity finest = coarsestFirst[coarsestFirst.length - 1];
+        return RollupPlanner.plan(finest.floor(from), to.isAfter(horizon) ? to : finest.ceil(to), coarsestFirst);
+    }
+
+    private QueryPlan planOf(AccessPath accessPath, List<TimeSlice> slices, double rowCost, long groups,
+                             double selectivity, int liveBuckets) {
+        List<QueryPlan.Step> steps = new ArrayList<>();
+        long total = 0;
+        for (TimeSlice slice : slices) {
+            QueryPlan.Step step = slice.isRaw()
+                    ? new QueryPlan.Step(AccessPath.RAW, slice, rawCost(slice, selectivity))
+                    : new QueryPlan.Step(accessPath, slice, bucketCost(slice.getGranularity(), slice, rowCost, groups));
+            steps.add(step);
+            total += step.getCost();
+        }
+        if (liveBuckets > 0) {
+            QueryPlan.Step step = new QueryPlan.Step(AccessPath.LIVE, null,
+                    (long) Math.ceil(liveBuckets * properties.getLiveBucketCost()));
+            steps.add(step);
+            total += step.getCost();
+        }
+        return new QueryPlan(accessPath, steps, total, Collections.emptyMap());
+    }
+
+    private long rawCost(TimeSlice slice, double selectivity) {
+        double seconds = Duration.between(slice.getFrom(), slice.getTo()).toNanos() / 1e9;
+        return (long) Math.ceil(seconds * properties.getRawRowsPerSecond() * selectivity);
+    }
+
+    private static long bucketCost(Granularity granularity, TimeSlice slice, double rowCost, long groups) {
+        return (long) Math.ceil(granularity.bucketsBetween(slice.getFrom(), slice.getTo()) * groups * rowCost);
+    }
+}
@@ -0,0 +1,84 @@
+package ru.practicum.statistic.service;
+
+import org.springframework.stereotype.Component;
+import ru.practicum.statistic.aggregate.TimeSlice;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Aggregates planned time slices concurrently. Rollup slices longer than the configured slice length are
+ * cut on bucket boundaries into independent pieces; every piece is aggregated into its own partial on a
+ * dedicated fork-join pool and the partials are merged pairwise, so long ranges spread over all workers.
+ */
+@Component
+public class SliceExecutor {
+    private final ParallelQueryProperties properties;
+    private final ForkJoinPool pool;
+
+    public SliceExecutor(ParallelQueryProperties properties) {
+        this.properties = properties;
+        this.pool = new ForkJoinPool(Math.max(1, properties.getParallelism()));
+    }
+
+    @PreDestroy
+    void stop() {
+        pool.shutdownNow();
+    }
+
+    public <P> P aggregate(List<TimeSlice> slices, Supplier<P> empty, Function<TimeSlice, P> partial,
+                           BinaryOperator<P> merge) {
+        List<TimeSlice> pieces = split(slices);
+        if (pieces.size() <= 1 || properties.getParallelism() <= 1) {
+            P result = empty.get();
+            for (TimeSlice piece : pieces) {
+                result = merge.apply(result, partial.apply(piece));
+            }
+            return result;
+        }
+        try {
+            return pool.submit(() -> pieces.parallelStream()
+                    .map(partial)
+                    .reduce(merge)
+                    .orElseGet(empty)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while aggregating time slices", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private List<TimeSlice> split(List<TimeSlice> slices) {
+        List<TimeSlice> pieces = new ArrayList<>();
+        for (TimeSlice slice : slices) {
+            if (slice.isRaw()) {
+                pieces.add(slice);
+                continue;
+            }
+            LocalDateTime from = slice.getFrom();
+            while (from.isBefore(slice.getTo())) {
+                LocalDateTime to = slice.getGranularity().floor(from.plus(properties.getSlice()));
+                if (!to.isAfter(from)) {
+                    to = slice.getGranularity().next(from);
+                }
+                if (to.isAfter(slice.getTo())) {
+                    to = slice.getTo();
+                }
+                pieces.add(new TimeSlice(slice.getGranularity(), from, to));
+                from = to;
+            }
+        }
+        return pieces;
+    }
+}
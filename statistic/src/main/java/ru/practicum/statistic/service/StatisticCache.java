@@ -0,0 +1,255 @@
+package ru.practicum.statistic.service;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.stereotype.Component;
+import ru.practicum.statistic.aggregate.AppUri;
+import ru.practicum.statistic.aggregate.UniqueMode;
+import ru.practicum.statistic.dto.ViewStatsDto;
+import ru.practicum.statistic.model.EndpointHit;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Bounded LRU cache of {@code /stats} results. Every committed write batch gets the next ingest sequence
+ * number and is kept in a short log; a cached result remembers the sequence it was computed at. On a hit
+ * the batches committed since then are applied to it: matching hits are added to plain counts, while a
+ * unique count touched by any of them is recomputed. Only the slice of the log is taken under the lock, the
+ * batches are matched against the result outside it. A freshly computed result may or may not have seen the
+ * batches that committed while it ran, so it is cached only when none of those, and none still in flight,
+ * touch its key; it is then tagged with the current sequence and the log keeps it up to date from there.
+ * Results for ranges that ended before they were computed use the long TTL, others the short one.
+ */
+@Component
+public class StatisticCache {
+    private final StatisticCacheProperties properties;
+    private final Object lock = new Object();
+    private final Map<Key, Entry> entries;
+    private final Deque<Batch> log = new ArrayDeque<>();
+    private final Set<List<EndpointHit>> inflight = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long logHits;
+    private long sequence;
+
+    public StatisticCache(StatisticCacheProperties properties) {
+        this.properties = properties;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > properties.getMaxEntries();
+            }
+        };
+    }
+
+    public void beginCommit(List<EndpointHit> endpointHits) {
+        synchronized (lock) {
+            inflight.add(endpointHits);
+        }
+    }
+
+    public void endCommit(List<EndpointHit> endpointHits, boolean committed) {
+        synchronized (lock) {
+            inflight.remove(endpointHits);
+            if (!committed) {
+                return;
+            }
+            sequence++;
+            log.addLast(new Batch(sequence, endpointHits));
+            logHits += endpointHits.size();
+            while (logHits > properties.getLogSize() && log.size() > 1) {
+                logHits -= log.removeFirst().endpointHits.size();
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (lock) {
+            entries.clear();
+        }
+    }
+
+    public List<ViewStatsDto> get(Key key, Supplier<List<ViewStatsDto>> loader) {
+        if (!properties.isEnabled()) {
+            return loader.get();
+        }
+        LocalDateTime now = LocalDateTime.now();
+        Entry entry;
+        long entrySequence = 0;
+        long targetSequence = 0;
+        List<ViewStatsDto> entryResult = null;
+        List<Batch> since = null;
+        synchronized (lock) {
+            entry = entries.get(key);
+            if (entry != null && entry.expiresAt.isAfter(now)) {
+                if (entry.sequence == sequence) {
+                    return entry.result;
+                }
+                entrySequence = entry.sequence;
+                targetSequence = sequence;
+                entryResult = entry.result;
+                since = batchesSince(entrySequence);
+            }
+            if (since == null) {
+                entries.remove(key);
+            }
+        }
+        if (since != null) {
+            List<ViewStatsDto> refreshed = refresh(key, entryResult, since);
+            synchronized (lock) {
+                if (entries.get(key) == entry && entry.sequence == entrySequence) {
+                    if (refreshed != null) {
+                        entry.result = refreshed;
+                        entry.sequence = targetSequence;
+                    } else {
+                        entries.remove(key);
+                    }
+                }
+            }
+            if (refreshed != null) {
+                return refreshed;
+            }
+        }
+        long sequenceBefore;
+        synchronized (lock) {
+            sequenceBefore = sequence;
+        }
+        List<ViewStatsDto> result = Collections.unmodifiableList(new ArrayList<>(loader.get()));
+        synchronized (lock) {
+            List<Batch> overlapping = batchesSince(sequenceBefore);
+            if (overlapping != null && overlapping.stream().noneMatch(batch -> touches(key, batch.endpointHits))
+                    && inflight.stream().noneMatch(endpointHits -> touches(key, endpointHits))) {
+                boolean closed = key.to.isBefore(now);
+                entries.put(key, new Entry(result, sequence,
+                        now.plus(closed ? properties.getTtl() : properties.getOpenTtl())));
+            }
+        }
+        return result;
+    }
+
+    private static boolean touches(Key key, List<EndpointHit> endpointHits) {
+        for (EndpointHit hit : endpointHits) {
+            if (key.matches(hit.getCreatedOn(), hit.getAttributes() != null ? hit.getAttributes().getUri() : null)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The logged batches committed after {@code entrySequence}, newest first, or {@code null} when the log no
+     * longer reaches back that far. Only the references are copied under the lock.
+     */
+    private List<Batch> batchesSince(long entrySequence) {
+        if (entrySequence == sequence) {
+            return Collections.emptyList();
+        }
+        if (log.isEmpty() || log.peekFirst().sequence > entrySequence + 1) {
+            return null;
+        }
+        List<Batch> since = new ArrayList<>();
+        for (Iterator<Batch> batches = log.descendingIterator(); batches.hasNext(); ) {
+            Batch batch = batches.next();
+            if (batch.sequence <= entrySequence) {
+                break;
+            }
+            since.add(batch);
+        }
+        return since;
+    }
+
+    /**
+     * Applies the batches to a cached result outside the lock; {@code null} when the result has to be
+     * recomputed instead.
+     */
+    private static List<ViewStatsDto> refresh(Key key, List<ViewStatsDto> result, List<Batch> since) {
+        Map<AppUri, Long> added = new HashMap<>();
+        for (Batch batch : since) {
+            for (EndpointHit hit : batch.endpointHits) {
+                String uri = hit.getAttributes() != null ? hit.getAttributes().getUri() : null;
+                if (key.matches(hit.getCreatedOn(), uri)) {
+                    added.merge(AppUri.of(hit.getApp(), uri), (long) hit.getWeight(), Long::sum);
+                }
+            }
+        }
+        if (added.isEmpty()) {
+            return result;
+        }
+        if (key.unique) {
+            return null;
+        }
+        Map<AppUri, Long> hits = new HashMap<>(added);
+        result.forEach(viewStats -> hits.merge(AppUri.of(viewStats.getApp(), viewStats.getUri()),
+                viewStats.getHits(), Long::sum));
+        return Collections.unmodifiableList(hits.entrySet().stream()
+                .sorted(Map.Entry.<AppUri, Long>comparingByValue().reversed())
+                .map(hit -> ViewStatsDto.builder()
+                        .app(hit.getKey().getApp())
+                        .uri(hit.getKey().getUri())
+                        .hits(hit.getValue())
+                        .build())
+                .collect(Collectors.toList()));
+    }
+
+    @Getter
+    @ToString
+    @EqualsAndHashCode
+    public static class Key {
+        private final LocalDateTime start;
+        private final LocalDateTime to;
+        private final List<String> uris;
+        private final boolean unique;
+        private final UniqueMode uniqueMode;
+
+        public Key(LocalDateTime start, LocalDateTime end, Collection<String> uris, boolean unique,
+                   UniqueMode uniqueMode) {
+            this.start = start;
+            this.to = end.plus(1, ChronoUnit.MICROS);
+            this.uris = uris != null && !uris.isEmpty() ? new ArrayList<>(new TreeSet<>(uris)) : null;
+            this.unique = unique;
+            this.uniqueMode = unique ? uniqueMode : null;
+        }
+
+        boolean matches(LocalDateTime createdOn, String uri) {
+            return createdOn != null && !createdOn.isBefore(start) && createdOn.isBefore(to)
+                    && (uris == null || uri != null && matchesUri(uri));
+        }
+
+        private boolean matchesUri(String uri) {
+            if (Collections.binarySearch(uris, uri) >= 0) {
+                return true;
+            }
+            for (String pattern : uris) {
+                if (UriPatterns.isPrefixPattern(pattern) && uri.startsWith(UriPatterns.prefixOf(pattern))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class Entry {
+        private List<ViewStatsDto> result;
+        private long sequence;
+        private final LocalDateTime expiresAt;
+
+        Entry(List<ViewStatsDto> result, long sequence, LocalDateTime expiresAt) {
+            this.result = result;
+            this.sequence = sequence;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static class Batch {
+        private final long sequence;
+        private final List<EndpointHit> endpointHits;
+
+        Batch(long sequence, List<EndpointHit> endpointHits) {
+            this.sequence = sequence;
+            this.endpointHits = endpointHits;
+        }
+    }
+}
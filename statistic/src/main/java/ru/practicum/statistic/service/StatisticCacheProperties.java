@@ -0,0 +1,20 @@
+package ru.practicum.statistic.service;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "statistic.cache")
+public class StatisticCacheProperties {
+    private boolean enabled = true;
+    private int maxEntries = 1000;
+    private Duration ttl = Duration.ofHours(1);
+    private Duration openTtl = Duration.ofMinutes(1);
+    private int logSize = 100000;
+}
@@ -1,13 +1,43 @@
 package ru.practicum.statistic.service;
 
+import ru.practicum.statistic.aggregate.SeriesGranularity;
+import ru.practicum.statistic.aggregate.UniqueMode;
 import ru.practicum.statistic.dto.EndpointHitDto;
+import ru.practicum.statistic.dto.EventViewsDto;
+import ru.practicum.statistic.dto.QueryPlanDto;
+import ru.practicum.statistic.dto.RebuildStatusDto;
+import ru.practicum.statistic.dto.StatsQueryDto;
+import ru.practicum.statistic.dto.TimeSeriesDto;
 import ru.practicum.statistic.dto.ViewStatsDto;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface StatisticService {
     void postStatistic(EndpointHitDto endpointHitDto);
 
-    List<ViewStatsDto> getStatistic(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique);
+    void postStatistics(List<EndpointHitDto> endpointHitDtos);
+
+    List<ViewStatsDto> getStatistic(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                                    UniqueMode uniqueMode);
+
+    QueryPlanDto explainStatistic(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                                  UniqueMode uniqueMode);
+
+    List<List<ViewStatsDto>> getStatistics(List<StatsQueryDto> queries);
+
+    void streamStatistic(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                         Consumer<ViewStatsDto> consumer);
+
+    List<ViewStatsDto> getTopHits(LocalDateTime start, LocalDateTime end, Integer k, String app);
+
+    List<EventViewsDto> getEventViews(List<Long> eventIds);
+
+    List<TimeSeriesDto> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                      SeriesGranularity granularity, Boolean unique);
+
+    RebuildStatusDto startRebuild();
+
+    RebuildStatusDto getRebuildStatus();
 }
@@ -1,28 +1,106 @@
 package ru.practicum.statistic.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.statistic.dto.EndpointHitDto;
+import ru.practicum.statistic.dto.EventViewsDto;
+import ru.practicum.statistic.dto.QueryPlanDto;
+import ru.practicum.statistic.dto.QueryPlanStepDto;
+import ru.practicum.statistic.dto.RebuildStatusDto;
+import ru.practicum.statistic.dto.StatsQueryDto;
+import ru.practicum.statistic.dto.TimeSeriesDto;
+import ru.practicum.statistic.dto.TimeSeriesPointDto;
 import ru.practicum.statistic.dto.ViewStatsDto;
+import ru.practicum.statistic.aggregate.AppUri;
+import ru.practicum.statistic.aggregate.CompressedBitmap;
+import ru.practicum.statistic.aggregate.EventViewCounter;
+import ru.practicum.statistic.aggregate.GroupIndex;
+import ru.practicum.statistic.aggregate.HyperLogLog;
+import ru.practicum.statistic.aggregate.LiveBitmaps;
+import ru.practicum.statistic.aggregate.LiveCounters;
+import ru.practicum.statistic.aggregate.LiveSketches;
+import ru.practicum.statistic.aggregate.LongLongMap;
+import ru.practicum.statistic.aggregate.RollupPlanner;
+import ru.practicum.statistic.aggregate.SeriesGranularity;
+import ru.practicum.statistic.aggregate.SketchProperties;
+import ru.practicum.statistic.aggregate.TimeSeriesProperties;
+import ru.practicum.statistic.aggregate.TimeSlice;
+import ru.practicum.statistic.aggregate.TopHitsTracker;
+import ru.practicum.statistic.aggregate.UniqueMode;
+import ru.practicum.statistic.exceptions.InvalidRangeException;
+import ru.practicum.statistic.ingest.HitBuffer;
+import ru.practicum.statistic.ingest.HitDeduplicator;
+import ru.practicum.statistic.ingest.HitSampler;
+import ru.practicum.statistic.ingest.HitWriter;
 import ru.practicum.statistic.mapper.StatisticMapper;
+import ru.practicum.statistic.model.BucketCount;
 import ru.practicum.statistic.model.EndpointHit;
-import ru.practicum.statistic.storage.StatisticRepository;
+import ru.practicum.statistic.model.HitAddress;
+import ru.practicum.statistic.model.HitCount;
+import ru.practicum.statistic.model.ViewStats;
+import ru.practicum.statistic.storage.AggregateRebuilder;
+import ru.practicum.statistic.storage.BitmapRepository;
+import ru.practicum.statistic.storage.HitDictionary;
+import ru.practicum.statistic.storage.HitStorage;
+import ru.practicum.statistic.storage.IpAddresses;
+import ru.practicum.statistic.storage.IpDictionary;
+import ru.practicum.statistic.storage.RollupRepository;
+import ru.practicum.statistic.storage.SketchRepository;
+import ru.practicum.statistic.storage.StatisticStreamRepository;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class StatisticServiceImpl implements StatisticService {
-    private final StatisticRepository statisticRepository;
+    private final HitStorage hitStorage;
+    private final StatisticStreamRepository statisticStreamRepository;
+    private final RollupRepository rollupRepository;
+    private final SketchRepository sketchRepository;
+    private final LiveSketches liveSketches;
+    private final SketchProperties sketchProperties;
+    private final BitmapRepository bitmapRepository;
+    private final LiveBitmaps liveBitmaps;
+    private final IpDictionary ipDictionary;
+    private final HitDictionary hitDictionary;
+    private final TopHitsTracker topHitsTracker;
+    private final LiveCounters liveCounters;
+    private final EventViewCounter eventViewCounter;
+    private final TimeSeriesProperties timeSeriesProperties;
+    private final HitWriter hitWriter;
+    private final StatisticCache statisticCache;
+    private final HitBuffer hitBuffer;
+    private final SliceExecutor sliceExecutor;
+    private final QueryPlanner queryPlanner;
+    private final HitDeduplicator hitDeduplicator;
+    private final HitSampler hitSampler;
+    private final MeterRegistry meterRegistry;
+    private final AggregateRebuilder aggregateRebuilder;
 
     @Override
     public void postStatistic(EndpointHitDto endpointHitDto) {
+        IpAddresses.requireLiterals(Collections.singletonList(endpointHitDto.getIp()));
         EndpointHit endpointHit = StatisticMapper.INSTATCE.toEndpointHitFromEndpointHitDto(endpointHitDto);
+        List<EndpointHit> endpointHits = hitSampler.sample(
+                hitDeduplicator.filter(Collections.singletonList(endpointHit)));
+        if (endpointHits.isEmpty()) {
+            return;
+        }
+        if (hitBuffer.isEnabled()) {
+            endpointHits.forEach(hitBuffer::offer);
+            return;
+        }
         try {
-            statisticRepository.save(endpointHit);
+            meterRegistry.timer(HitSampler.FLUSH_TIMER).record(() -> hitWriter.write(endpointHits));
         } catch (DataIntegrityViolationException e) {
             throw new RuntimeException(String.format("could not execute statement; SQL %s; " +
                             "constraint %s; nested exception is " +
@@ -31,29 +109,406 @@ public class StatisticServiceImpl implements StatisticService {
         }
     }
 
+    @Override
+    public void postStatistics(List<EndpointHitDto> endpointHitDtos) {
+        IpAddresses.requireLiterals(endpointHitDtos.stream()
+                .map(EndpointHitDto::getIp)
+                .collect(Collectors.toList()));
+        List<EndpointHit> endpointHits = hitSampler.sample(hitDeduplicator.filter(endpointHitDtos.stream()
+                .map(StatisticMapper.INSTATCE::toEndpointHitFromEndpointHitDto)
+                .collect(Collectors.toList())));
+        if (endpointHits.isEmpty()) {
+            return;
+        }
+        if (hitBuffer.isEnabled()) {
+            endpointHits.forEach(hitBuffer::offer);
+            return;
+        }
+        try {
+            meterRegistry.timer(HitSampler.FLUSH_TIMER).record(() -> hitWriter.write(endpointHits));
+        } catch (DataIntegrityViolationException e) {
+            throw new RuntimeException(String.format("could not execute statement; SQL %s; " +
+                            "constraint %s; nested exception is " +
+                            "org.hibernate.exception.ConstraintViolationException: could not execute statement",
+                    "Save statistic batch method", "statistic category"));
+        }
+    }
+
     @Override
     public List<ViewStatsDto> getStatistic(
-            LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique) {
-        List<ViewStatsDto> viewStatsDtos = statisticRepository.findAllByCreatedOnBetween(start, end)
-                .stream()
-                .map(StatisticMapper.INSTATCE::toViewStatsDtoFromEndpointHit)
+            LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique, UniqueMode uniqueMode) {
+        if (start == null || end == null) {
+            return Collections.emptyList();
+        }
+        StatisticCache.Key key = new StatisticCache.Key(start, end, uris, Boolean.TRUE.equals(unique), uniqueMode);
+        return statisticCache.get(key, () -> computeStatistic(key));
+    }
+
+    @Override
+    public QueryPlanDto explainStatistic(
+            LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique, UniqueMode uniqueMode) {
+        if (start == null || end == null) {
+            return null;
+        }
+        List<String> uriFilter = UriPatterns.expand(uris, hitDictionary);
+        QueryPlan plan = queryPlanner.plan(start, end.plus(1, ChronoUnit.MICROS),
+                uriFilter != null && uriFilter.isEmpty() ? null : uriFilter, Boolean.TRUE.equals(unique),
+                uniqueMode != null ? uniqueMode : UniqueMode.APPROXIMATE);
+        return QueryPlanDto.builder()
+                .accessPath(plan.getAccessPath())
+                .estimatedCost(plan.getCost())
+                .candidates(plan.getCandidates())
+                .steps(plan.getSteps().stream()
+                        .map(step -> QueryPlanStepDto.builder()
+                                .source(step.getSource())
+                                .granularity(step.getSlice() != null ? step.getSlice().getGranularity() : null)
+                                .start(step.getSlice() != null ? step.getSlice().getFrom() : null)
+                                .end(step.getSlice() != null ? step.getSlice().getTo() : null)
+                                .estimatedCost(step.getCost())
+                                .build())
+                        .collect(Collectors.toList()))
+                .build();
+    }
+
+    @Override
+    public List<List<ViewStatsDto>> getStatistics(List<StatsQueryDto> queries) {
+        Map<StatisticCache.Key, List<StatsQueryDto>> groups = new LinkedHashMap<>();
+        for (StatsQueryDto query : queries) {
+            if (query.getStart() != null && query.getEnd() != null) {
+                groups.computeIfAbsent(new StatisticCache.Key(query.getStart(), query.getEnd(), null,
+                                Boolean.TRUE.equals(query.getUnique()), uniqueModeOf(query)), key -> new ArrayList<>())
+                        .add(query);
+            }
+        }
+        Map<StatisticCache.Key, List<ViewStatsDto>> groupResults = new HashMap<>();
+        groups.forEach((group, members) -> {
+            Set<String> uris = new TreeSet<>();
+            boolean unfiltered = false;
+            for (StatsQueryDto member : members) {
+                if (member.getUris() == null || member.getUris().isEmpty()) {
+                    unfiltered = true;
+                } else {
+                    uris.addAll(member.getUris());
+                }
+            }
+            groupResults.put(group, getStatistic(group.getStart(), group.getTo().minus(1, ChronoUnit.MICROS),
+                    unfiltered ? null : new ArrayList<>(uris), group.isUnique(), group.getUniqueMode()));
+        });
+        List<List<ViewStatsDto>> results = new ArrayList<>(queries.size());
+        for (StatsQueryDto query : queries) {
+            if (query.getStart() == null || query.getEnd() == null) {
+                results.add(Collections.emptyList());
+                continue;
+            }
+            List<ViewStatsDto> groupResult = groupResults.get(new StatisticCache.Key(query.getStart(),
+                    query.getEnd(), null, Boolean.TRUE.equals(query.getUnique()), uniqueModeOf(query)));
+            results.add(groupResult.stream()
+                    .filter(viewStats -> UriPatterns.matches(query.getUris(), viewStats.getUri()))
+                    .collect(Collectors.toList()));
+        }
+        return results;
+    }
+
+    private static UniqueMode uniqueModeOf(StatsQueryDto query) {
+        return query.getUniqueMode() != null ? query.getUniqueMode() : UniqueMode.APPROXIMATE;
+    }
+
+    private List<ViewStatsDto> computeStatistic(StatisticCache.Key key) {
+        LocalDateTime start = key.getStart();
+        LocalDateTime to = key.getTo();
+        List<String> uriFilter = UriPatterns.expand(key.getUris(), hitDictionary);
+        if (uriFilter != null && uriFilter.isEmpty()) {
+            return Collections.emptyList();
+        }
+        QueryPlan plan = queryPlanner.plan(start, to, uriFilter, key.isUnique(), key.getUniqueMode());
+        List<TimeSlice> slices = plan.getSteps().stream()
+                .map(QueryPlan.Step::getSlice)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        Collection<ViewStats> viewStats;
+        switch (plan.getAccessPath()) {
+            case ROLLUP:
+                viewStats = countFromRollups(slices, uriFilter, plan.usesLiveCounters());
+                break;
+            case BITMAP:
+                viewStats = countUniqueFromBitmaps(slices, uriFilter);
+                break;
+            case SKETCH:
+                viewStats = countUniqueFromSketches(slices, uriFilter);
+                break;
+            default:
+                viewStats = countRaw(start, to, uriFilter, key.isUnique());
+        }
+        return viewStats.stream()
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                .map(StatisticMapper.INSTATCE::toViewStatsDtoFromViewStats)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamStatistic(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                                Consumer<ViewStatsDto> consumer) {
+        if (start == null || end == null) {
+            return;
+        }
+        LocalDateTime to = end.plus(1, ChronoUnit.MICROS);
+        List<String> uriFilter = UriPatterns.expand(uris, hitDictionary);
+        if (uriFilter != null && uriFilter.isEmpty()) {
+            return;
+        }
+        if (!hitStorage.isRelational() || !queryPlanner.isRawAvailable(start)) {
+            getStatistic(start, end, uris, unique, UniqueMode.EXACT).forEach(consumer);
+            return;
+        }
+        liveCounters.flush();
+        Consumer<ViewStats> mapping = viewStats ->
+                consumer.accept(StatisticMapper.INSTATCE.toViewStatsDtoFromViewStats(viewStats));
+        if (Boolean.TRUE.equals(unique)) {
+            statisticStreamRepository.streamUniqueHits(start, to, uriFilter, mapping);
+        } else {
+            statisticStreamRepository.streamHits(RollupPlanner.plan(start, to), uriFilter, mapping);
+        }
+    }
+
+    @Override
+    public List<ViewStatsDto> getTopHits(LocalDateTime start, LocalDateTime end, Integer k, String app) {
+        if (start.isAfter(end)) {
+            throw new InvalidRangeException("Start " + start + " is after end " + end + ".");
+        }
+        return topHitsTracker.top(start, end, k, app).stream()
+                .map(entry -> ViewStatsDto.builder()
+                        .app(entry.getKey().getApp())
+                        .uri(entry.getKey().getUri())
+                        .hits(entry.getCount())
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<EventViewsDto> getEventViews(List<Long> eventIds) {
+        Map<Long, Long> views = eventViewCounter.views(new LinkedHashSet<>(eventIds));
+        return eventIds.stream()
+                .map(eventId -> EventViewsDto.builder()
+                        .eventId(eventId)
+                        .views(views.getOrDefault(eventId, 0L))
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<TimeSeriesDto> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                             SeriesGranularity granularity, Boolean unique) {
+        List<String> uriFilter = UriPatterns.expand(uris, hitDictionary);
+        if (uriFilter != null && uriFilter.isEmpty()) {
+            return Collections.emptyList();
+        }
+        SeriesGranularity series = granularity;
+        while (series.bucketsBetween(start, end) > timeSeriesProperties.getMaxPoints() && series.coarser() != null) {
+            series = series.coarser();
+        }
+        LocalDateTime from = series.floor(start);
+        LocalDateTime to = series.next(series.floor(end));
+        SeriesGranularity resolution = series;
+        Map<AppUri, Map<LocalDateTime, Long>> hits = liveCounters.readConsistently(() -> {
+            Map<AppUri, Map<LocalDateTime, Long>> buckets = new TreeMap<>();
+            for (BucketCount bucket : rollupRepository.findBuckets(resolution.getStoredAs(), from, to, uriFilter)) {
+                buckets.computeIfAbsent(AppUri.of(bucket.getApp(), bucket.getUri()), key -> new HashMap<>())
+                        .merge(resolution.floor(bucket.getBucket()), bucket.getHits(), Long::sum);
+            }
+            liveCounters.forEachUnflushed(from, to, uriFilter, (appUri, minute, unflushed) ->
+                    buckets.computeIfAbsent(appUri, key -> new HashMap<>())
+                            .merge(resolution.floor(minute), unflushed, Long::sum));
+            return buckets;
+        });
+        Map<AppUri, Map<LocalDateTime, Long>> uniqueHits = Boolean.TRUE.equals(unique)
+                ? countUniqueSeries(series, from, to, uriFilter) : Collections.emptyMap();
+        List<TimeSeriesDto> result = new ArrayList<>();
+        for (Map.Entry<AppUri, Map<LocalDateTime, Long>> entry : hits.entrySet()) {
+            Map<LocalDateTime, Long> uniqueBuckets = uniqueHits.getOrDefault(entry.getKey(), Collections.emptyMap());
+            List<TimeSeriesPointDto> points = new ArrayList<>();
+            for (LocalDateTime bucket = from; bucket.isBefore(to); bucket = series.next(bucket)) {
+                points.add(TimeSeriesPointDto.builder()
+                        .bucket(bucket)
+                        .hits(entry.getValue().getOrDefault(bucket, 0L))
+                        .uniqueHits(Boolean.TRUE.equals(unique) ? uniqueBuckets.getOrDefault(bucket, 0L) : null)
+                        .build());
+            }
+            result.add(TimeSeriesDto.builder()
+                    .app(entry.getKey().getApp())
+                    .uri(entry.getKey().getUri())
+                    .granularity(series)
+                    .points(points)
+                    .build());
+        }
+        return result;
+    }
+
+    @Override
+    public RebuildStatusDto startRebuild() {
+        return aggregateRebuilder.start(statisticCache::invalidateAll);
+    }
+
+    /**
+     * Rebuilds the sketches once the application is up if they were stored with another precision.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildAfterPrecisionChange() {
+        if (sketchRepository.isPrecisionChanged()) {
+            aggregateRebuilder.start(true, statisticCache::invalidateAll);
+        }
+    }
+
+    @Override
+    public RebuildStatusDto getRebuildStatus() {
+        return aggregateRebuilder.getStatus();
+    }
+
+    private Map<AppUri, Map<LocalDateTime, Long>> countUniqueSeries(SeriesGranularity series, LocalDateTime from,
+                                                                    LocalDateTime to, List<String> uris) {
+        Map<AppUri, Map<LocalDateTime, Long>> uniqueHits = new HashMap<>();
+        if (series == SeriesGranularity.MINUTE) {
+            for (BucketCount bucket : hitStorage.countUniqueHitsByMinute(from, to, uris)) {
+                uniqueHits.computeIfAbsent(AppUri.of(bucket.getApp(), bucket.getUri()), key -> new HashMap<>())
+                        .put(bucket.getBucket(), bucket.getHits());
+            }
+            return uniqueHits;
+        }
+        Map<AppUri, Map<LocalDateTime, HyperLogLog>> sketches = new HashMap<>();
+        SketchRepository.SketchHandler handler = (appUri, bucketStart, sketch) ->
+                sketches.computeIfAbsent(appUri, key -> new HashMap<>())
+                        .merge(series.floor(bucketStart), sketch, (left, right) -> {
+                            left.merge(right);
+                            return left;
+                        });
+        liveSketches.forEachUnflushed(series.getStoredAs(), from, to, uris, handler);
+        sketchRepository.forEachSketch(series.getStoredAs(), from, to, uris, handler);
+        sketches.forEach((appUri, buckets) -> buckets.forEach((bucket, sketch) ->
+                uniqueHits.computeIfAbsent(appUri, key -> new HashMap<>()).put(bucket, sketch.estimate())));
+        return uniqueHits;
+    }
+
+    private Collection<ViewStats> countFromRollups(List<TimeSlice> slices, List<String> uris, boolean live) {
+        GroupIndex groups = new GroupIndex();
+        LongLongMap hits = liveCounters.readConsistently(() -> sliceExecutor.aggregate(slices, LongLongMap::new,
+                slice -> {
+                    LongLongMap counts = new LongLongMap();
+                    if (slice.isRaw()) {
+                        countRaw(slice.getFrom(), slice.getTo(), uris, false).forEach(viewStats -> counts.addTo(
+                                groups.idOf(AppUri.of(viewStats.getApp(), viewStats.getUri())), viewStats.getHits()));
+                        return counts;
+                    }
+                    rollupRepository.sumHits(slice.getGranularity(), slice.getFrom(), slice.getTo(), uris)
+                            .forEach(viewStats -> counts.addTo(
+                                    groups.idOf(AppUri.of(viewStats.getApp(), viewStats.getUri())),
+                                    viewStats.getHits()));
+                    if (live) {
+                        liveCounters.unflushedHits(slice.getFrom(), slice.getTo(), uris)
+                                .forEach((appUri, unflushed) -> counts.addTo(groups.idOf(appUri), unflushed));
+                    }
+                    return counts;
+                },
+                LongLongMap::addAll));
+        List<ViewStats> result = new ArrayList<>(hits.size());
+        hits.forEach((group, count) -> {
+            AppUri appUri = groups.groupOf(group);
+            result.add(new HitCount(appUri.getApp(), appUri.getUri(), count));
+        });
+        return result;
+    }
+
+    private Collection<ViewStats> countUniqueFromSketches(List<TimeSlice> slices, List<String> uris) {
+        Map<AppUri, HyperLogLog> sketches = sliceExecutor.aggregate(slices, HashMap::new, slice -> {
+            Map<AppUri, HyperLogLog> partial = new HashMap<>();
+            if (!slice.isRaw()) {
+                liveSketches.mergeUnflushedInto(partial, slice.getGranularity(), slice.getFrom(), slice.getTo(),
+                        uris);
+                sketchRepository.mergeInto(partial, slice.getGranularity(), slice.getFrom(), slice.getTo(), uris);
+                return partial;
+            }
+            for (HitAddress address : findAddresses(slice.getFrom(), slice.getTo(), uris)) {
+                if (address.getIp() != null) {
+                    partial.computeIfAbsent(AppUri.of(address.getApp(), address.getUri()),
+                            key -> new HyperLogLog(sketchProperties.getPrecision())).add(address.getIp());
+                }
+            }
+            return partial;
+        }, (left, right) -> {
+            right.forEach((appUri, sketch) -> left.merge(appUri, sketch, (mine, theirs) -> {
+                mine.merge(theirs);
+                return mine;
+            }));
+            return left;
+        });
+        return sketches.entrySet().stream()
+                .map(entry -> new HitCount(entry.getKey().getApp(), entry.getKey().getUri(),
+                        entry.getValue().estimate()))
                 .collect(Collectors.toList());
-        if (uris != null) {
-            viewStatsDtos = viewStatsDtos.stream()
-                    .filter(element -> {
-                        for (String i : uris) {
-                            if (element.getUri().equals(i)) {
-                                return true;
-                            }
-                        }
-                        return false;
-                    })
+    }
+
+    /**
+     * Unions the stored and unflushed bitmaps with the addresses of raw slices. An address of a raw slice that
+     * has no id yet is in no bitmap, so it is counted on its own instead of being given an id during the read.
+     */
+    private Collection<ViewStats> countUniqueFromBitmaps(List<TimeSlice> slices, List<String> uris) {
+        Map<AppUri, UniqueIps> uniques = sliceExecutor.aggregate(slices, HashMap::new, slice -> {
+            Map<AppUri, UniqueIps> partial = new HashMap<>();
+            if (!slice.isRaw()) {
+                Map<AppUri, CompressedBitmap> bitmaps = new HashMap<>();
+                liveBitmaps.orUnflushedInto(bitmaps, slice.getFrom(), slice.getTo(), uris);
+                bitmapRepository.orInto(bitmaps, slice.getFrom(), slice.getTo(), uris);
+                bitmaps.forEach((appUri, bitmap) -> partial.put(appUri, new UniqueIps(bitmap)));
+                return partial;
+            }
+            List<HitAddress> addresses = findAddresses(slice.getFrom(), slice.getTo(), uris).stream()
+                    .filter(address -> address.getIp() != null)
                     .collect(Collectors.toList());
+            Map<String, Integer> ipIds = ipDictionary.lookup(addresses.stream()
+                    .map(HitAddress::getIp)
+                    .collect(Collectors.toSet()));
+            for (HitAddress address : addresses) {
+                UniqueIps unique = partial.computeIfAbsent(AppUri.of(address.getApp(), address.getUri()),
+                        key -> new UniqueIps(new CompressedBitmap()));
+                Integer id = ipIds.get(address.getIp());
+                if (id != null) {
+                    unique.ids.add(id);
+                } else {
+                    unique.unknown.add(address.getIp());
+                }
+            }
+            return partial;
+        }, (left, right) -> {
+            right.forEach((appUri, unique) -> left.merge(appUri, unique, UniqueIps::merge));
+            return left;
+        });
+        return uniques.entrySet().stream()
+                .map(entry -> new HitCount(entry.getKey().getApp(), entry.getKey().getUri(),
+                        entry.getValue().ids.cardinality() + entry.getValue().unknown.size()))
+                .collect(Collectors.toList());
+    }
+
+    private List<HitAddress> findAddresses(LocalDateTime from, LocalDateTime to, List<String> uris) {
+        return hitStorage.findAddresses(from, to, uris);
+    }
+
+    private List<ViewStats> countRaw(LocalDateTime from, LocalDateTime to, List<String> uris, boolean unique) {
+        return unique
+                ? hitStorage.countUniqueHits(from, to, uris)
+                : hitStorage.countHits(from, to, uris);
+    }
+
+    private static class UniqueIps {
+        private final CompressedBitmap ids;
+        private final Set<String> unknown = new HashSet<>();
+
+        UniqueIps(CompressedBitmap ids) {
+            this.ids = ids;
         }
-        if (unique) {
-             Set<ViewStatsDto> uniqueViewPointDto = new HashSet<>(viewStatsDtos);
-             return uniqueViewPointDto.stream().collect(Collectors.toList());
+
+        UniqueIps merge(UniqueIps other) {
+            ids.or(other.ids);
+            unknown.addAll(other.unknown);
+            return this;
         }
-        return viewStatsDtos;
     }
 }
@@ -0,0 +1,59 @@
+package ru.practicum.statistic.service;
+
+import ru.practicum.statistic.storage.HitDictionary;
+
+import java.util.*;
+
+/**
+ * Uri filters of /stats may end with {@code *} to select every known uri with the given prefix,
+ * e.g. {@code /events/*}. Patterns are expanded through the uri trie of {@link HitDictionary}. A broad prefix
+ * can expand to more uris than a statement has bind parameters, so the repositories bind the expansion as a
+ * single array parameter ({@code = any(:uris)}) rather than one parameter per uri.
+ */
+public final class UriPatterns {
+    private static final String WILDCARD = "*";
+
+    private UriPatterns() {
+    }
+
+    public static boolean isPrefixPattern(String uri) {
+        return uri.endsWith(WILDCARD);
+    }
+
+    public static String prefixOf(String pattern) {
+        return pattern.substring(0, pattern.length() - WILDCARD.length());
+    }
+
+    public static boolean matches(Collection<String> uris, String uri) {
+        if (uris == null || uris.isEmpty()) {
+            return true;
+        }
+        if (uri == null) {
+            return false;
+        }
+        for (String filter : uris) {
+            if (isPrefixPattern(filter) ? uri.startsWith(prefixOf(filter)) : uri.equals(filter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns {@code null} when there is no filter and an empty list when no known uri matches it.
+     */
+    public static List<String> expand(Collection<String> uris, HitDictionary hitDictionary) {
+        if (uris == null || uris.isEmpty()) {
+            return null;
+        }
+        Set<String> expanded = new TreeSet<>();
+        for (String uri : uris) {
+            if (isPrefixPattern(uri)) {
+                expanded.addAll(hitDictionary.findUrisByPrefix(prefixOf(uri)));
+            } else {
+                expanded.add(uri);
+            }
+        }
+        return new ArrayList<>(expanded);
+    }
+}
@@ -0,0 +1,347 @@
+package ru.practicum.statistic.shard;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+import ru.practicum.statistic.aggregate.AppUri;
+import ru.practicum.statistic.aggregate.UniqueMode;
+import ru.practicum.statistic.dto.EndpointHitDto;
+import ru.practicum.statistic.dto.EventViewsDto;
+import ru.practicum.statistic.dto.StatsQueryDto;
+import ru.practicum.statistic.dto.ViewStatsDto;
+import ru.practicum.statistic.exceptions.PartialShardWriteException;
+import ru.practicum.statistic.exceptions.ShardUnavailableException;
+import ru.practicum.statistic.exceptions.ShardingUnsupportedException;
+import ru.practicum.statistic.service.StatisticService;
+import ru.practicum.statistic.service.UriPatterns;
+import ru.practicum.statistic.storage.IpAddresses;
+
+import javax.annotation.PreDestroy;
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Routes hits and statistic queries across a static map of shards, each owning the uris whose hash
+ * falls on its index. Hits are forwarded to the owning shard; queries are scattered to every shard
+ * that can own a requested uri and the partial results are merged. Because a uri lives on exactly one
+ * shard, per-uri counts (including unique counts) from different shards are disjoint and simply add up.
+ * Requests between shards carry {@link #LOCAL_HEADER} so the receiving shard answers from its own data.
+ * A batch of hits that only some shards stored is reported with the positions of the hits that were not
+ * stored, so the client retries those alone instead of the whole batch.
+ */
+@Slf4j
+@Component
+public class ShardCoordinator {
+    public static final String LOCAL_HEADER = "X-Statistic-Local";
+    private static final String EVENT_PREFIX = "/events/";
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final ShardProperties properties;
+    private final StatisticService statisticService;
+    private final RestTemplate restTemplate;
+    private final ExecutorService executor;
+
+    public ShardCoordinator(ShardProperties properties, StatisticService statisticService,
+                            RestTemplateBuilder restTemplateBuilder) {
+        this.properties = properties;
+        this.statisticService = statisticService;
+        this.restTemplate = restTemplateBuilder
+                .setConnectTimeout(properties.getTimeout())
+                .setReadTimeout(properties.getTimeout())
+                .build();
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = isSharded() ? Executors.newFixedThreadPool(properties.getThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "statistic-shard-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    @PreDestroy
+    void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public boolean isSharded() {
+        return properties.getNodes().size() > 1;
+    }
+
+    public int shardOf(String uri) {
+        int hash = uri != null ? uri.hashCode() : 0;
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return Math.floorMod(hash, properties.getNodes().size());
+    }
+
+    public void postStatistic(EndpointHitDto endpointHitDto) {
+        IpAddresses.requireLiterals(Collections.singletonList(endpointHitDto.getIp()));
+        int shard = isSharded() ? shardOf(endpointHitDto.getUri()) : properties.getSelf();
+        if (shard == properties.getSelf()) {
+            statisticService.postStatistic(endpointHitDto);
+            return;
+        }
+        post(shard, "/hit", endpointHitDto);
+    }
+
+    public void postStatistics(List<EndpointHitDto> endpointHitDtos) {
+        if (!isSharded()) {
+            statisticService.postStatistics(endpointHitDtos);
+            return;
+        }
+        IpAddresses.requireLiterals(endpointHitDtos.stream()
+                .map(EndpointHitDto::getIp)
+                .collect(Collectors.toList()));
+        Map<Integer, List<Integer>> positionsByShard = new TreeMap<>();
+        for (int i = 0; i < endpointHitDtos.size(); i++) {
+            positionsByShard.computeIfAbsent(shardOf(endpointHitDtos.get(i).getUri()), shard -> new ArrayList<>())
+                    .add(i);
+        }
+        Map<Integer, Future<?>> futures = new TreeMap<>();
+        positionsByShard.forEach((shard, positions) -> {
+            List<EndpointHitDto> hits = positions.stream()
+                    .map(endpointHitDtos::get)
+                    .collect(Collectors.toList());
+            futures.put(shard, executor.submit(() -> {
+                if (shard == properties.getSelf()) {
+                    statisticService.postStatistics(hits);
+                } else {
+                    post(shard, "/hits", hits);
+                }
+            }));
+        });
+        List<Integer> rejected = new ArrayList<>();
+        RuntimeException failure = null;
+        for (Map.Entry<Integer, Future<?>> future : futures.entrySet()) {
+            try {
+                future.getValue().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ShardUnavailableException("Interrupted while waiting for shard " + future.getKey() + ".", e);
+            } catch (ExecutionException e) {
+                log.warn("Shard {} did not store {} hits", future.getKey(), positionsByShard.get(future.getKey()).size(),
+                        e.getCause());
+                failure = e.getCause() instanceof RuntimeException
+                        ? (RuntimeException) e.getCause()
+                        : new ShardUnavailableException("Shard " + future.getKey() + " failed.", e.getCause());
+                rejected.addAll(positionsByShard.get(future.getKey()));
+            }
+        }
+        if (failure == null) {
+            return;
+        }
+        if (rejected.size() == endpointHitDtos.size()) {
+            throw failure;
+        }
+        Collections.sort(rejected);
+        throw new PartialShardWriteException(rejected.size() + " of " + endpointHitDtos.size()
+                + " hits were not stored, the rest were.", rejected);
+    }
+
+    public List<ViewStatsDto> getStatistic(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                           Boolean unique, UniqueMode uniqueMode) {
+        if (!isSharded() || start == null || end == null) {
+            return statisticService.getStatistic(start, end, uris, unique, uniqueMode);
+        }
+        Map<Integer, Supplier<List<ViewStatsDto>>> calls = new HashMap<>();
+        urisByShard(uris).forEach((shard, shardUris) -> calls.put(shard, shard == properties.getSelf()
+                ? () -> statisticService.getStatistic(start, end, shardUris, unique, uniqueMode)
+                : () -> fetchStatistic(shard, start, end, shardUris, unique, uniqueMode)));
+        return merge(scatter(calls).values());
+    }
+
+    public void streamStatistic(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                                Consumer<ViewStatsDto> consumer) {
+        if (!isSharded() || start == null || end == null) {
+            statisticService.streamStatistic(start, end, uris, unique, consumer);
+            return;
+        }
+        getStatistic(start, end, uris, unique, UniqueMode.EXACT).forEach(consumer);
+    }
+
+    public List<EventViewsDto> getEventViews(List<Long> eventIds) {
+        if (!isSharded()) {
+            return statisticService.getEventViews(eventIds);
+        }
+        Map<Integer, List<Long>> idsByShard = eventIds.stream()
+                .distinct()
+                .collect(Collectors.groupingBy(eventId -> shardOf(EVENT_PREFIX + eventId)));
+        Map<Integer, Supplier<List<EventViewsDto>>> calls = new HashMap<>();
+        idsByShard.forEach((shard, ids) -> calls.put(shard, shard == properties.getSelf()
+                ? () -> statisticService.getEventViews(ids)
+                : () -> fetchEventViews(shard, ids)));
+        Map<Long, Long> views = new HashMap<>();
+        scatter(calls).values().forEach(partial -> partial.forEach(eventViews ->
+                views.put(eventViews.getEventId(), eventViews.getViews())));
+        return eventIds.stream()
+                .map(eventId -> EventViewsDto.builder()
+                        .eventId(eventId)
+                        .views(views.getOrDefault(eventId, 0L))
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Rejects a request that only has a per-shard answer, such as an approximate top-k, a time series with
+     * unique counts across uris or an admin action, unless it was addressed to this shard explicitly with
+     * {@link #LOCAL_HEADER}.
+     */
+    public void requireLocal(String request, boolean local) {
+        if (isSharded() && !local) {
+            throw new ShardingUnsupportedException(request + " is answered per shard, send it to each shard with "
+                    + LOCAL_HEADER + ": true.");
+        }
+    }
+
+    public List<List<ViewStatsDto>> getStatistics(List<StatsQueryDto> queries) {
+        if (!isSharded()) {
+            return statisticService.getStatistics(queries);
+        }
+        Map<Integer, Supplier<List<List<ViewStatsDto>>>> calls = new HashMap<>();
+        for (int shard = 0; shard < properties.getNodes().size(); shard++) {
+            int target = shard;
+            calls.put(shard, shard == properties.getSelf()
+                    ? () -> statisticService.getStatistics(queries)
+                    : () -> Arrays.stream(post(target, "/stats/query", queries, ViewStatsDto[][].class))
+                    .map(Arrays::asList)
+                    .collect(Collectors.toList()));
+        }
+        Collection<List<List<ViewStatsDto>>> partials = scatter(calls).values();
+        List<List<ViewStatsDto>> results = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            List<List<ViewStatsDto>> parts = new ArrayList<>(partials.size());
+            for (List<List<ViewStatsDto>> partial : partials) {
+                parts.add(partial.get(i));
+            }
+            results.add(merge(parts));
+        }
+        return results;
+    }
+
+    private Map<Integer, List<String>> urisByShard(List<String> uris) {
+        Map<Integer, List<String>> byShard = new TreeMap<>();
+        boolean everywhere = uris == null || uris.isEmpty() || uris.stream().anyMatch(UriPatterns::isPrefixPattern);
+        if (everywhere) {
+            for (int shard = 0; shard < properties.getNodes().size(); shard++) {
+                byShard.put(shard, uris);
+            }
+            return byShard;
+        }
+        for (String uri : uris) {
+            byShard.computeIfAbsent(shardOf(uri), shard -> new ArrayList<>()).add(uri);
+        }
+        return byShard;
+    }
+
+    private List<ViewStatsDto> fetchStatistic(int shard, LocalDateTime start, LocalDateTime end, List<String> uris,
+                                              Boolean unique, UniqueMode uniqueMode) {
+        UriComponentsBuilder uri = UriComponentsBuilder.fromHttpUrl(properties.getNodes().get(shard))
+                .path("/stats")
+                .queryParam("start", start.format(DATE_TIME_FORMAT))
+                .queryParam("end", end.format(DATE_TIME_FORMAT))
+                .queryParam("unique", Boolean.TRUE.equals(unique));
+        if (uniqueMode != null) {
+            uri.queryParam("uniqueMode", uniqueMode);
+        }
+        if (uris != null && !uris.isEmpty()) {
+            uri.queryParam("uris", uris.toArray());
+        }
+        try {
+            ViewStatsDto[] stats = restTemplate.exchange(uri.encode().build().toUri(), HttpMethod.GET,
+                    new HttpEntity<>(localHeaders()), ViewStatsDto[].class).getBody();
+            return stats != null ? Arrays.asList(stats) : Collections.emptyList();
+        } catch (RestClientException e) {
+            throw new ShardUnavailableException("Shard " + shard + " did not answer a statistic query.", e);
+        }
+    }
+
+    private List<EventViewsDto> fetchEventViews(int shard, List<Long> eventIds) {
+        URI uri = UriComponentsBuilder.fromHttpUrl(properties.getNodes().get(shard))
+                .path("/stats/events")
+                .queryParam("ids", eventIds.toArray())
+                .encode().build().toUri();
+        try {
+            EventViewsDto[] views = restTemplate.exchange(uri, HttpMethod.GET,
+                    new HttpEntity<>(localHeaders()), EventViewsDto[].class).getBody();
+            return views != null ? Arrays.asList(views) : Collections.emptyList();
+        } catch (RestClientException e) {
+            throw new ShardUnavailableException("Shard " + shard + " did not answer an event views query.", e);
+        }
+    }
+
+    private Object post(int shard, String path, Object body) {
+        return post(shard, path, body, Void.class);
+    }
+
+    private <T> T post(int shard, String path, Object body, Class<T> responseType) {
+        try {
+            return restTemplate.postForObject(properties.getNodes().get(shard) + path,
+                    new HttpEntity<>(body, localHeaders()), responseType);
+        } catch (RestClientException e) {
+            throw new ShardUnavailableException("Shard " + shard + " did not accept " + path + ".", e);
+        }
+    }
+
+    private <T> Map<Integer, T> scatter(Map<Integer, Supplier<T>> calls) {
+        Map<Integer, Future<T>> futures = new TreeMap<>();
+        calls.forEach((shard, call) -> futures.put(shard, executor.submit(call::get)));
+        Map<Integer, T> results = new TreeMap<>();
+        for (Map.Entry<Integer, Future<T>> future : futures.entrySet()) {
+            try {
+                results.put(future.getKey(), future.getValue().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.values().forEach(pending -> pending.cancel(true));
+                throw new ShardUnavailableException("Interrupted while waiting for shard " + future.getKey() + ".", e);
+            } catch (ExecutionException e) {
+                futures.values().forEach(pending -> pending.cancel(true));
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new ShardUnavailableException("Shard " + future.getKey() + " failed.", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    private static List<ViewStatsDto> merge(Collection<List<ViewStatsDto>> partials) {
+        Map<AppUri, Long> hits = new HashMap<>();
+        for (List<ViewStatsDto> partial : partials) {
+            for (ViewStatsDto viewStats : partial) {
+                hits.merge(new AppUri(viewStats.getApp(), viewStats.getUri()), viewStats.getHits(), Long::sum);
+            }
+        }
+        return hits.entrySet().stream()
+                .sorted(Map.Entry.<AppUri, Long>comparingByValue().reversed())
+                .map(hit -> ViewStatsDto.builder()
+                        .app(hit.getKey().getApp())
+                        .uri(hit.getKey().getUri())
+                        .hits(hit.getValue())
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    private static HttpHeaders localHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(LOCAL_HEADER, "true");
+        return headers;
+    }
+}
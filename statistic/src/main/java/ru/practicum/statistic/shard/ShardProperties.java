@@ -0,0 +1,21 @@
+package ru.practicum.statistic.shard;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "statistic.shard")
+public class ShardProperties {
+    private List<String> nodes = new ArrayList<>();
+    private int self = 0;
+    private int threads = 8;
+    private Duration timeout = Duration.ofSeconds(10);
+}
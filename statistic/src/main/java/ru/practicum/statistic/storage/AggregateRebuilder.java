@@ -0,0 +1,411 @@
+package ru.practicum.statistic.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.statistic.aggregate.AppUri;
+import ru.practicum.statistic.aggregate.BucketKey;
+import ru.practicum.statistic.aggregate.Granularity;
+import ru.practicum.statistic.aggregate.HyperLogLog;
+import ru.practicum.statistic.aggregate.LiveCounters;
+import ru.practicum.statistic.aggregate.LiveSketches;
+import ru.practicum.statistic.aggregate.SketchProperties;
+import ru.practicum.statistic.dto.RebuildStatusDto;
+import ru.practicum.statistic.exceptions.RebuildRejectedException;
+import ru.practicum.statistic.model.EndpointHit;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Regenerates the rollups and unique-count sketches from the raw {@code statistic} table, e.g. after a counting
+ * fix or a change of sketch precision. Whole days are rebuilt in parallel into the shadow tables
+ * {@code statistic_rollup_rebuild} and {@code statistic_sketch_rebuild}, each day read in {@code created_on}
+ * order through a cursor, at no more than max-rows-per-second rows in total so that ingestion keeps up.
+ * Days that receive hits while the rebuild runs are rebuilt again afterwards, and only those days.
+ * <p>
+ * The swap holds off ingestion until the write batches in flight have committed, then in one transaction
+ * flushes the live counters and sketches, locks both live tables, rebuilds the days that received hits since
+ * the last pass, copies the buckets the rebuild does not cover (days before the compacted raw horizon, and
+ * today) from the live tables and renames the shadow tables into place. Every hit is therefore counted either in a
+ * rebuilt day or in a flushed counter, never in both.
+ */
+@Slf4j
+@Component
+public class AggregateRebuilder {
+    private static final String[] TABLES = {"statistic_rollup", "statistic_sketch"};
+    private static final String DROP_SHADOW = "drop table if exists %s_rebuild";
+    private static final String CREATE_SHADOW = "create table %1$s_rebuild (like %1$s including all)";
+    private static final String CLEAR_DAY = "delete from %s_rebuild where bucket_start >= ? and bucket_start < ?";
+    private static final String STREAM_DAY = "select h.app_id, h.uri_id, h.ip, h.created_on, h.weight " +
+            "from statistic h where h.created_on >= ? and h.created_on < ? order by h.created_on";
+    private static final String INSERT_ROLLUP = "insert into statistic_rollup_rebuild " +
+            "(granularity, bucket_start, app, uri, hits) values (?, ?, ?, ?, ?)";
+    private static final String INSERT_SKETCH = "insert into statistic_sketch_rebuild " +
+            "(granularity, bucket_start, app, uri, registers) values (?, ?, ?, ?, ?)";
+    private static final String LOCK_LIVE = "lock table statistic_rollup, statistic_sketch in access exclusive mode";
+    private static final String COPY_UNCOVERED = "insert into %1$s_rebuild select * from %1$s " +
+            "where bucket_start < ? or bucket_start >= ?";
+    private static final String DROP_OTHER_PRECISION = "delete from statistic_sketch_rebuild " +
+            "where length(registers) <> ?";
+    private static final String RENAME = "alter table %s rename to %s";
+    private static final String DROP = "drop table %s";
+    private static final String FIND_PRIMARY_KEY = "select conname from pg_constraint " +
+            "where conrelid = ?::regclass and contype = 'p'";
+    private static final String RENAME_PRIMARY_KEY = "alter table %1$s rename constraint %2$s to %1$s_pkey";
+    private static final int CATCH_UP_PASSES = 3;
+    private static final int THROTTLE_ROWS = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate cursorTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final HitStorage hitStorage;
+    private final HitDictionary hitDictionary;
+    private final RawHitCompactor rawHitCompactor;
+    private final LiveCounters liveCounters;
+    private final LiveSketches liveSketches;
+    private final SketchProperties sketchProperties;
+    private final RebuildProperties properties;
+    private final ForkJoinPool pool;
+    private final Object throttleLock = new Object();
+    private final Set<LocalDateTime> lateDays = ConcurrentHashMap.newKeySet();
+    private final ReadWriteLock commitLock = new ReentrantReadWriteLock();
+    private final AtomicInteger days = new AtomicInteger();
+    private final AtomicInteger daysRebuilt = new AtomicInteger();
+    private final AtomicLong rowsRead = new AtomicLong();
+    private volatile RebuildState state = RebuildState.IDLE;
+    private volatile LocalDateTime startedOn;
+    private volatile LocalDateTime finishedOn;
+    private volatile String error;
+    private long throttledUntil;
+
+    public AggregateRebuilder(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                              HitStorage hitStorage, HitDictionary hitDictionary, RawHitCompactor rawHitCompactor,
+                              LiveCounters liveCounters, LiveSketches liveSketches,
+                              SketchProperties sketchProperties, RebuildProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cursorTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.cursorTemplate.setFetchSize(properties.getFetchSize());
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.hitStorage = hitStorage;
+        this.hitDictionary = hitDictionary;
+        this.rawHitCompactor = rawHitCompactor;
+        this.liveCounters = liveCounters;
+        this.liveSketches = liveSketches;
+        this.sketchProperties = sketchProperties;
+        this.properties = properties;
+        this.pool = new ForkJoinPool(Math.max(1, properties.getParallelism()));
+    }
+
+    @PreDestroy
+    void stop() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Starts a rebuild in the background; {@code afterSwap} runs once the rebuilt tables are in place.
+     */
+    public RebuildStatusDto start(Runnable afterSwap) {
+        return start(false, afterSwap);
+    }
+
+    /**
+     * Starts a rebuild that, with {@code throughToday}, also rebuilds the current day instead of copying its
+     * live buckets, as needed when those cannot be kept, e.g. after a change of sketch precision.
+     */
+    public synchronized RebuildStatusDto start(boolean throughToday, Runnable afterSwap) {
+        if (!hitStorage.isRelational()) {
+            throw new RebuildRejectedException("Aggregates are rebuilt from the statistic table, " +
+                    "which the configured storage backend does not use.");
+        }
+        if (state == RebuildState.RUNNING || state == RebuildState.SWAPPING) {
+            throw new RebuildRejectedException("An aggregate rebuild is already running.");
+        }
+        state = RebuildState.RUNNING;
+        startedOn = LocalDateTime.now();
+        finishedOn = null;
+        error = null;
+        lateDays.clear();
+        days.set(0);
+        daysRebuilt.set(0);
+        rowsRead.set(0);
+        new Thread(() -> run(throughToday, afterSwap), "aggregate-rebuild").start();
+        return getStatus();
+    }
+
+    public RebuildStatusDto getStatus() {
+        return RebuildStatusDto.builder()
+                .state(state)
+                .startedOn(startedOn)
+                .finishedOn(finishedOn)
+                .days(days.get())
+                .daysRebuilt(daysRebuilt.get())
+                .rowsRead(rowsRead.get())
+                .error(error)
+                .build();
+    }
+
+    /**
+     * Called before a write batch touches the database; the swap waits for every batch begun to complete.
+     */
+    public void beginCommit() {
+        commitLock.readLock().lock();
+    }
+
+    public void endCommit() {
+        commitLock.readLock().unlock();
+    }
+
+    /**
+     * Notes committed hits while a rebuild runs, so that the days they belong to are rebuilt again.
+     */
+    public void track(List<EndpointHit> endpointHits) {
+        if (state != RebuildState.RUNNING && state != RebuildState.SWAPPING) {
+            return;
+        }
+        for (EndpointHit hit : endpointHits) {
+            if (hit.getCreatedOn() != null) {
+                lateDays.add(Granularity.DAY.floor(hit.getCreatedOn()));
+            }
+        }
+    }
+
+    private void run(boolean throughToday, Runnable afterSwap) {
+        rawHitCompactor.pause();
+        try {
+            LocalDateTime horizon = rawHitCompactor.getRawHorizon();
+            LocalDateTime oldest = hitStorage.findOldest();
+            LocalDateTime today = Granularity.DAY.floor(LocalDateTime.now());
+            LocalDateTime until = throughToday ? Granularity.DAY.next(today) : today;
+            LocalDateTime from = horizon != null ? Granularity.DAY.ceil(horizon)
+                    : oldest != null ? Granularity.DAY.floor(oldest) : until;
+            if (from.isAfter(until)) {
+                from = until;
+            }
+            for (String table : TABLES) {
+                jdbcTemplate.execute(String.format(DROP_SHADOW, table));
+                jdbcTemplate.execute(String.format(CREATE_SHADOW, table));
+            }
+            List<LocalDateTime> dayStarts = new ArrayList<>();
+            for (LocalDateTime day = from; day.isBefore(until); day = Granularity.DAY.next(day)) {
+                dayStarts.add(day);
+            }
+            rebuildDays(dayStarts);
+            for (int pass = 0; pass < CATCH_UP_PASSES; pass++) {
+                List<LocalDateTime> late = drainLateDays(from, until);
+                if (late.isEmpty()) {
+                    break;
+                }
+                rebuildDays(late);
+            }
+            state = RebuildState.SWAPPING;
+            swap(from, until);
+            state = RebuildState.COMPLETED;
+            afterSwap.run();
+            log.info("Rebuilt aggregates of {} days from {} to {}, read {} raw hits",
+                    daysRebuilt.get(), from, until, rowsRead.get());
+        } catch (RuntimeException e) {
+            log.warn("Aggregate rebuild failed", e);
+            error = e.getMessage();
+            state = RebuildState.FAILED;
+            dropShadowTables();
+        } finally {
+            finishedOn = LocalDateTime.now();
+            rawHitCompactor.resume();
+        }
+    }
+
+    private List<LocalDateTime> drainLateDays(LocalDateTime from, LocalDateTime until) {
+        List<LocalDateTime> drained = new ArrayList<>();
+        for (Iterator<LocalDateTime> iterator = lateDays.iterator(); iterator.hasNext(); ) {
+            LocalDateTime day = iterator.next();
+            iterator.remove();
+            if (!day.isBefore(from) && day.isBefore(until)) {
+                drained.add(day);
+            }
+        }
+        Collections.sort(drained);
+        return drained;
+    }
+
+    private void rebuildDays(List<LocalDateTime> dayStarts) {
+        days.addAndGet(dayStarts.size());
+        if (dayStarts.size() <= 1 || properties.getParallelism() <= 1) {
+            dayStarts.forEach(day -> rebuildDay(day, true));
+            return;
+        }
+        try {
+            pool.submit(() -> dayStarts.parallelStream().forEach(day -> rebuildDay(day, true))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while rebuilding aggregates", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Replaces the shadow rows of one day with ones computed from its raw hits. Every bucket of every
+     * granularity lies within a single day, so days can be rebuilt independently of each other. The hits
+     * arrive in {@code created_on} order, so the minute and hour buckets are written as soon as their hour
+     * closes and only the day buckets are kept for the whole day.
+     */
+    private void rebuildDay(LocalDateTime day, boolean throttled) {
+        Timestamp from = Timestamp.valueOf(day);
+        Timestamp to = Timestamp.valueOf(Granularity.DAY.next(day));
+        Map<BucketKey, Long> hourHits = new TreeMap<>();
+        Map<BucketKey, HyperLogLog> hourSketches = new TreeMap<>();
+        Map<BucketKey, Long> dayHits = new TreeMap<>();
+        Map<BucketKey, HyperLogLog> daySketches = new TreeMap<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            for (String table : TABLES) {
+                jdbcTemplate.update(String.format(CLEAR_DAY, table), from, to);
+            }
+            int[] unthrottled = {0};
+            LocalDateTime[] hour = {null};
+            cursorTemplate.query(STREAM_DAY, rs -> {
+                if (throttled && ++unthrottled[0] == THROTTLE_ROWS) {
+                    throttle(unthrottled[0]);
+                    unthrottled[0] = 0;
+                }
+                rowsRead.incrementAndGet();
+                LocalDateTime createdOn = rs.getTimestamp("created_on").toLocalDateTime();
+                LocalDateTime hourStart = Granularity.HOUR.floor(createdOn);
+                if (!hourStart.equals(hour[0])) {
+                    insertShadowRows(hourHits, hourSketches);
+                    hour[0] = hourStart;
+                }
+                String app = hitDictionary.appOf((Integer) rs.getObject("app_id"));
+                String uri = hitDictionary.uriOf((Integer) rs.getObject("uri_id"));
+                if (app == null || uri == null) {
+                    return;
+                }
+                AppUri appUri = AppUri.of(app, uri);
+                for (Granularity granularity : Granularity.values()) {
+                    (granularity == Granularity.DAY ? dayHits : hourHits).merge(
+                            new BucketKey(granularity, granularity.floor(createdOn), appUri),
+                            (long) rs.getInt("weight"), Long::sum);
+                }
+                String ip = IpAddresses.format(rs.getBytes("ip"));
+                if (ip != null) {
+                    for (Granularity granularity : SketchRepository.SKETCH_GRANULARITIES) {
+                        (granularity == Granularity.DAY ? daySketches : hourSketches).computeIfAbsent(
+                                new BucketKey(granularity, granularity.floor(createdOn), appUri),
+                                key -> new HyperLogLog(sketchProperties.getPrecision())).add(ip);
+                    }
+                }
+            }, from, to);
+            insertShadowRows(hourHits, hourSketches);
+            insertShadowRows(dayHits, daySketches);
+        });
+        daysRebuilt.incrementAndGet();
+    }
+
+    private void insertShadowRows(Map<BucketKey, Long> hits, Map<BucketKey, HyperLogLog> sketches) {
+        jdbcTemplate.batchUpdate(INSERT_ROLLUP, hits.entrySet().stream()
+                .map(entry -> rowOf(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList()));
+        jdbcTemplate.batchUpdate(INSERT_SKETCH, sketches.entrySet().stream()
+                .map(entry -> rowOf(entry.getKey(), entry.getValue().toBytes()))
+                .collect(Collectors.toList()));
+        hits.clear();
+        sketches.clear();
+    }
+
+    private void swap(LocalDateTime from, LocalDateTime until) {
+        commitLock.writeLock().lock();
+        try {
+            transactionTemplate.executeWithoutResult(status -> replaceLiveTables(from, until));
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+    }
+
+    private void replaceLiveTables(LocalDateTime from, LocalDateTime until) {
+        liveCounters.flushInCurrentTransaction();
+        liveSketches.flushInCurrentTransaction();
+        jdbcTemplate.execute(LOCK_LIVE);
+        for (LocalDateTime day : drainLateDays(from, until)) {
+            days.incrementAndGet();
+            rebuildDay(day, false);
+        }
+        for (String table : TABLES) {
+            jdbcTemplate.update(String.format(COPY_UNCOVERED, table), Timestamp.valueOf(from),
+                    Timestamp.valueOf(until));
+            if (table.equals("statistic_sketch")) {
+                dropOtherPrecision();
+            }
+            jdbcTemplate.execute(String.format(RENAME, table, table + "_replaced"));
+            jdbcTemplate.execute(String.format(RENAME, table + "_rebuild", table));
+            jdbcTemplate.execute(String.format(DROP, table + "_replaced"));
+            String primaryKey = jdbcTemplate.queryForObject(FIND_PRIMARY_KEY, String.class, table);
+            jdbcTemplate.execute(String.format(RENAME_PRIMARY_KEY, table, primaryKey));
+        }
+    }
+
+    /**
+     * Drops copied sketches of another precision, i.e. those outside the rebuilt days after a precision
+     * change, such as the ones of compacted days, which can no longer be rebuilt and would not merge.
+     */
+    private void dropOtherPrecision() {
+        int dropped = jdbcTemplate.update(DROP_OTHER_PRECISION, 1 << sketchProperties.getPrecision());
+        if (dropped > 0) {
+            log.warn("Dropped {} sketches of another precision that could not be rebuilt", dropped);
+        }
+    }
+
+    private void dropShadowTables() {
+        try {
+            for (String table : TABLES) {
+                jdbcTemplate.execute(String.format(DROP_SHADOW, table));
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not drop the aggregate rebuild tables", e);
+        }
+    }
+
+    /**
+     * Sleeps as long as needed to keep all rebuild workers together under max-rows-per-second.
+     */
+    private void throttle(int rows) {
+        if (properties.getMaxRowsPerSecond() <= 0) {
+            return;
+        }
+        long wait;
+        synchronized (throttleLock) {
+            long now = System.nanoTime();
+            throttledUntil = Math.max(throttledUntil, now)
+                    + TimeUnit.SECONDS.toNanos(rows) / properties.getMaxRowsPerSecond();
+            wait = throttledUntil - now;
+        }
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while rebuilding aggregates", e);
+            }
+        }
+    }
+
+    private static Object[] rowOf(BucketKey key, Object value) {
+        return new Object[]{key.getGranularity().name(), Timestamp.valueOf(key.getBucketStart()),
+                key.getAppUri().getApp(), key.getAppUri().getUri(), value};
+    }
+}
@@ -0,0 +1,125 @@
+package ru.practicum.statistic.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+import ru.practicum.statistic.aggregate.AppUri;
+import ru.practicum.statistic.aggregate.BitmapProperties;
+import ru.practicum.statistic.aggregate.BucketKey;
+import ru.practicum.statistic.aggregate.CompressedBitmap;
+import ru.practicum.statistic.aggregate.Granularity;
+import ru.practicum.statistic.model.EndpointHit;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+@Repository
+@RequiredArgsConstructor
+public class BitmapRepository {
+    public static final Granularity BITMAP_GRANULARITY = Granularity.HOUR;
+
+    private static final String INSERT_EMPTY = "insert into statistic_bitmap (bucket_start, app, uri, ip_ids) " +
+            "values (:bucketStart, :app, :uri, :ipIds) on conflict (bucket_start, app, uri) do nothing";
+    private static final String LOCK_BITMAP = "select b.ip_ids from statistic_bitmap b " +
+            "where b.bucket_start = :bucketStart and b.app = :app and b.uri = :uri for update";
+    private static final String UPDATE_BITMAP = "update statistic_bitmap set ip_ids = :ipIds " +
+            "where bucket_start = :bucketStart and app = :app and uri = :uri";
+    private static final String FIND_BITMAPS = "select b.app, b.uri, b.ip_ids from statistic_bitmap b " +
+            "where b.bucket_start >= :from and b.bucket_start < :to ";
+    private static final String BY_URIS = "and b.uri = any(:uris)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final IpDictionary ipDictionary;
+    private final BitmapProperties properties;
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Ids of the addresses of the hits, assigning ids to new addresses in a transaction of their own. Callers
+     * intern before their write transaction so that it never waits for a second connection.
+     */
+    public Map<String, Integer> intern(List<EndpointHit> endpointHits) {
+        if (!properties.isEnabled()) {
+            return Collections.emptyMap();
+        }
+        Set<String> ips = endpointHits.stream()
+                .filter(hit -> hit.getCreatedOn() != null && hit.getAttributes() != null
+                        && hit.getAttributes().getIp() != null)
+                .map(hit -> hit.getAttributes().getIp())
+                .collect(Collectors.toSet());
+        return ips.isEmpty() ? Collections.emptyMap() : ipDictionary.intern(ips);
+    }
+
+    /**
+     * Interns the addresses and merges the hits straight into the stored bitmaps, for callers that already
+     * write within a transaction of their own.
+     */
+    public void add(List<EndpointHit> endpointHits) {
+        Map<String, Integer> ipIds = intern(endpointHits);
+        Map<BucketKey, CompressedBitmap> bitmaps = new TreeMap<>();
+        for (EndpointHit hit : endpointHits) {
+            Integer ipId = hit.getCreatedOn() != null ? ipIds.get(hit.getAttributes().getIp()) : null;
+            if (ipId != null) {
+                bitmaps.computeIfAbsent(new BucketKey(BITMAP_GRANULARITY,
+                                BITMAP_GRANULARITY.floor(hit.getCreatedOn()),
+                                AppUri.of(hit.getApp(), hit.getAttributes().getUri())),
+                        key -> new CompressedBitmap()
+                ).add(ipId);
+            }
+        }
+        merge(bitmaps);
+    }
+
+    /**
+     * Unions the bitmaps into the stored ones, inserting the buckets not stored yet. Rows are locked in key
+     * order so that concurrent merges cannot deadlock.
+     */
+    public void merge(Map<BucketKey, CompressedBitmap> bitmaps) {
+        if (bitmaps.isEmpty()) {
+            return;
+        }
+        Map<BucketKey, CompressedBitmap> ordered = new TreeMap<>(bitmaps);
+        byte[] empty = new CompressedBitmap().toBytes();
+        jdbcTemplate.batchUpdate(INSERT_EMPTY, ordered.keySet().stream()
+                .map(key -> paramsOf(key).addValue("ipIds", empty))
+                .toArray(SqlParameterSource[]::new));
+        List<SqlParameterSource> updates = new ArrayList<>();
+        for (Map.Entry<BucketKey, CompressedBitmap> entry : ordered.entrySet()) {
+            MapSqlParameterSource params = paramsOf(entry.getKey());
+            CompressedBitmap bitmap = CompressedBitmap.fromBytes(
+                    jdbcTemplate.queryForObject(LOCK_BITMAP, params, byte[].class));
+            bitmap.or(entry.getValue());
+            updates.add(params.addValue("ipIds", bitmap.toBytes()));
+        }
+        jdbcTemplate.batchUpdate(UPDATE_BITMAP, updates.toArray(new SqlParameterSource[0]));
+    }
+
+    public void orInto(Map<AppUri, CompressedBitmap> target, LocalDateTime from, LocalDateTime to,
+                       Collection<String> uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        String sql = FIND_BITMAPS;
+        if (uris != null && !uris.isEmpty()) {
+            sql += BY_URIS;
+            params.addValue("uris", uris.toArray(new String[0]));
+        }
+        jdbcTemplate.query(sql, params, rs -> {
+            target.computeIfAbsent(AppUri.of(rs.getString("app"), rs.getString("uri")),
+                    key -> new CompressedBitmap()).or(CompressedBitmap.fromBytes(rs.getBytes("ip_ids")));
+        });
+    }
+
+    private static MapSqlParameterSource paramsOf(BucketKey key) {
+        return new MapSqlParameterSource()
+                .addValue("bucketStart", Timestamp.valueOf(key.getBucketStart()))
+                .addValue("app", key.getAppUri().getApp())
+                .addValue("uri", key.getAppUri().getUri());
+    }
+}
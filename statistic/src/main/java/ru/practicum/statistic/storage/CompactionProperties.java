@@ -0,0 +1,20 @@
+package ru.practicum.statistic.storage;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "statistic.compaction")
+public class CompactionProperties {
+    private boolean enabled = false;
+    private Duration age = Duration.ofDays(30);
+    private int batchSize = 10000;
+    private int maxHoursPerRun = 24;
+    private String checkpointFile = "raw-compaction.watermark";
+}
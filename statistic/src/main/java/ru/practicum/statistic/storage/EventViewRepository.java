@@ -0,0 +1,46 @@
+package ru.practicum.statistic.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.statistic.aggregate.LongLongMap;
+
+import java.util.*;
+
+@Repository
+@RequiredArgsConstructor
+public class EventViewRepository {
+    private static final String UPSERT_VIEWS = "insert into statistic_event_views (event_id, views) values (?, ?) " +
+            "on conflict (event_id) do update set views = statistic_event_views.views + excluded.views";
+    private static final String FIND_VIEWS = "select v.event_id, v.views from statistic_event_views v " +
+            "where v.event_id in (:ids)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Transactional
+    public void increment(LongLongMap views) {
+        long[][] rows = new long[views.size()][];
+        int[] index = {0};
+        views.forEach((eventId, count) -> rows[index[0]++] = new long[]{eventId, count});
+        Arrays.sort(rows, Comparator.comparingLong(row -> row[0]));
+        JdbcTemplate template = jdbcTemplate.getJdbcTemplate();
+        template.batchUpdate(UPSERT_VIEWS, Arrays.asList(rows), rows.length, (ps, row) -> {
+            ps.setLong(1, row[0]);
+            ps.setLong(2, row[1]);
+        });
+    }
+
+    public Map<Long, Long> findViews(Collection<Long> eventIds) {
+        Map<Long, Long> views = new HashMap<>();
+        if (eventIds.isEmpty()) {
+            return views;
+        }
+        jdbcTemplate.query(FIND_VIEWS, new MapSqlParameterSource("ids", eventIds), rs -> {
+            views.put(rs.getLong("event_id"), rs.getLong("views"));
+        });
+        return views;
+    }
+}
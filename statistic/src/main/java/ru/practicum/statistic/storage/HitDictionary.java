@@ -0,0 +1,194 @@
+package ru.practicum.statistic.storage;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.statistic.aggregate.RadixTrie;
+import ru.practicum.statistic.model.EndpointHit;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns app names and uris into the {@code statistic_app} and {@code statistic_uri} tables so that
+ * hit rows only carry integer ids. Both directions are cached in memory; ids never change once assigned,
+ * so the caches are never invalidated. Uris are also indexed in a {@link RadixTrie} loaded on startup,
+ * which answers prefix lookups without scanning the table.
+ * <p>
+ * Values already in the cache are never written again; only missing ones are inserted, in a short transaction
+ * of their own. Writers intern their hits before opening the transaction that stores them, so a write never
+ * holds two pooled connections at once.
+ */
+@Repository
+public class HitDictionary {
+    private final Dictionary apps;
+    private final Dictionary uris;
+    private final TransactionTemplate transactionTemplate;
+
+    public HitDictionary(NamedParameterJdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.apps = new Dictionary(jdbcTemplate, "statistic_app", "name", null);
+        this.uris = new Dictionary(jdbcTemplate, "statistic_uri", "uri", new RadixTrie());
+    }
+
+    @PostConstruct
+    void loadUris() {
+        uris.loadAll();
+    }
+
+    public void intern(List<EndpointHit> endpointHits) {
+        Set<String> appNames = new HashSet<>();
+        Set<String> uriValues = new HashSet<>();
+        for (EndpointHit hit : endpointHits) {
+            if (hit.getApp() != null) {
+                appNames.add(hit.getApp());
+            }
+            if (hit.getAttributes() != null && hit.getAttributes().getUri() != null) {
+                uriValues.add(hit.getAttributes().getUri());
+            }
+        }
+        intern(appNames, uriValues);
+    }
+
+    public void intern(Collection<String> appNames, Collection<String> uriValues) {
+        Set<String> missingApps = apps.missing(appNames);
+        Set<String> missingUris = uris.missing(uriValues);
+        if (missingApps.isEmpty() && missingUris.isEmpty()) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            apps.insert(missingApps);
+            uris.insert(missingUris);
+        });
+    }
+
+    public Integer appId(String app) {
+        return app != null ? apps.idOf(app) : null;
+    }
+
+    public Integer uriId(String uri) {
+        return uri != null ? uris.idOf(uri) : null;
+    }
+
+    public Collection<Integer> findUriIds(Collection<String> values) {
+        return uris.find(values);
+    }
+
+    public List<String> findUrisByPrefix(String prefix) {
+        List<String> found = new ArrayList<>();
+        uris.trie.forEachWithPrefix(prefix, (uri, id) -> found.add(uri));
+        return found;
+    }
+
+    public int uriCount() {
+        return uris.ids.size();
+    }
+
+    public String appOf(Integer id) {
+        return id != null ? apps.valueOf(id) : null;
+    }
+
+    public String uriOf(Integer id) {
+        return id != null ? uris.valueOf(id) : null;
+    }
+
+    private static class Dictionary {
+        private final NamedParameterJdbcTemplate jdbcTemplate;
+        private final String insert;
+        private final String findByValues;
+        private final String findById;
+        private final String findAll;
+        private final RadixTrie trie;
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private final Map<Integer, String> values = new ConcurrentHashMap<>();
+
+        Dictionary(NamedParameterJdbcTemplate jdbcTemplate, String table, String column, RadixTrie trie) {
+            this.jdbcTemplate = jdbcTemplate;
+            this.trie = trie;
+            this.insert = String.format("insert into %1$s (%2$s) values (:value) on conflict (%2$s) do nothing",
+                    table, column);
+            this.findByValues = String.format("select d.id, d.%2$s as value from %1$s d where d.%2$s in (:values)",
+                    table, column);
+            this.findById = String.format("select d.id, d.%2$s as value from %1$s d where d.id = :id",
+                    table, column);
+            this.findAll = String.format("select d.id, d.%2$s as value from %1$s d", table, column);
+        }
+
+        void loadAll() {
+            load(findAll, new MapSqlParameterSource());
+        }
+
+        Set<String> missing(Collection<String> candidates) {
+            Set<String> missing = new TreeSet<>();
+            for (String value : candidates) {
+                if (!ids.containsKey(value)) {
+                    missing.add(value);
+                }
+            }
+            return missing;
+        }
+
+        void insert(Set<String> missing) {
+            if (missing.isEmpty()) {
+                return;
+            }
+            jdbcTemplate.batchUpdate(insert, missing.stream()
+                    .map(value -> new MapSqlParameterSource("value", value))
+                    .toArray(SqlParameterSource[]::new));
+            load(findByValues, new MapSqlParameterSource("values", missing));
+        }
+
+        Integer idOf(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                throw new IllegalStateException("Value is not interned: " + value);
+            }
+            return id;
+        }
+
+        Collection<Integer> find(Collection<String> candidates) {
+            Set<Integer> found = new HashSet<>();
+            Set<String> missing = new HashSet<>();
+            for (String value : candidates) {
+                Integer id = ids.get(value);
+                if (id != null) {
+                    found.add(id);
+                } else {
+                    missing.add(value);
+                }
+            }
+            if (!missing.isEmpty()) {
+                load(findByValues, new MapSqlParameterSource("values", missing));
+                missing.stream().map(ids::get).filter(Objects::nonNull).forEach(found::add);
+            }
+            return found;
+        }
+
+        String valueOf(int id) {
+            String value = values.get(id);
+            if (value == null) {
+                load(findById, new MapSqlParameterSource("id", id));
+                value = values.get(id);
+            }
+            return value;
+        }
+
+        private void load(String sql, MapSqlParameterSource params) {
+            jdbcTemplate.query(sql, params, rs -> {
+                int id = rs.getInt("id");
+                String value = rs.getString("value");
+                ids.put(value, id);
+                values.put(id, value);
+                if (trie != null) {
+                    trie.put(value, id);
+                }
+            });
+        }
+    }
+}
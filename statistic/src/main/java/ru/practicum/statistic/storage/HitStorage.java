@@ -0,0 +1,46 @@
+package ru.practicum.statistic.storage;
+
+import ru.practicum.statistic.model.BucketCount;
+import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.model.HitAddress;
+import ru.practicum.statistic.model.ViewStats;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Storage of raw hits. Ranges are half-open {@code [from, to)}; a {@code null} or empty uri collection means
+ * no uri filter. Counts are grouped by app and uri and sorted by hits, highest first.
+ */
+public interface HitStorage {
+    void saveAllInBatch(List<EndpointHit> endpointHits);
+
+    List<ViewStats> countHits(LocalDateTime from, LocalDateTime to, Collection<String> uris);
+
+    List<BucketCount> countHitsByMinute(LocalDateTime from, LocalDateTime to, Collection<String> uris);
+
+    List<ViewStats> countUniqueHits(LocalDateTime from, LocalDateTime to, Collection<String> uris);
+
+    List<BucketCount> countUniqueHitsByMinute(LocalDateTime from, LocalDateTime to, Collection<String> uris);
+
+    List<HitAddress> findAddresses(LocalDateTime from, LocalDateTime to, Collection<String> uris);
+
+    /**
+     * Time of the oldest stored hit, {@code null} when there is none.
+     */
+    LocalDateTime findOldest();
+
+    /**
+     * Deletes hits older than {@code to}, oldest first and about {@code limit} at a time, so that no single
+     * deletion holds locks for long. Returns the number of hits deleted, 0 once none are left.
+     */
+    int deleteBefore(LocalDateTime to, int limit);
+
+    /**
+     * Whether hits live in the {@code statistic} table, so that SQL over it (streaming, partitioning) sees them.
+     */
+    default boolean isRelational() {
+        return false;
+    }
+}
@@ -0,0 +1,187 @@
+package ru.practicum.statistic.storage;
+
+import ru.practicum.statistic.exceptions.InvalidHitException;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+/**
+ * Packs textual IPv4 and IPv6 literals into 4 or 16 bytes and formats them back in a canonical form:
+ * dotted quads for IPv4 and RFC 5952 text (lower case, longest zero run compressed) for IPv6.
+ * Host names, zone ids and malformed strings are rejected with {@code null}; nothing is resolved.
+ */
+public final class IpAddresses {
+    private static final int IPV4_BYTES = 4;
+    private static final int IPV6_GROUPS = 8;
+
+    private IpAddresses() {
+    }
+
+    public static byte[] pack(String ip) {
+        if (ip == null) {
+            return null;
+        }
+        String value = ip.trim();
+        return value.indexOf(':') >= 0 ? packIpv6(value) : packIpv4(value);
+    }
+
+    public static String format(byte[] packed) {
+        if (packed == null) {
+            return null;
+        }
+        if (packed.length == IPV4_BYTES) {
+            return formatIpv4(packed, 0);
+        }
+        if (packed.length != IPV6_GROUPS * 2) {
+            throw new IllegalArgumentException("Packed address must be 4 or 16 bytes, got " + packed.length);
+        }
+        if (isIpv4Mapped(packed)) {
+            return "::ffff:" + formatIpv4(packed, 12);
+        }
+        int[] groups = new int[IPV6_GROUPS];
+        for (int i = 0; i < IPV6_GROUPS; i++) {
+            groups[i] = ((packed[2 * i] & 0xff) << 8) | (packed[2 * i + 1] & 0xff);
+        }
+        int bestStart = -1;
+        int bestLength = 1;
+        for (int i = 0; i < IPV6_GROUPS; ) {
+            if (groups[i] != 0) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < IPV6_GROUPS && groups[i] == 0) {
+                i++;
+            }
+            if (i - start > bestLength) {
+                bestStart = start;
+                bestLength = i - start;
+            }
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < IPV6_GROUPS; i++) {
+            if (i == bestStart) {
+                text.append("::");
+                i += bestLength - 1;
+                continue;
+            }
+            if (text.length() > 0 && text.charAt(text.length() - 1) != ':') {
+                text.append(':');
+            }
+            text.append(Integer.toHexString(groups[i]));
+        }
+        return text.toString();
+    }
+
+    public static String canonical(String ip) {
+        return format(pack(ip));
+    }
+
+    /**
+     * Rejects the batch if any of the addresses is present but is not an IP literal.
+     */
+    public static void requireLiterals(Collection<String> ips) {
+        for (String ip : ips) {
+            if (ip != null && pack(ip) == null) {
+                throw new InvalidHitException("Hit ip is not an IPv4 or IPv6 address: " + ip);
+            }
+        }
+    }
+
+    private static byte[] packIpv4(String value) {
+        byte[] packed = new byte[IPV4_BYTES];
+        return parseIpv4(value, packed, 0) ? packed : null;
+    }
+
+    private static boolean parseIpv4(String value, byte[] target, int offset) {
+        String[] parts = value.split("\\.", -1);
+        if (parts.length != IPV4_BYTES) {
+            return false;
+        }
+        for (int i = 0; i < IPV4_BYTES; i++) {
+            String part = parts[i];
+            if (part.isEmpty() || part.length() > 3 || !part.chars().allMatch(Character::isDigit)) {
+                return false;
+            }
+            int octet = Integer.parseInt(part);
+            if (octet > 255) {
+                return false;
+            }
+            target[offset + i] = (byte) octet;
+        }
+        return true;
+    }
+
+    private static byte[] packIpv6(String value) {
+        int compressed = value.indexOf("::");
+        if (compressed >= 0 && value.indexOf("::", compressed + 1) >= 0) {
+            return null;
+        }
+        ByteBuffer head = ByteBuffer.allocate(IPV6_GROUPS * 2);
+        ByteBuffer tail = ByteBuffer.allocate(IPV6_GROUPS * 2);
+        if (compressed < 0) {
+            if (!parseGroups(value, head)) {
+                return null;
+            }
+        } else if (!parseGroups(value.substring(0, compressed), head)
+                || !parseGroups(value.substring(compressed + 2), tail)) {
+            return null;
+        }
+        int length = head.position() + tail.position();
+        if (compressed < 0 ? length != IPV6_GROUPS * 2 : length > (IPV6_GROUPS - 1) * 2) {
+            return null;
+        }
+        byte[] packed = new byte[IPV6_GROUPS * 2];
+        System.arraycopy(head.array(), 0, packed, 0, head.position());
+        System.arraycopy(tail.array(), 0, packed, packed.length - tail.position(), tail.position());
+        return packed;
+    }
+
+    private static boolean parseGroups(String value, ByteBuffer target) {
+        if (value.isEmpty()) {
+            return true;
+        }
+        String[] groups = value.split(":", -1);
+        for (int i = 0; i < groups.length; i++) {
+            String group = groups[i];
+            if (i == groups.length - 1 && group.indexOf('.') >= 0) {
+                if (target.remaining() < IPV4_BYTES) {
+                    return false;
+                }
+                byte[] ipv4 = new byte[IPV4_BYTES];
+                if (!parseIpv4(group, ipv4, 0)) {
+                    return false;
+                }
+                target.put(ipv4);
+                return true;
+            }
+            if (group.isEmpty() || group.length() > 4 || target.remaining() < 2) {
+                return false;
+            }
+            int word = 0;
+            for (int j = 0; j < group.length(); j++) {
+                int digit = Character.digit(group.charAt(j), 16);
+                if (digit < 0) {
+                    return false;
+                }
+                word = (word << 4) | digit;
+            }
+            target.putShort((short) word);
+        }
+        return true;
+    }
+
+    private static boolean isIpv4Mapped(byte[] packed) {
+        for (int i = 0; i < 10; i++) {
+            if (packed[i] != 0) {
+                return false;
+            }
+        }
+        return (packed[10] & 0xff) == 0xff && (packed[11] & 0xff) == 0xff;
+    }
+
+    private static String formatIpv4(byte[] packed, int offset) {
+        return (packed[offset] & 0xff) + "." + (packed[offset + 1] & 0xff) + "."
+                + (packed[offset + 2] & 0xff) + "." + (packed[offset + 3] & 0xff);
+    }
+}
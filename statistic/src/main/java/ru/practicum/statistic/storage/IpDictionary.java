@@ -0,0 +1,89 @@
+package ru.practicum.statistic.storage;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.statistic.aggregate.BitmapProperties;
+
+import java.util.*;
+
+/**
+ * Integer ids of client addresses for the unique-visitor bitmaps. Ids are assigned on ingestion only; reads
+ * {@link #lookup} existing ids, since an address without an id is in no bitmap. Recently used ids are kept
+ * in a bounded LRU cache; only addresses missing from it are inserted, in a short transaction of their own.
+ */
+@Repository
+public class IpDictionary {
+    private static final String INSERT_IP = "insert into statistic_ip (ip) values (:ip) on conflict (ip) do nothing";
+    private static final String FIND_IDS = "select i.id, i.ip from statistic_ip i where i.ip = any(:ips)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<String, Integer> ids;
+
+    public IpDictionary(NamedParameterJdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                        BitmapProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.ids = Collections.synchronizedMap(new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > properties.getIpCacheSize();
+            }
+        });
+    }
+
+    public Map<String, Integer> intern(Collection<String> ips) {
+        Map<String, Integer> result = new HashMap<>();
+        Set<String> missing = cached(ips, result);
+        if (missing.isEmpty()) {
+            return result;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(INSERT_IP, missing.stream()
+                    .map(ip -> new MapSqlParameterSource("ip", ip))
+                    .toArray(SqlParameterSource[]::new));
+            find(missing, result);
+        });
+        return result;
+    }
+
+    /**
+     * Ids of the addresses that already have one; the others are left out of the result.
+     */
+    public Map<String, Integer> lookup(Collection<String> ips) {
+        Map<String, Integer> result = new HashMap<>();
+        Set<String> missing = cached(ips, result);
+        if (!missing.isEmpty()) {
+            find(missing, result);
+        }
+        return result;
+    }
+
+    private Set<String> cached(Collection<String> ips, Map<String, Integer> result) {
+        Set<String> missing = new TreeSet<>();
+        for (String ip : ips) {
+            Integer id = ids.get(ip);
+            if (id != null) {
+                result.put(ip, id);
+            } else {
+                missing.add(ip);
+            }
+        }
+        return missing;
+    }
+
+    private void find(Set<String> ips, Map<String, Integer> result) {
+        jdbcTemplate.query(FIND_IDS, new MapSqlParameterSource("ips", ips.toArray(new String[0])), rs -> {
+            int id = rs.getInt("id");
+            String ip = rs.getString("ip");
+            ids.put(ip, id);
+            result.put(ip, id);
+        });
+    }
+}
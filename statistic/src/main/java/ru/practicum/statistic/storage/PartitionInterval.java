@@ -0,0 +1,20 @@
+package ru.practicum.statistic.storage;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+
+public enum PartitionInterval {
+    DAY,
+    WEEK;
+
+    public LocalDateTime floor(LocalDateTime time) {
+        LocalDateTime day = time.truncatedTo(ChronoUnit.DAYS);
+        return this == WEEK ? day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)) : day;
+    }
+
+    public LocalDateTime next(LocalDateTime partitionStart) {
+        return this == WEEK ? partitionStart.plusWeeks(1) : partitionStart.plusDays(1);
+    }
+}
@@ -0,0 +1,158 @@
+package ru.practicum.statistic.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps range partitions of the {@code statistic} table on {@code created_on}. Partitions are named
+ * {@code statistic_pYYYYMMDD_YYYYMMDD} after their half-open bounds and are created ahead of time;
+ * rows outside every partition, including rows without a timestamp, land in {@code statistic_default}.
+ * When a new partition overlaps rows already in the default partition they are moved before attaching.
+ * Partitions older than the retention are detached or dropped, and expired rows are deleted from
+ * the default partition.
+ */
+@Slf4j
+@Component
+public class PartitionManager {
+    private static final DateTimeFormatter SUFFIX_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final Pattern PARTITION_NAME = Pattern.compile("statistic_p(\\d{8})_(\\d{8})");
+    private static final String FIND_PARTITIONS = "select c.relname from pg_inherits i " +
+            "join pg_class c on c.oid = i.inhrelid where i.inhparent = 'statistic'::regclass";
+    private static final String CREATE_PARTITION = "create table %s " +
+            "(like statistic including defaults including constraints)";
+    private static final String MOVE_FROM_DEFAULT = "with moved as (delete from statistic_default " +
+            "where created_on >= ? and created_on < ? returning *) insert into %s select * from moved";
+    private static final String ATTACH_PARTITION = "alter table statistic attach partition %s " +
+            "for values from ('%s') to ('%s')";
+    private static final String DETACH_PARTITION = "alter table statistic detach partition %s";
+    private static final String DROP_PARTITION = "drop table %s";
+    private static final String DELETE_EXPIRED_DEFAULT = "delete from statistic_default where created_on < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PartitionProperties properties;
+
+    public PartitionManager(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                            PartitionProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    void start() {
+        maintain();
+    }
+
+    @Scheduled(fixedDelayString = "${statistic.partition.maintenance-interval-ms:3600000}")
+    public synchronized void maintain() {
+        try {
+            createAhead(LocalDateTime.now());
+            expire(LocalDateTime.now());
+        } catch (RuntimeException e) {
+            log.warn("Statistic partition maintenance failed", e);
+        }
+    }
+
+    /**
+     * Time before which raw hits may already have expired, {@code null} without a retention.
+     */
+    public LocalDateTime getRawHorizon() {
+        return properties.getRetention() != null ? LocalDateTime.now().minus(properties.getRetention()) : null;
+    }
+
+    private void createAhead(LocalDateTime now) {
+        List<Partition> partitions = findPartitions();
+        PartitionInterval interval = properties.getInterval();
+        LocalDateTime start = interval.floor(now);
+        for (int i = 0; i <= properties.getPrecreate(); i++) {
+            Partition partition = new Partition(start, interval.next(start));
+            if (partitions.stream().noneMatch(partition::overlaps)) {
+                create(partition);
+                partitions.add(partition);
+            }
+            start = partition.to;
+        }
+    }
+
+    private void create(Partition partition) {
+        String name = partition.name();
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute(String.format(CREATE_PARTITION, name));
+            int moved = jdbcTemplate.update(String.format(MOVE_FROM_DEFAULT, name),
+                    Timestamp.valueOf(partition.from), Timestamp.valueOf(partition.to));
+            jdbcTemplate.execute(String.format(ATTACH_PARTITION, name,
+                    Timestamp.valueOf(partition.from), Timestamp.valueOf(partition.to)));
+            if (moved > 0) {
+                log.info("Moved {} hits from the default partition into {}", moved, name);
+            }
+        });
+        log.info("Created statistic partition {}", name);
+    }
+
+    private void expire(LocalDateTime now) {
+        if (properties.getRetention() == null) {
+            return;
+        }
+        LocalDateTime cutoff = now.minus(properties.getRetention());
+        for (Partition partition : findPartitions()) {
+            if (partition.to.isAfter(cutoff)) {
+                continue;
+            }
+            String name = partition.name();
+            jdbcTemplate.execute(String.format(DETACH_PARTITION, name));
+            if (properties.getRetentionAction() == RetentionAction.DROP) {
+                jdbcTemplate.execute(String.format(DROP_PARTITION, name));
+            }
+            log.info("Expired statistic partition {} ({})", name, properties.getRetentionAction());
+        }
+        int deleted = jdbcTemplate.update(DELETE_EXPIRED_DEFAULT, Timestamp.valueOf(cutoff));
+        if (deleted > 0) {
+            log.info("Deleted {} expired hits from the default partition", deleted);
+        }
+    }
+
+    private List<Partition> findPartitions() {
+        List<Partition> partitions = new ArrayList<>();
+        for (String name : jdbcTemplate.queryForList(FIND_PARTITIONS, String.class)) {
+            Matcher matcher = PARTITION_NAME.matcher(name);
+            if (matcher.matches()) {
+                partitions.add(new Partition(
+                        LocalDate.parse(matcher.group(1), SUFFIX_FORMAT).atStartOfDay(),
+                        LocalDate.parse(matcher.group(2), SUFFIX_FORMAT).atStartOfDay()));
+            }
+        }
+        return partitions;
+    }
+
+    private static class Partition {
+        private final LocalDateTime from;
+        private final LocalDateTime to;
+
+        Partition(LocalDateTime from, LocalDateTime to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        boolean overlaps(Partition other) {
+            return from.isBefore(other.to) && other.from.isBefore(to);
+        }
+
+        String name() {
+            return "statistic_p" + from.format(SUFFIX_FORMAT) + "_" + to.format(SUFFIX_FORMAT);
+        }
+    }
+}
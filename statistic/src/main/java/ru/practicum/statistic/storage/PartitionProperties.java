@@ -0,0 +1,19 @@
+package ru.practicum.statistic.storage;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "statistic.partition")
+public class PartitionProperties {
+    private PartitionInterval interval = PartitionInterval.DAY;
+    private int precreate = 7;
+    private Duration retention;
+    private RetentionAction retentionAction = RetentionAction.DETACH;
+}
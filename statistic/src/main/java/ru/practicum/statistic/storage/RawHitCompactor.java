@@ -0,0 +1,204 @@
+package ru.practicum.statistic.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.statistic.aggregate.AppUri;
+import ru.practicum.statistic.aggregate.BucketKey;
+import ru.practicum.statistic.aggregate.Granularity;
+import ru.practicum.statistic.aggregate.LiveCounters;
+import ru.practicum.statistic.model.Attributes;
+import ru.practicum.statistic.model.BucketCount;
+import ru.practicum.statistic.model.EndpointHit;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Downsamples raw hits older than the configured age, one hour at a time, oldest first. Rollups and sketches
+ * are written at ingest already, so folding an hour only repairs them from the raw hits: minute rollups
+ * short of the raw counts (increments lost when the process stopped before the live counters were flushed)
+ * are topped up, which carries over to the hour and day rollups, and the hour's addresses are added again
+ * to the unique-count sketches and bitmaps, which is idempotent. Hits without an app or uri are counted
+ * under the same empty key the rollups use. The hour is folded and its raw hits deleted in one transaction
+ * while live counter flushes are held off, so no flush lands between reading the raw counts and the rollups.
+ * The end of the hour is then checkpointed to a file that outlives the schema recreated on startup. An
+ * interrupted hour is simply folded again on the next run without counting anything twice. Raw hits before
+ * the checkpoint are gone, so ranges reaching into them are answered from aggregates only.
+ */
+@Slf4j
+@Component
+public class RawHitCompactor {
+    private final TransactionTemplate transactionTemplate;
+    private final HitStorage hitStorage;
+    private final RollupRepository rollupRepository;
+    private final SketchRepository sketchRepository;
+    private final BitmapRepository bitmapRepository;
+    private final LiveCounters liveCounters;
+    private final CompactionProperties properties;
+    private volatile LocalDateTime watermark;
+    private int pauses;
+
+    public RawHitCompactor(PlatformTransactionManager transactionManager, HitStorage hitStorage,
+                           RollupRepository rollupRepository, SketchRepository sketchRepository,
+                           BitmapRepository bitmapRepository, LiveCounters liveCounters,
+                           CompactionProperties properties) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.hitStorage = hitStorage;
+        this.rollupRepository = rollupRepository;
+        this.sketchRepository = sketchRepository;
+        this.bitmapRepository = bitmapRepository;
+        this.liveCounters = liveCounters;
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    void start() {
+        Path file = Paths.get(properties.getCheckpointFile());
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            watermark = LocalDateTime.parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim());
+            log.info("Raw hits are compacted up to {}", watermark);
+        } catch (IOException | DateTimeParseException e) {
+            log.warn("Could not restore the compaction checkpoint from {}", file, e);
+        }
+    }
+
+    /**
+     * Time before which raw hits have been compacted away, {@code null} when none have.
+     */
+    public LocalDateTime getRawHorizon() {
+        return watermark;
+    }
+
+    /**
+     * Waits for a running compaction to finish and keeps further ones from starting until {@link #resume()}.
+     */
+    public synchronized void pause() {
+        pauses++;
+    }
+
+    public synchronized void resume() {
+        pauses--;
+    }
+
+    @Scheduled(fixedDelayString = "${statistic.compaction.interval-ms:600000}")
+    public synchronized void compact() {
+        if (!properties.isEnabled() || pauses > 0) {
+            return;
+        }
+        try {
+            LocalDateTime cutoff = Granularity.HOUR.floor(LocalDateTime.now().minus(properties.getAge()));
+            int hours = 0;
+            long deleted = 0;
+            LocalDateTime oldest = hitStorage.findOldest();
+            if (oldest != null && oldest.isBefore(cutoff)) {
+                liveCounters.flush();
+            }
+            while (oldest != null && oldest.isBefore(cutoff) && hours < properties.getMaxHoursPerRun()) {
+                LocalDateTime from = Granularity.HOUR.floor(oldest);
+                LocalDateTime to = Granularity.HOUR.next(from);
+                deleted += liveCounters.readLocked(() -> compactHour(from, to));
+                checkpoint(to);
+                hours++;
+                oldest = hitStorage.findOldest();
+                if (oldest != null && oldest.isBefore(to)) {
+                    log.warn("Raw hits before {} are still stored after compacting them, stopping", to);
+                    break;
+                }
+            }
+            if (hours > 0) {
+                log.info("Compacted {} hours of raw hits up to {}, deleted {} hits", hours, watermark, deleted);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Raw hit compaction failed", e);
+        }
+    }
+
+    /**
+     * Folds the hour and deletes its raw hits, in one transaction when the raw hits live in the database.
+     * Segment files are not transactional, so they are only dropped once the folded counts are committed.
+     */
+    private long compactHour(LocalDateTime from, LocalDateTime to) {
+        Long deleted = transactionTemplate.execute(status -> {
+            fold(from, to);
+            return hitStorage.isRelational() ? deleteBefore(to) : 0L;
+        });
+        return hitStorage.isRelational() ? deleted : deleteBefore(to);
+    }
+
+    private long deleteBefore(LocalDateTime to) {
+        long deleted = 0;
+        int chunk;
+        do {
+            chunk = hitStorage.deleteBefore(to, properties.getBatchSize());
+            deleted += chunk;
+        } while (chunk > 0);
+        return deleted;
+    }
+
+    private void fold(LocalDateTime from, LocalDateTime to) {
+        List<BucketCount> raw = hitStorage.countHitsByMinute(from, to, null);
+        Map<BucketKey, Long> folded = new HashMap<>();
+        for (BucketCount bucket : rollupRepository.findBuckets(Granularity.MINUTE, from, to, null)) {
+            folded.merge(minuteOf(AppUri.of(bucket.getApp(), bucket.getUri()), bucket.getBucket()),
+                    bucket.getHits(), Long::sum);
+        }
+        liveCounters.forEachUnflushed(from, to, null, (appUri, minute, unflushed) ->
+                folded.merge(minuteOf(appUri, minute), unflushed, Long::sum));
+        Map<BucketKey, Long> missing = new TreeMap<>();
+        for (BucketCount bucket : raw) {
+            BucketKey key = minuteOf(AppUri.of(bucket.getApp(), bucket.getUri()), bucket.getBucket());
+            long shortfall = bucket.getHits() - folded.getOrDefault(key, 0L);
+            if (shortfall > 0) {
+                missing.put(key, shortfall);
+            }
+        }
+        rollupRepository.increment(missing);
+        List<EndpointHit> addresses = hitStorage.findAddresses(from, to, null).stream()
+                .filter(address -> address.getIp() != null)
+                .map(address -> EndpointHit.builder()
+                        .app(address.getApp())
+                        .attributes(new Attributes(address.getUri(), address.getIp()))
+                        .createdOn(from)
+                        .build())
+                .collect(Collectors.toList());
+        sketchRepository.add(addresses);
+        bitmapRepository.add(addresses);
+    }
+
+    private void checkpoint(LocalDateTime to) {
+        if (watermark != null && !watermark.isBefore(to)) {
+            return;
+        }
+        watermark = to;
+        Path file = Paths.get(properties.getCheckpointFile()).toAbsolutePath();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.write(temp, to.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not checkpoint the compaction watermark to {}", file, e);
+        }
+    }
+
+    private static BucketKey minuteOf(AppUri appUri, LocalDateTime minute) {
+        return new BucketKey(Granularity.MINUTE, minute, appUri);
+    }
+}
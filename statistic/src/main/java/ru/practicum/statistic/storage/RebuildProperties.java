@@ -0,0 +1,16 @@
+package ru.practicum.statistic.storage;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "statistic.rebuild")
+public class RebuildProperties {
+    private int parallelism = 2;
+    private int fetchSize = 1000;
+    private long maxRowsPerSecond = 50000;
+}
@@ -0,0 +1,9 @@
+package ru.practicum.statistic.storage;
+
+public enum RebuildState {
+    IDLE,
+    RUNNING,
+    SWAPPING,
+    COMPLETED,
+    FAILED
+}
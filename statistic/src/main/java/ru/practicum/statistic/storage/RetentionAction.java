@@ -0,0 +1,6 @@
+package ru.practicum.statistic.storage;
+
+public enum RetentionAction {
+    DETACH,
+    DROP
+}
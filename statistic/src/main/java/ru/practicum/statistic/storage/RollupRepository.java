@@ -0,0 +1,85 @@
+package ru.practicum.statistic.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+import ru.practicum.statistic.aggregate.BucketKey;
+import ru.practicum.statistic.aggregate.Granularity;
+import ru.practicum.statistic.model.BucketCount;
+import ru.practicum.statistic.model.HitCount;
+import ru.practicum.statistic.model.ViewStats;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+
+@Repository
+@RequiredArgsConstructor
+public class RollupRepository {
+    private static final String UPSERT_ROLLUP = "insert into statistic_rollup " +
+            "(granularity, bucket_start, app, uri, hits) values (:granularity, :bucketStart, :app, :uri, :hits) " +
+            "on conflict (granularity, bucket_start, app, uri) " +
+            "do update set hits = statistic_rollup.hits + excluded.hits";
+    private static final String SUM_HITS = "select r.app, r.uri, sum(r.hits) as hits " +
+            "from statistic_rollup r " +
+            "where r.granularity = :granularity and r.bucket_start >= :from and r.bucket_start < :to ";
+    private static final String FIND_BUCKETS = "select r.app, r.uri, r.bucket_start, r.hits " +
+            "from statistic_rollup r " +
+            "where r.granularity = :granularity and r.bucket_start >= :from and r.bucket_start < :to ";
+    private static final String BY_URIS = "and r.uri = any(:uris) ";
+    private static final String GROUP_BY = "group by r.app, r.uri";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public void increment(Map<BucketKey, Long> minuteHits) {
+        Map<BucketKey, Long> increments = new TreeMap<>();
+        minuteHits.forEach((minute, hits) -> {
+            for (Granularity granularity : Granularity.values()) {
+                increments.merge(new BucketKey(granularity, granularity.floor(minute.getBucketStart()),
+                        minute.getAppUri()), hits, Long::sum);
+            }
+        });
+        if (increments.isEmpty()) {
+            return;
+        }
+        SqlParameterSource[] batch = increments.entrySet().stream()
+                .map(entry -> new MapSqlParameterSource()
+                        .addValue("granularity", entry.getKey().getGranularity().name())
+                        .addValue("bucketStart", Timestamp.valueOf(entry.getKey().getBucketStart()))
+                        .addValue("app", entry.getKey().getAppUri().getApp())
+                        .addValue("uri", entry.getKey().getAppUri().getUri())
+                        .addValue("hits", entry.getValue()))
+                .toArray(SqlParameterSource[]::new);
+        jdbcTemplate.batchUpdate(UPSERT_ROLLUP, batch);
+    }
+
+    public List<ViewStats> sumHits(Granularity granularity, LocalDateTime from, LocalDateTime to,
+                                   Collection<String> uris) {
+        MapSqlParameterSource params = paramsOf(granularity, from, to, uris);
+        String sql = uris != null && !uris.isEmpty() ? SUM_HITS + BY_URIS : SUM_HITS;
+        return jdbcTemplate.query(sql + GROUP_BY, params, (rs, rowNum) ->
+                new HitCount(rs.getString("app"), rs.getString("uri"), rs.getLong("hits")));
+    }
+
+    public List<BucketCount> findBuckets(Granularity granularity, LocalDateTime from, LocalDateTime to,
+                                         Collection<String> uris) {
+        MapSqlParameterSource params = paramsOf(granularity, from, to, uris);
+        String sql = uris != null && !uris.isEmpty() ? FIND_BUCKETS + BY_URIS : FIND_BUCKETS;
+        return jdbcTemplate.query(sql, params, (rs, rowNum) -> new BucketCount(rs.getString("app"),
+                rs.getString("uri"), rs.getTimestamp("bucket_start").toLocalDateTime(), rs.getLong("hits")));
+    }
+
+    private static MapSqlParameterSource paramsOf(Granularity granularity, LocalDateTime from, LocalDateTime to,
+                                                  Collection<String> uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("granularity", granularity.name())
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        if (uris != null && !uris.isEmpty()) {
+            params.addValue("uris", uris.toArray(new String[0]));
+        }
+        return params;
+    }
+}
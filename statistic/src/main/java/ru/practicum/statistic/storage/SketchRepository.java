@@ -0,0 +1,177 @@
+package ru.practicum.statistic.storage;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+import ru.practicum.statistic.aggregate.AppUri;
+import ru.practicum.statistic.aggregate.BucketKey;
+import ru.practicum.statistic.aggregate.Granularity;
+import ru.practicum.statistic.aggregate.HyperLogLog;
+import ru.practicum.statistic.aggregate.SketchProperties;
+import ru.practicum.statistic.model.EndpointHit;
+
+import javax.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class SketchRepository {
+    public static final Granularity[] SKETCH_GRANULARITIES = {Granularity.DAY, Granularity.HOUR};
+
+    private static final String INSERT_SKETCH = "insert into statistic_sketch " +
+            "(granularity, bucket_start, app, uri, registers) " +
+            "values (:granularity, :bucketStart, :app, :uri, :registers) " +
+            "on conflict (granularity, bucket_start, app, uri) do nothing";
+    private static final String LOCK_SKETCH = "select s.registers from statistic_sketch s " +
+            "where s.granularity = :granularity and s.bucket_start = :bucketStart and s.app = :app " +
+            "and s.uri = :uri for update";
+    private static final String UPDATE_SKETCH = "update statistic_sketch set registers = :registers " +
+            "where granularity = :granularity and bucket_start = :bucketStart and app = :app and uri = :uri";
+    private static final String FIND_REGISTER_COUNT = "select length(s.registers) from statistic_sketch s limit 1";
+    private static final String FIND_SKETCHES = "select s.app, s.uri, s.bucket_start, s.registers " +
+            "from statistic_sketch s " +
+            "where s.granularity = :granularity and s.bucket_start >= :from and s.bucket_start < :to ";
+    private static final String BY_URIS = "and s.uri = any(:uris)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final SketchProperties properties;
+    private volatile boolean precisionChanged;
+
+    /**
+     * Refuses to start on sketches stored with another precision, unless rebuild-on-precision-change is set;
+     * until that rebuild swaps in sketches of the configured precision, the stored ones are ignored by reads
+     * and replaced rather than merged by writes.
+     */
+    @PostConstruct
+    void checkPrecision() {
+        List<Integer> registerCounts = jdbcTemplate.getJdbcTemplate().queryForList(FIND_REGISTER_COUNT, Integer.class);
+        if (registerCounts.isEmpty() || registerCounts.get(0) == registerCount()) {
+            return;
+        }
+        String change = "statistic_sketch holds sketches of " + registerCounts.get(0)
+                + " registers, statistic.sketch.precision=" + properties.getPrecision()
+                + " needs " + registerCount();
+        if (!properties.isRebuildOnPrecisionChange()) {
+            throw new IllegalStateException(change + "; set statistic.sketch.rebuild-on-precision-change=true "
+                    + "to rebuild the sketches from the raw hits");
+        }
+        log.warn("{}; rebuilding the sketches from the raw hits", change);
+        precisionChanged = true;
+    }
+
+    /**
+     * Whether the stored sketches were found to have another precision at startup and are to be rebuilt.
+     */
+    public boolean isPrecisionChanged() {
+        return precisionChanged;
+    }
+
+    public void add(List<EndpointHit> endpointHits) {
+        Map<BucketKey, HyperLogLog> sketches = new TreeMap<>();
+        for (EndpointHit hit : endpointHits) {
+            if (hit.getCreatedOn() == null || hit.getAttributes() == null || hit.getAttributes().getIp() == null) {
+                continue;
+            }
+            AppUri appUri = AppUri.of(hit.getApp(), hit.getAttributes().getUri());
+            for (Granularity granularity : SKETCH_GRANULARITIES) {
+                sketches.computeIfAbsent(
+                        new BucketKey(granularity, granularity.floor(hit.getCreatedOn()), appUri),
+                        key -> new HyperLogLog(properties.getPrecision())
+                ).add(hit.getAttributes().getIp());
+            }
+        }
+        merge(sketches);
+    }
+
+    /**
+     * Inserts the buckets not stored yet and merges the others into the stored sketches register by register.
+     * Rows are locked in key order so that concurrent merges cannot deadlock; the sketches passed in are
+     * left as they are.
+     */
+    public void merge(Map<BucketKey, HyperLogLog> sketches) {
+        if (sketches.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<BucketKey, HyperLogLog>> ordered = new ArrayList<>(new TreeMap<>(sketches).entrySet());
+        int[] inserted = jdbcTemplate.batchUpdate(INSERT_SKETCH, ordered.stream()
+                .map(entry -> paramsOf(entry.getKey()).addValue("registers", entry.getValue().toBytes()))
+                .toArray(SqlParameterSource[]::new));
+        List<SqlParameterSource> updates = new ArrayList<>();
+        for (int i = 0; i < ordered.size(); i++) {
+            if (inserted[i] == 1) {
+                continue;
+            }
+            MapSqlParameterSource params = paramsOf(ordered.get(i).getKey());
+            byte[] stored = jdbcTemplate.queryForObject(LOCK_SKETCH, params, byte[].class);
+            HyperLogLog sketch = ordered.get(i).getValue();
+            if (stored != null && (stored.length == registerCount() || !precisionChanged)) {
+                HyperLogLog merged = HyperLogLog.fromBytes(stored);
+                merged.merge(sketch);
+                sketch = merged;
+            }
+            updates.add(params.addValue("registers", sketch.toBytes()));
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_SKETCH, updates.toArray(new SqlParameterSource[0]));
+        }
+    }
+
+    public void mergeInto(Map<AppUri, HyperLogLog> target, Granularity granularity,
+                          LocalDateTime from, LocalDateTime to, Collection<String> uris) {
+        forEachSketch(granularity, from, to, uris, (appUri, bucketStart, sketch) ->
+                target.merge(appUri, sketch, (left, right) -> {
+                    left.merge(right);
+                    return left;
+                }));
+    }
+
+    public void forEachSketch(Granularity granularity, LocalDateTime from, LocalDateTime to,
+                              Collection<String> uris, SketchHandler handler) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("granularity", granularity.name())
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        String sql = FIND_SKETCHES;
+        if (uris != null && !uris.isEmpty()) {
+            sql += BY_URIS;
+            params.addValue("uris", uris.toArray(new String[0]));
+        }
+        int registerCount = registerCount();
+        jdbcTemplate.query(sql, params, rs -> {
+            byte[] registers = rs.getBytes("registers");
+            if (registers.length != registerCount) {
+                return;
+            }
+            handler.handle(AppUri.of(rs.getString("app"), rs.getString("uri")),
+                    rs.getTimestamp("bucket_start").toLocalDateTime(),
+                    HyperLogLog.fromBytes(registers));
+        });
+    }
+
+    private int registerCount() {
+        return 1 << properties.getPrecision();
+    }
+
+    private static MapSqlParameterSource paramsOf(BucketKey key) {
+        return new MapSqlParameterSource()
+                .addValue("granularity", key.getGranularity().name())
+                .addValue("bucketStart", Timestamp.valueOf(key.getBucketStart()))
+                .addValue("app", key.getAppUri().getApp())
+                .addValue("uri", key.getAppUri().getUri());
+    }
+
+    @FunctionalInterface
+    public interface SketchHandler {
+        void handle(AppUri appUri, LocalDateTime bucketStart, HyperLogLog sketch);
+    }
+}
@@ -1,11 +1,165 @@
 package ru.practicum.statistic.storage;
 
-import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.statistic.model.BucketCount;
 import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.model.HitAddress;
+import ru.practicum.statistic.model.HitCount;
+import ru.practicum.statistic.model.ViewStats;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
-public interface StatisticRepository extends JpaRepository<EndpointHit, Long> {
-    Collection<EndpointHit> findAllByCreatedOnBetween(LocalDateTime start, LocalDateTime end);
+@Repository
+@ConditionalOnProperty(name = "statistic.storage.backend", havingValue = "jdbc", matchIfMissing = true)
+public class StatisticRepository implements HitStorage {
+    private static final String INSERT_HIT = "insert into statistic (app_id, uri_id, ip, created_on, weight) " +
+            "values (?, ?, ?, ?, ?)";
+    private static final String COUNT_HITS = "select h.app_id, h.uri_id, sum(h.weight) as hits " +
+            "from statistic h " +
+            "where h.created_on >= :from and h.created_on < :to ";
+    private static final String COUNT_HITS_BY_MINUTE = "select h.app_id, h.uri_id, " +
+            "date_trunc('minute', h.created_on) as bucket, sum(h.weight) as hits " +
+            "from statistic h " +
+            "where h.created_on >= :from and h.created_on < :to ";
+    private static final String COUNT_UNIQUE_HITS = "select h.app_id, h.uri_id, count(distinct h.ip) as hits " +
+            "from statistic h " +
+            "where h.created_on >= :from and h.created_on < :to ";
+    private static final String COUNT_UNIQUE_BY_MINUTE = "select h.app_id, h.uri_id, " +
+            "date_trunc('minute', h.created_on) as bucket, count(distinct h.ip) as hits " +
+            "from statistic h " +
+            "where h.created_on >= :from and h.created_on < :to ";
+    private static final String FIND_ADDRESSES = "select distinct h.app_id, h.uri_id, h.ip " +
+            "from statistic h " +
+            "where h.created_on >= :from and h.created_on < :to ";
+    private static final String FIND_OLDEST = "select min(h.created_on) from statistic h";
+    private static final String FIND_DELETE_BOUNDARY = "select h.created_on from statistic h " +
+            "where h.created_on < :to order by h.created_on offset :offset limit 1";
+    private static final String DELETE_BEFORE = "delete from statistic where created_on < :to";
+    private static final String DELETE_UP_TO = "delete from statistic where created_on <= :boundary";
+    private static final String BY_URIS = "and h.uri_id = any(:uriIds) ";
+    private static final String GROUP_BY = "group by h.app_id, h.uri_id order by hits desc";
+    private static final String GROUP_BY_MINUTE = "group by h.app_id, h.uri_id, date_trunc('minute', h.created_on)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final HitDictionary hitDictionary;
+    private final int batchSize;
+
+    public StatisticRepository(NamedParameterJdbcTemplate jdbcTemplate, HitDictionary hitDictionary,
+                               @Value("${statistic.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.hitDictionary = hitDictionary;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    @Transactional
+    public void saveAllInBatch(List<EndpointHit> endpointHits) {
+        hitDictionary.intern(endpointHits);
+        jdbcTemplate.getJdbcTemplate().batchUpdate(INSERT_HIT, endpointHits, batchSize, (ps, hit) -> {
+            String uri = hit.getAttributes() != null ? hit.getAttributes().getUri() : null;
+            String ip = hit.getAttributes() != null ? hit.getAttributes().getIp() : null;
+            ps.setObject(1, hitDictionary.appId(hit.getApp()));
+            ps.setObject(2, hitDictionary.uriId(uri));
+            ps.setBytes(3, IpAddresses.pack(ip));
+            ps.setTimestamp(4, hit.getCreatedOn() != null ? Timestamp.valueOf(hit.getCreatedOn()) : null);
+            ps.setInt(5, hit.getWeight());
+        });
+    }
+
+    @Override
+    public List<ViewStats> countHits(LocalDateTime from, LocalDateTime to, Collection<String> uris) {
+        return query(COUNT_HITS, GROUP_BY, from, to, uris, (rs, rowNum) ->
+                new HitCount(appOf(rs), uriOf(rs), rs.getLong("hits")));
+    }
+
+    @Override
+    public List<BucketCount> countHitsByMinute(LocalDateTime from, LocalDateTime to, Collection<String> uris) {
+        return query(COUNT_HITS_BY_MINUTE, GROUP_BY_MINUTE, from, to, uris, (rs, rowNum) ->
+                new BucketCount(appOf(rs), uriOf(rs), rs.getTimestamp("bucket").toLocalDateTime(),
+                        rs.getLong("hits")));
+    }
+
+    @Override
+    public List<ViewStats> countUniqueHits(LocalDateTime from, LocalDateTime to, Collection<String> uris) {
+        return query(COUNT_UNIQUE_HITS, GROUP_BY, from, to, uris, (rs, rowNum) ->
+                new HitCount(appOf(rs), uriOf(rs), rs.getLong("hits")));
+    }
+
+    @Override
+    public List<BucketCount> countUniqueHitsByMinute(LocalDateTime from, LocalDateTime to,
+                                                     Collection<String> uris) {
+        return query(COUNT_UNIQUE_BY_MINUTE, GROUP_BY_MINUTE, from, to, uris, (rs, rowNum) ->
+                new BucketCount(appOf(rs), uriOf(rs), rs.getTimestamp("bucket").toLocalDateTime(),
+                        rs.getLong("hits")));
+    }
+
+    @Override
+    public List<HitAddress> findAddresses(LocalDateTime from, LocalDateTime to, Collection<String> uris) {
+        return query(FIND_ADDRESSES, "", from, to, uris, (rs, rowNum) ->
+                new HitAddress(appOf(rs), uriOf(rs), IpAddresses.format(rs.getBytes("ip"))));
+    }
+
+    @Override
+    public LocalDateTime findOldest() {
+        Timestamp oldest = jdbcTemplate.getJdbcTemplate().queryForObject(FIND_OLDEST, Timestamp.class);
+        return oldest != null ? oldest.toLocalDateTime() : null;
+    }
+
+    /**
+     * Finds the time of the {@code limit}-th oldest hit through the {@code created_on} index first and then
+     * deletes up to it, so that both statements are index range scans pruned to the partitions involved.
+     */
+    @Override
+    public int deleteBefore(LocalDateTime to, int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("to", Timestamp.valueOf(to))
+                .addValue("offset", limit - 1);
+        List<Timestamp> boundary = jdbcTemplate.queryForList(FIND_DELETE_BOUNDARY, params, Timestamp.class);
+        if (boundary.isEmpty()) {
+            return jdbcTemplate.update(DELETE_BEFORE, params);
+        }
+        return jdbcTemplate.update(DELETE_UP_TO, new MapSqlParameterSource("boundary", boundary.get(0)));
+    }
+
+    @Override
+    public boolean isRelational() {
+        return true;
+    }
+
+    private <T> List<T> query(String select, String groupBy, LocalDateTime from, LocalDateTime to,
+                              Collection<String> uris, RowMapper<T> rowMapper) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        String sql = select;
+        if (uris != null && !uris.isEmpty()) {
+            Collection<Integer> uriIds = hitDictionary.findUriIds(uris);
+            if (uriIds.isEmpty()) {
+                return Collections.emptyList();
+            }
+            sql += BY_URIS;
+            params.addValue("uriIds", uriIds.toArray(new Integer[0]));
+        }
+        return jdbcTemplate.query(sql + groupBy, params, rowMapper);
+    }
+
+    private String appOf(ResultSet rs) throws SQLException {
+        return hitDictionary.appOf((Integer) rs.getObject("app_id"));
+    }
+
+    private String uriOf(ResultSet rs) throws SQLException {
+        return hitDictionary.uriOf((Integer) rs.getObject("uri_id"));
+    }
 }
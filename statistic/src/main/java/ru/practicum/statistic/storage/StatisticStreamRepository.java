@@ -0,0 +1,101 @@
+package ru.practicum.statistic.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.statistic.aggregate.TimeSlice;
+import ru.practicum.statistic.model.HitCount;
+import ru.practicum.statistic.model.ViewStats;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads grouped statistics with a forward-only cursor so that rows can be written to the client
+ * while the query is still running. The whole aggregation, including the merge of rollup buckets
+ * and raw edge slices, is done by the database; PostgreSQL only honours the fetch size inside a
+ * transaction, so callers must hold one open while iterating.
+ */
+@Repository
+public class StatisticStreamRepository {
+    private static final String ROLLUP_SLICE = "select r.app, r.uri, r.hits from statistic_rollup r " +
+            "where r.granularity = :granularity%1$d and r.bucket_start >= :from%1$d and r.bucket_start < :to%1$d ";
+    private static final String RAW_SLICE = "select coalesce(a.name, '') as app, coalesce(u.uri, '') as uri, " +
+            "c.hits from (select h.app_id, h.uri_id, sum(h.weight) as hits from statistic h " +
+            "where h.created_on >= :from%1$d and h.created_on < :to%1$d ";
+    private static final String RAW_JOIN_NAMES = "group by h.app_id, h.uri_id) c " +
+            "left join statistic_app a on a.id = c.app_id left join statistic_uri u on u.id = c.uri_id";
+    private static final String ROLLUP_BY_URIS = "and r.uri = any(:uris) ";
+    private static final String RAW_BY_URIS = "and h.uri_id in " +
+            "(select d.id from statistic_uri d where d.uri = any(:uris)) ";
+    private static final String SUM_SLICES = "select s.app, s.uri, sum(s.hits) as hits from (%s) s " +
+            "group by s.app, s.uri order by hits desc";
+    private static final String COUNT_UNIQUE = "select h.app_id, h.uri_id, count(distinct h.ip) as hits " +
+            "from statistic h " +
+            "where h.created_on >= :from0 and h.created_on < :to0 ";
+    private static final String UNIQUE_GROUP_BY = "group by h.app_id, h.uri_id order by hits desc";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final HitDictionary hitDictionary;
+
+    public StatisticStreamRepository(JdbcTemplate jdbcTemplate, HitDictionary hitDictionary,
+                                     @Value("${statistic.stream.fetch-size:1000}") int fetchSize) {
+        this.hitDictionary = hitDictionary;
+        JdbcTemplate cursorTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        cursorTemplate.setFetchSize(fetchSize);
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(cursorTemplate);
+    }
+
+    public void streamHits(List<TimeSlice> slices, Collection<String> uris, Consumer<ViewStats> consumer) {
+        if (slices.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource params = paramsOf(uris);
+        StringBuilder union = new StringBuilder();
+        for (int i = 0; i < slices.size(); i++) {
+            TimeSlice slice = slices.get(i);
+            if (i > 0) {
+                union.append(" union all ");
+            }
+            params.addValue("from" + i, Timestamp.valueOf(slice.getFrom()))
+                    .addValue("to" + i, Timestamp.valueOf(slice.getTo()));
+            if (slice.isRaw()) {
+                union.append(String.format(RAW_SLICE, i))
+                        .append(params.hasValue("uris") ? RAW_BY_URIS : "")
+                        .append(RAW_JOIN_NAMES);
+            } else {
+                params.addValue("granularity" + i, slice.getGranularity().name());
+                union.append(String.format(ROLLUP_SLICE, i))
+                        .append(params.hasValue("uris") ? ROLLUP_BY_URIS : "");
+            }
+        }
+        jdbcTemplate.query(String.format(SUM_SLICES, union), params, rs -> {
+            consumer.accept(new HitCount(rs.getString("app"), rs.getString("uri"), rs.getLong("hits")));
+        });
+    }
+
+    public void streamUniqueHits(LocalDateTime from, LocalDateTime to, Collection<String> uris,
+                                 Consumer<ViewStats> consumer) {
+        MapSqlParameterSource params = paramsOf(uris)
+                .addValue("from0", Timestamp.valueOf(from))
+                .addValue("to0", Timestamp.valueOf(to));
+        String sql = COUNT_UNIQUE + (params.hasValue("uris") ? RAW_BY_URIS : "") + UNIQUE_GROUP_BY;
+        jdbcTemplate.query(sql, params, rs -> {
+            consumer.accept(new HitCount(hitDictionary.appOf((Integer) rs.getObject("app_id")),
+                    hitDictionary.uriOf((Integer) rs.getObject("uri_id")), rs.getLong("hits")));
+        });
+    }
+
+    private static MapSqlParameterSource paramsOf(Collection<String> uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        if (uris != null && !uris.isEmpty()) {
+            params.addValue("uris", uris.toArray(new String[0]));
+        }
+        return params;
+    }
+}
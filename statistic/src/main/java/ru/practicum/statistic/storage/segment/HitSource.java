@@ -0,0 +1,40 @@
+package ru.practicum.statistic.storage.segment;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Hits a query scans: a {@link Segment}, or a {@link Memtable} as of a snapshot. App and uri ids are local to
+ * the source and start from 1, id 0 standing for a missing value.
+ */
+interface HitSource {
+    int getCount();
+
+    long getMinTime();
+
+    String app(int id);
+
+    String uri(int id);
+
+    /**
+     * Visits the rows with a time in {@code [from, to)} in time order, only those of the given uris unless
+     * {@code uris} is {@code null}. A row is only valid during the call it is passed to.
+     */
+    void forEachRow(long from, long to, Collection<String> uris, Consumer<Row> consumer);
+
+    interface Row {
+        long time();
+
+        int appId();
+
+        int uriId();
+
+        int weight();
+
+        int ipLength();
+
+        long ipHigh();
+
+        long ipLow();
+    }
+}
@@ -0,0 +1,422 @@
+package ru.practicum.statistic.storage.segment;
+
+import ru.practicum.statistic.model.Attributes;
+import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.storage.IpAddresses;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Hits accepted since the last segment was written. They are appended to a journal file before {@link #append}
+ * returns, so they survive a restart, and kept on the heap in a skip list ordered by time, so that an append
+ * only inserts its own rows and queries scan the requested range directly. Each row gets the next ordinal; a
+ * {@link #snapshot()} sees the rows of the batches completed before it and none of later ones. Once closed, the
+ * memtable is written out as one segment numbered like its journal, and the journal is deleted.
+ * <p>
+ * Each journal record is {@code [length:int][crc32:int][payload:length bytes]} with one batch of hits as
+ * payload; a torn or corrupt record ends the journal.
+ */
+class Memtable {
+    static final String JOURNAL_FORMAT = "memtable-%020d.log";
+    static final String JOURNAL_REGEX = "memtable-\\d{20}\\.log";
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+
+    private static final Comparator<Hit> HIT_ORDER = Comparator.comparingLong((Hit hit) -> hit.time)
+            .thenComparingLong(hit -> hit.ordinal);
+
+    private final Path journalFile;
+    private final long sequence;
+    private final FileChannel journal;
+    private final long createdNanos = System.nanoTime();
+    private final ConcurrentSkipListSet<Hit> rows = new ConcurrentSkipListSet<>(HIT_ORDER);
+    private final List<String> apps = new CopyOnWriteArrayList<>();
+    private final List<String> uris = new CopyOnWriteArrayList<>();
+    private final Map<String, Integer> appIds = new ConcurrentHashMap<>();
+    private final Map<String, Integer> uriIds = new ConcurrentHashMap<>();
+    private volatile int visible;
+    private boolean closed;
+
+    Memtable(Path directory, long sequence) {
+        this.journalFile = directory.resolve(String.format(JOURNAL_FORMAT, sequence));
+        this.sequence = sequence;
+        try {
+            this.journal = FileChannel.open(journalFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static long sequenceOf(Path journalFile) {
+        return Long.parseLong(journalFile.getFileName().toString().substring(9, 29));
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Journals and keeps the hits, unless the memtable was closed meanwhile.
+     */
+    synchronized boolean append(List<EndpointHit> batch) {
+        if (closed) {
+            return false;
+        }
+        byte[] payload = encode(batch);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length)
+                .putInt(payload.length)
+                .putInt((int) crc.getValue())
+                .put(payload);
+        record.flip();
+        try {
+            while (record.hasRemaining()) {
+                journal.write(record);
+            }
+            journal.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int ordinal = visible;
+        for (EndpointHit hit : batch) {
+            Attributes attributes = hit.getAttributes();
+            rows.add(new Hit(Segment.toTime(hit.getCreatedOn()), ordinal++, idOf(hit.getApp(), apps, appIds),
+                    idOf(attributes != null ? attributes.getUri() : null, uris, uriIds), hit.getWeight(),
+                    IpAddresses.pack(attributes != null ? attributes.getIp() : null)));
+        }
+        visible = ordinal;
+        return true;
+    }
+
+    int size() {
+        return visible;
+    }
+
+    long ageNanos() {
+        return System.nanoTime() - createdNanos;
+    }
+
+    /**
+     * Refuses further appends, once the append in progress is done.
+     */
+    synchronized void close() {
+        closed = true;
+        try {
+            journal.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    List<String> getApps() {
+        return apps;
+    }
+
+    List<String> getUris() {
+        return uris;
+    }
+
+    /**
+     * Appends the rows in time order, with ids pointing into {@link #getApps()} and {@link #getUris()}.
+     */
+    void writeTo(Segment.Writer writer) {
+        for (Hit row : rows) {
+            writer.append(row.time, row.appId, row.uriId, row.weight, row.ip());
+        }
+    }
+
+    void deleteJournal() throws IOException {
+        Files.deleteIfExists(journalFile);
+    }
+
+    /**
+     * The rows appended so far, or {@code null} while there are none.
+     */
+    HitSource snapshot() {
+        int limit = visible;
+        return limit > 0 ? new Snapshot(limit) : null;
+    }
+
+    static List<String> appsOf(List<EndpointHit> hits) {
+        Set<String> apps = new LinkedHashSet<>();
+        for (EndpointHit hit : hits) {
+            if (hit.getApp() != null) {
+                apps.add(hit.getApp());
+            }
+        }
+        return new ArrayList<>(apps);
+    }
+
+    static List<String> urisOf(List<EndpointHit> hits) {
+        Set<String> uris = new LinkedHashSet<>();
+        for (EndpointHit hit : hits) {
+            if (hit.getAttributes() != null && hit.getAttributes().getUri() != null) {
+                uris.add(hit.getAttributes().getUri());
+            }
+        }
+        return new ArrayList<>(uris);
+    }
+
+    /**
+     * Appends hits sorted by time, with app and uri ids pointing into the given string tables.
+     */
+    static void appendAll(Segment.Writer writer, List<EndpointHit> hits, List<String> apps, List<String> uris) {
+        Map<String, Integer> appIds = idsOf(apps);
+        Map<String, Integer> uriIds = idsOf(uris);
+        for (EndpointHit hit : hits) {
+            String uri = hit.getAttributes() != null ? hit.getAttributes().getUri() : null;
+            String ip = hit.getAttributes() != null ? hit.getAttributes().getIp() : null;
+            writer.append(Segment.toTime(hit.getCreatedOn()), hit.getApp() != null ? appIds.get(hit.getApp()) : 0,
+                    uri != null ? uriIds.get(uri) : 0, hit.getWeight(), IpAddresses.pack(ip));
+        }
+    }
+
+    /**
+     * Reads the hits of every intact record of a journal left behind by a previous run.
+     */
+    static List<EndpointHit> replay(Path journalFile) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(journalFile));
+        List<EndpointHit> hits = new ArrayList<>();
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            hits.addAll(decode(ByteBuffer.wrap(payload)));
+        }
+        return hits;
+    }
+
+    /**
+     * Id of a string in the memtable's table, adding it first if new; only called by the appending thread.
+     */
+    private static int idOf(String value, List<String> strings, Map<String, Integer> ids) {
+        if (value == null) {
+            return 0;
+        }
+        Integer id = ids.get(value);
+        if (id == null) {
+            strings.add(value);
+            id = strings.size();
+            ids.put(value, id);
+        }
+        return id;
+    }
+
+    private static Map<String, Integer> idsOf(List<String> strings) {
+        Map<String, Integer> ids = new HashMap<>();
+        for (int i = 0; i < strings.size(); i++) {
+            ids.put(strings.get(i), i + 1);
+        }
+        return ids;
+    }
+
+    private static byte[] encode(List<EndpointHit> batch) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(batch.size());
+            for (EndpointHit hit : batch) {
+                Attributes attributes = hit.getAttributes();
+                out.writeLong(Segment.toTime(hit.getCreatedOn()));
+                out.writeInt(hit.getWeight());
+                writeString(out, hit.getApp());
+                writeString(out, attributes != null ? attributes.getUri() : null);
+                writeString(out, attributes != null ? attributes.getIp() : null);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<EndpointHit> decode(ByteBuffer payload) {
+        int count = payload.getInt();
+        List<EndpointHit> batch = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long time = payload.getLong();
+            int weight = payload.getInt();
+            String app = readString(payload);
+            String uri = readString(payload);
+            String ip = readString(payload);
+            batch.add(EndpointHit.builder()
+                    .app(app)
+                    .attributes(new Attributes(uri, ip))
+                    .createdOn(Segment.toDateTime(time))
+                    .weight(weight)
+                    .build());
+        }
+        return batch;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private final class Snapshot implements HitSource {
+        private final int limit;
+
+        Snapshot(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public int getCount() {
+            return limit;
+        }
+
+        @Override
+        public long getMinTime() {
+            for (Hit row : rows) {
+                if (row.ordinal < limit) {
+                    return row.time;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public String app(int id) {
+            return id != 0 ? apps.get(id - 1) : null;
+        }
+
+        @Override
+        public String uri(int id) {
+            return id != 0 ? uris.get(id - 1) : null;
+        }
+
+        @Override
+        public void forEachRow(long from, long to, Collection<String> values, Consumer<HitSource.Row> consumer) {
+            Set<Integer> ids = null;
+            if (values != null) {
+                ids = new HashSet<>();
+                for (String value : values) {
+                    Integer id = uriIds.get(value);
+                    if (id != null) {
+                        ids.add(id);
+                    }
+                }
+                if (ids.isEmpty()) {
+                    return;
+                }
+            }
+            if (from >= to) {
+                return;
+            }
+            for (Hit row : rows.subSet(new Hit(from, Integer.MIN_VALUE), new Hit(to, Integer.MIN_VALUE))) {
+                if (row.ordinal < limit && (ids == null || ids.contains(row.uriId))) {
+                    consumer.accept(row);
+                }
+            }
+        }
+    }
+
+    private static final class Hit implements HitSource.Row {
+        private final long time;
+        private final int ordinal;
+        private final int appId;
+        private final int uriId;
+        private final int weight;
+        private final int ipLength;
+        private final long ipHigh;
+        private final long ipLow;
+
+        Hit(long time, int ordinal) {
+            this(time, ordinal, 0, 0, 0, null);
+        }
+
+        Hit(long time, int ordinal, int appId, int uriId, int weight, byte[] ip) {
+            this.time = time;
+            this.ordinal = ordinal;
+            this.appId = appId;
+            this.uriId = uriId;
+            this.weight = weight;
+            this.ipLength = ip != null ? ip.length : 0;
+            ByteBuffer padded = ByteBuffer.wrap(ip != null ? Arrays.copyOf(ip, Segment.IP_BYTES)
+                    : new byte[Segment.IP_BYTES]);
+            this.ipHigh = padded.getLong();
+            this.ipLow = padded.getLong();
+        }
+
+        byte[] ip() {
+            if (ipLength == 0) {
+                return null;
+            }
+            return Arrays.copyOf(ByteBuffer.allocate(Segment.IP_BYTES).putLong(ipHigh).putLong(ipLow).array(),
+                    ipLength);
+        }
+
+        @Override
+        public long time() {
+            return time;
+        }
+
+        @Override
+        public int appId() {
+            return appId;
+        }
+
+        @Override
+        public int uriId() {
+            return uriId;
+        }
+
+        @Override
+        public int weight() {
+            return weight;
+        }
+
+        @Override
+        public int ipLength() {
+            return ipLength;
+        }
+
+        @Override
+        public long ipHigh() {
+            return ipHigh;
+        }
+
+        @Override
+        public long ipLow() {
+            return ipLow;
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package ru.practicum.statistic.storage.segment;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Immutable, memory-mapped file of hits sorted by time, stored column by column:
+ * <pre>
+ * header   magic:int count:int minTime:long maxTime:long stride:int indexCount:int
+ * columns  time:long[count] appId:int[count] uriId:int[count] weight:int[count]
+ *          ipLength:byte[count] ip:byte[16][count]
+ * index    time:long[indexCount], the time of every stride-th row
+ * strings  appCount:int (length:int utf8)[appCount] uriCount:int (length:int utf8)[uriCount]
+ * </pre>
+ * Times are microseconds since the epoch in UTC. App and uri ids are local to the segment and point into
+ * its string tables starting from 1; id 0 stands for a missing value, as does ip length 0. Only the string
+ * tables are read onto the heap, rows are read straight from the mapping.
+ */
+public class Segment implements HitSource {
+    static final int MAGIC = 0x53454732;
+    static final int HEADER_SIZE = 32;
+    static final int IP_BYTES = 16;
+    static final int ROW_SIZE = Long.BYTES + 3 * Integer.BYTES + 1 + IP_BYTES;
+
+    private final Path file;
+    private final long sequence;
+    private final ByteBuffer buffer;
+    private final int count;
+    private final long minTime;
+    private final long maxTime;
+    private final int stride;
+    private final int indexCount;
+    private final List<String> apps;
+    private final List<String> uris;
+    private final Map<String, Integer> uriIds = new HashMap<>();
+
+    Segment(Path file, long sequence) {
+        this.file = file;
+        this.sequence = sequence;
+        this.buffer = map(file);
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IllegalStateException("Not a hit segment: " + file);
+        }
+        this.count = buffer.getInt(4);
+        this.minTime = buffer.getLong(8);
+        this.maxTime = buffer.getLong(16);
+        this.stride = buffer.getInt(24);
+        this.indexCount = buffer.getInt(28);
+        ByteBuffer strings = buffer.duplicate();
+        strings.position((int) (indexOffset() + (long) indexCount * Long.BYTES));
+        this.apps = readStrings(strings);
+        this.uris = readStrings(strings);
+        for (int i = 0; i < uris.size(); i++) {
+            uriIds.put(uris.get(i), i + 1);
+        }
+    }
+
+    private static ByteBuffer map(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static long toTime(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + dateTime.getNano() / 1_000;
+    }
+
+    static LocalDateTime toDateTime(long time) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(time, 1_000_000L),
+                (int) Math.floorMod(time, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public long getMinTime() {
+        return minTime;
+    }
+
+    long getMaxTime() {
+        return maxTime;
+    }
+
+    List<String> getApps() {
+        return apps;
+    }
+
+    List<String> getUris() {
+        return uris;
+    }
+
+    boolean overlaps(long from, long to) {
+        return count > 0 && minTime < to && maxTime >= from;
+    }
+
+    @Override
+    public String app(int id) {
+        return id != 0 ? apps.get(id - 1) : null;
+    }
+
+    @Override
+    public String uri(int id) {
+        return id != 0 ? uris.get(id - 1) : null;
+    }
+
+    /**
+     * Sorted local ids of the given uris; uris this segment never saw are left out.
+     */
+    int[] uriIdsOf(Collection<String> values) {
+        return values.stream()
+                .map(uriIds::get)
+                .filter(Objects::nonNull)
+                .mapToInt(Integer::intValue)
+                .sorted()
+                .toArray();
+    }
+
+    @Override
+    public void forEachRow(long from, long to, Collection<String> uris, Consumer<Row> consumer) {
+        if (!overlaps(from, to)) {
+            return;
+        }
+        int[] ids = uris != null ? uriIdsOf(uris) : null;
+        if (ids != null && ids.length == 0) {
+            return;
+        }
+        Cursor cursor = new Cursor();
+        for (cursor.row = firstRowAtOrAfter(from); cursor.row < count; cursor.row++) {
+            if (time(cursor.row) >= to) {
+                return;
+            }
+            if (ids == null || Arrays.binarySearch(ids, uriId(cursor.row)) >= 0) {
+                consumer.accept(cursor);
+            }
+        }
+    }
+
+    /**
+     * First row with a time of at least {@code from}: a binary search over the sparse index narrows it down
+     * to one stride, which is then scanned.
+     */
+    int firstRowAtOrAfter(long from) {
+        int low = 0;
+        int high = indexCount - 1;
+        int block = 0;
+        long indexOffset = indexOffset();
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (buffer.getLong((int) (indexOffset + (long) mid * Long.BYTES)) < from) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        int row = block * stride;
+        while (row < count && time(row) < from) {
+            row++;
+        }
+        return row;
+    }
+
+    long time(int row) {
+        return buffer.getLong((int) (HEADER_SIZE + (long) row * Long.BYTES));
+    }
+
+    int appId(int row) {
+        return buffer.getInt((int) (appOffset() + (long) row * Integer.BYTES));
+    }
+
+    int uriId(int row) {
+        return buffer.getInt((int) (uriOffset() + (long) row * Integer.BYTES));
+    }
+
+    int weight(int row) {
+        return buffer.getInt((int) (weightOffset() + (long) row * Integer.BYTES));
+    }
+
+    int ipLength(int row) {
+        return buffer.get((int) (ipLengthOffset() + row));
+    }
+
+    long ipHigh(int row) {
+        return buffer.getLong((int) (ipOffset() + (long) row * IP_BYTES));
+    }
+
+    long ipLow(int row) {
+        return buffer.getLong((int) (ipOffset() + (long) row * IP_BYTES + Long.BYTES));
+    }
+
+    byte[] ip(int row) {
+        int length = ipLength(row);
+        if (length == 0) {
+            return null;
+        }
+        byte[] ip = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position((int) (ipOffset() + (long) row * IP_BYTES));
+        view.get(ip);
+        return ip;
+    }
+
+    private long appOffset() {
+        return HEADER_SIZE + (long) count * Long.BYTES;
+    }
+
+    private long uriOffset() {
+        return appOffset() + (long) count * Integer.BYTES;
+    }
+
+    private long weightOffset() {
+        return uriOffset() + (long) count * Integer.BYTES;
+    }
+
+    private long ipLengthOffset() {
+        return weightOffset() + (long) count * Integer.BYTES;
+    }
+
+    private long ipOffset() {
+        return ipLengthOffset() + count;
+    }
+
+    private long indexOffset() {
+        return ipOffset() + (long) count * IP_BYTES;
+    }
+
+    /**
+     * One row after another of a scan, read straight from the buffer.
+     */
+    private final class Cursor implements Row {
+        private int row;
+
+        @Override
+        public long time() {
+            return Segment.this.time(row);
+        }
+
+        @Override
+        public int appId() {
+            return Segment.this.appId(row);
+        }
+
+        @Override
+        public int uriId() {
+            return Segment.this.uriId(row);
+        }
+
+        @Override
+        public int weight() {
+            return Segment.this.weight(row);
+        }
+
+        @Override
+        public int ipLength() {
+            return Segment.this.ipLength(row);
+        }
+
+        @Override
+        public long ipHigh() {
+            return Segment.this.ipHigh(row);
+        }
+
+        @Override
+        public long ipLow() {
+            return Segment.this.ipLow(row);
+        }
+    }
+
+    private static List<String> readStrings(ByteBuffer buffer) {
+        int size = buffer.getInt();
+        List<String> strings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            strings.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return Collections.unmodifiableList(strings);
+    }
+
+    /**
+     * Writes a segment column by column into a mapped file.
+     * Rows must be appended in time order, with app and uri ids pointing into the string tables given upfront.
+     */
+    static class Writer implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final int count;
+        private final int stride;
+        private final List<byte[]> apps;
+        private final List<byte[]> uris;
+        private int row;
+        private long minTime = Long.MAX_VALUE;
+        private long maxTime = Long.MIN_VALUE;
+
+        Writer(Path file, int count, int stride, List<String> apps, List<String> uris) {
+            this.count = count;
+            this.stride = stride;
+            this.apps = encode(apps);
+            this.uris = encode(uris);
+            long size = HEADER_SIZE + (long) count * ROW_SIZE + (long) indexCountOf() * Long.BYTES
+                    + sizeOf(this.apps) + sizeOf(this.uris);
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Segment of " + count + " rows exceeds the 2 GB mapping limit");
+            }
+            try {
+                this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void append(long time, int appId, int uriId, int weight, byte[] ip) {
+            long column = HEADER_SIZE;
+            buffer.putLong((int) (column + (long) row * Long.BYTES), time);
+            column += (long) count * Long.BYTES;
+            buffer.putInt((int) (column + (long) row * Integer.BYTES), appId);
+            column += (long) count * Integer.BYTES;
+            buffer.putInt((int) (column + (long) row * Integer.BYTES), uriId);
+            column += (long) count * Integer.BYTES;
+            buffer.putInt((int) (column + (long) row * Integer.BYTES), weight);
+            column += (long) count * Integer.BYTES;
+            buffer.put((int) (column + row), (byte) (ip != null ? ip.length : 0));
+            column += count;
+            if (ip != null) {
+                for (int i = 0; i < ip.length; i++) {
+                    buffer.put((int) (column + (long) row * IP_BYTES + i), ip[i]);
+                }
+            }
+            column += (long) count * IP_BYTES;
+            if (row % stride == 0) {
+                buffer.putLong((int) (column + (long) (row / stride) * Long.BYTES), time);
+            }
+            minTime = Math.min(minTime, time);
+            maxTime = Math.max(maxTime, time);
+            row++;
+        }
+
+        @Override
+        public void close() {
+            if (row != count) {
+                throw new IllegalStateException("Segment expects " + count + " rows, got " + row);
+            }
+            buffer.position((int) (HEADER_SIZE + (long) count * ROW_SIZE + (long) indexCountOf() * Long.BYTES));
+            writeStrings(apps);
+            writeStrings(uris);
+            buffer.putInt(4, count);
+            buffer.putLong(8, minTime);
+            buffer.putLong(16, maxTime);
+            buffer.putInt(24, stride);
+            buffer.putInt(28, indexCountOf());
+            buffer.putInt(0, MAGIC);
+            ((MappedByteBuffer) buffer).force();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private int indexCountOf() {
+            return (count + stride - 1) / stride;
+        }
+
+        private void writeStrings(List<byte[]> strings) {
+            buffer.putInt(strings.size());
+            for (byte[] bytes : strings) {
+                buffer.putInt(bytes.length);
+                buffer.put(bytes);
+            }
+        }
+
+        private static List<byte[]> encode(List<String> strings) {
+            List<byte[]> encoded = new ArrayList<>(strings.size());
+            for (String string : strings) {
+                encoded.add(string.getBytes(StandardCharsets.UTF_8));
+            }
+            return encoded;
+        }
+
+        private static long sizeOf(List<byte[]> strings) {
+            long size = Integer.BYTES;
+            for (byte[] bytes : strings) {
+                size += Integer.BYTES + bytes.length;
+            }
+            return size;
+        }
+    }
+}
@@ -0,0 +1,565 @@
+package ru.practicum.statistic.storage.segment;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.statistic.aggregate.AppUri;
+import ru.practicum.statistic.aggregate.LongLongMap;
+import ru.practicum.statistic.model.BucketCount;
+import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.model.HitAddress;
+import ru.practicum.statistic.model.HitCount;
+import ru.practicum.statistic.model.ViewStats;
+import ru.practicum.statistic.storage.HitDictionary;
+import ru.practicum.statistic.storage.HitStorage;
+import ru.practicum.statistic.storage.IpAddresses;
+import ru.practicum.statistic.storage.PartitionProperties;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps raw hits in immutable {@link Segment} files on local disk instead of the {@code statistic} table.
+ * Batches go to a {@link Memtable}, journaled before the call returns, which is written out as one segment
+ * once it holds memtable-rows hits or is memtable-max-age old; journals left by a crash become segments on
+ * startup. Compaction merges runs of small segments into large ones and drops segments past the partition
+ * retention. Queries see the segments and the memtable together, skip segments whose time range misses the
+ * requested one and scan the rest sequentially from the mapped columns, and the memtable's range in place.
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "statistic.storage.backend", havingValue = "segment")
+public class SegmentHitStorage implements HitStorage {
+    private static final String SEGMENT_FORMAT = "hits-%020d.seg";
+    private static final String SEGMENT_REGEX = "hits-\\d{20}\\.seg";
+    private static final long MICROS_PER_MINUTE = 60_000_000L;
+
+    private final SegmentProperties properties;
+    private final PartitionProperties partitionProperties;
+    private final HitDictionary hitDictionary;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Object compactionLock = new Object();
+    private final Object memtableLock = new Object();
+    private volatile List<Segment> segments = Collections.emptyList();
+    private volatile Memtable memtable;
+    private Memtable flushing;
+    private Path directory;
+
+    public SegmentHitStorage(SegmentProperties properties, PartitionProperties partitionProperties,
+                             HitDictionary hitDictionary) {
+        this.properties = properties;
+        this.partitionProperties = partitionProperties;
+        this.hitDictionary = hitDictionary;
+    }
+
+    @PostConstruct
+    void open() throws IOException {
+        directory = Paths.get(properties.getDirectory());
+        Files.createDirectories(directory);
+        List<Segment> opened = new ArrayList<>();
+        List<Path> journals = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.sorted().collect(Collectors.toList())) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.delete(file);
+                } else if (name.matches(SEGMENT_REGEX)) {
+                    opened.add(new Segment(file, Long.parseLong(name.substring(5, 25))));
+                } else if (name.matches(Memtable.JOURNAL_REGEX)) {
+                    journals.add(file);
+                }
+            }
+        }
+        for (Segment segment : opened) {
+            sequence.set(Math.max(sequence.get(), segment.getSequence()));
+        }
+        for (Path journal : journals) {
+            long journalSequence = Memtable.sequenceOf(journal);
+            sequence.set(Math.max(sequence.get(), journalSequence));
+            Path written = directory.resolve(String.format(SEGMENT_FORMAT, journalSequence));
+            List<EndpointHit> hits = Memtable.replay(journal);
+            if (!Files.exists(written) && !hits.isEmpty()) {
+                hits.sort(Comparator.comparing(EndpointHit::getCreatedOn));
+                opened.add(writeHits(journalSequence, hits));
+                log.info("Recovered {} hits from memtable journal {}", hits.size(), journal.getFileName());
+            }
+            Files.delete(journal);
+        }
+        Set<String> apps = new HashSet<>();
+        Set<String> uris = new HashSet<>();
+        for (Segment segment : opened) {
+            apps.addAll(segment.getApps());
+            uris.addAll(segment.getUris());
+        }
+        hitDictionary.intern(apps, uris);
+        segments = Collections.unmodifiableList(opened);
+        memtable = new Memtable(directory, sequence.incrementAndGet());
+        log.info("Opened {} hit segments in {}", opened.size(), directory.toAbsolutePath());
+    }
+
+    @PreDestroy
+    void close() {
+        flushMemtable();
+    }
+
+    /**
+     * Appends the hits once the surrounding transaction commits, so that a rolled back and retried batch is
+     * not stored twice; without a transaction they are appended right away. Segments are ordered by time, so
+     * hits without a timestamp are rejected.
+     */
+    @Override
+    public void saveAllInBatch(List<EndpointHit> endpointHits) {
+        List<EndpointHit> timed = endpointHits.stream()
+                .filter(hit -> hit.getCreatedOn() != null)
+                .collect(Collectors.toList());
+        if (timed.size() < endpointHits.size()) {
+            log.warn("Rejected {} hits without a timestamp, the segment storage cannot place them",
+                    endpointHits.size() - timed.size());
+        }
+        if (timed.isEmpty()) {
+            return;
+        }
+        hitDictionary.intern(timed);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            append(timed);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public int getOrder() {
+                return Ordered.HIGHEST_PRECEDENCE;
+            }
+
+            @Override
+            public void afterCommit() {
+                append(timed);
+            }
+        });
+    }
+
+    private void append(List<EndpointHit> timed) {
+        Memtable target = memtable;
+        while (!target.append(timed)) {
+            target = memtable;
+        }
+        if (target.size() >= properties.getMemtableRows()) {
+            flushMemtable();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${statistic.segment.memtable-check-interval-ms:1000}")
+    public void flushStaleMemtable() {
+        Memtable current = memtable;
+        if (current.size() > 0 && current.ageNanos() >= properties.getMemtableMaxAge().toNanos()) {
+            flushMemtable();
+        }
+    }
+
+    /**
+     * Writes the current memtable out as a segment. Until the segment is in place, queries keep reading the
+     * closed memtable, so its hits are never missing nor seen twice; a memtable that failed to be written out
+     * is retried before the next one is closed.
+     */
+    void flushMemtable() {
+        synchronized (memtableLock) {
+            Memtable closing;
+            synchronized (this) {
+                if (flushing == null) {
+                    if (memtable.size() == 0) {
+                        return;
+                    }
+                    flushing = memtable;
+                    memtable = new Memtable(directory, sequence.incrementAndGet());
+                }
+                closing = flushing;
+            }
+            closing.close();
+            Segment segment;
+            try {
+                segment = write(closing.getSequence(), closing.size(), closing.getApps(), closing.getUris(),
+                        closing::writeTo);
+            } catch (RuntimeException e) {
+                log.warn("Could not write memtable {} out, retrying on the next flush", closing.getSequence(), e);
+                return;
+            }
+            synchronized (this) {
+                List<Segment> updated = new ArrayList<>(segments);
+                updated.add(segment);
+                segments = Collections.unmodifiableList(updated);
+                flushing = null;
+            }
+            try {
+                closing.deleteJournal();
+            } catch (IOException e) {
+                log.warn("Could not delete memtable journal {}", closing.getSequence(), e);
+            }
+        }
+    }
+
+    /**
+     * The segments together with the memtable, and the memtable being written out if any.
+     */
+    private synchronized List<HitSource> snapshot() {
+        List<HitSource> snapshot = new ArrayList<>(segments);
+        for (Memtable table : Arrays.asList(flushing, memtable)) {
+            HitSource rows = table != null ? table.snapshot() : null;
+            if (rows != null) {
+                snapshot.add(rows);
+            }
+        }
+        return snapshot;
+    }
+
+    @Override
+    public List<ViewStats> countHits(LocalDateTime from, LocalDateTime to, Collection<String> uris) {
+        Range range = new Range(from, to, uris);
+        Map<AppUri, Long> hits = new HashMap<>();
+        for (HitSource source : snapshot()) {
+            LongLongMap groups = new LongLongMap();
+            range.forEachRow(source, row ->
+                    groups.addTo(groupOf(row.appId(), row.uriId()), row.weight()));
+            groups.forEach((group, count) -> hits.merge(appUriOf(source, group), count, Long::sum));
+        }
+        return sortedCounts(hits);
+    }
+
+    @Override
+    public List<BucketCount> countHitsByMinute(LocalDateTime from, LocalDateTime to, Collection<String> uris) {
+        Range range = new Range(from, to, uris);
+        Map<AppUri, LongLongMap> hits = new HashMap<>();
+        for (HitSource source : snapshot()) {
+            Map<Long, LongLongMap> groups = new HashMap<>();
+            range.forEachRow(source, row ->
+                    groups.computeIfAbsent(groupOf(row.appId(), row.uriId()), group -> new LongLongMap())
+                            .addTo(Math.floorDiv(row.time(), MICROS_PER_MINUTE), row.weight()));
+            groups.forEach((group, minutes) ->
+                    hits.computeIfAbsent(appUriOf(source, group), appUri -> new LongLongMap()).addAll(minutes));
+        }
+        List<BucketCount> result = new ArrayList<>();
+        hits.forEach((appUri, minutes) -> minutes.forEach((minute, count) -> result.add(new BucketCount(
+                appUri.getApp(), appUri.getUri(), Segment.toDateTime(minute * MICROS_PER_MINUTE), count))));
+        return result;
+    }
+
+    @Override
+    public List<ViewStats> countUniqueHits(LocalDateTime from, LocalDateTime to, Collection<String> uris) {
+        Range range = new Range(from, to, uris);
+        Map<AppUri, Set<Address>> addresses = new HashMap<>();
+        for (HitSource source : snapshot()) {
+            Map<Long, Set<Address>> groups = new HashMap<>();
+            range.forEachRow(source, row -> {
+                if (row.ipLength() > 0) {
+                    groups.computeIfAbsent(groupOf(row.appId(), row.uriId()), group -> new HashSet<>())
+                            .add(Address.of(row));
+                }
+            });
+            groups.forEach((group, ips) -> addresses.computeIfAbsent(appUriOf(source, group),
+                    appUri -> new HashSet<>()).addAll(ips));
+        }
+        Map<AppUri, Long> hits = new HashMap<>();
+        addresses.forEach((appUri, ips) -> hits.put(appUri, (long) ips.size()));
+        return sortedCounts(hits);
+    }
+
+    @Override
+    public List<BucketCount> countUniqueHitsByMinute(LocalDateTime from, LocalDateTime to,
+                                                     Collection<String> uris) {
+        Range range = new Range(from, to, uris);
+        Map<AppUri, Map<Long, Set<Address>>> addresses = new HashMap<>();
+        for (HitSource source : snapshot()) {
+            Map<Long, Map<Long, Set<Address>>> groups = new HashMap<>();
+            range.forEachRow(source, row -> {
+                if (row.ipLength() > 0) {
+                    groups.computeIfAbsent(groupOf(row.appId(), row.uriId()), group -> new HashMap<>())
+                            .computeIfAbsent(Math.floorDiv(row.time(), MICROS_PER_MINUTE),
+                                    minute -> new HashSet<>())
+                            .add(Address.of(row));
+                }
+            });
+            groups.forEach((group, minutes) -> {
+                Map<Long, Set<Address>> merged = addresses.computeIfAbsent(appUriOf(source, group),
+                        appUri -> new HashMap<>());
+                minutes.forEach((minute, ips) -> merged.computeIfAbsent(minute, key -> new HashSet<>()).addAll(ips));
+            });
+        }
+        List<BucketCount> result = new ArrayList<>();
+        addresses.forEach((appUri, minutes) -> minutes.forEach((minute, ips) -> result.add(new BucketCount(
+                appUri.getApp(), appUri.getUri(), Segment.toDateTime(minute * MICROS_PER_MINUTE),
+                (long) ips.size()))));
+        return result;
+    }
+
+    @Override
+    public List<HitAddress> findAddresses(LocalDateTime from, LocalDateTime to, Collection<String> uris) {
+        Range range = new Range(from, to, uris);
+        Map<AppUri, Set<Address>> addresses = new HashMap<>();
+        for (HitSource source : snapshot()) {
+            Map<Long, Set<Address>> groups = new HashMap<>();
+            range.forEachRow(source, row ->
+                    groups.computeIfAbsent(groupOf(row.appId(), row.uriId()), group -> new HashSet<>())
+                            .add(Address.of(row)));
+            groups.forEach((group, ips) -> addresses.computeIfAbsent(appUriOf(source, group),
+                    appUri -> new HashSet<>()).addAll(ips));
+        }
+        List<HitAddress> result = new ArrayList<>();
+        addresses.forEach((appUri, ips) -> ips.forEach(address -> result.add(
+                new HitAddress(appUri.getApp(), appUri.getUri(), IpAddresses.format(address.toBytes())))));
+        return result;
+    }
+
+    @Override
+    public LocalDateTime findOldest() {
+        OptionalLong oldest = snapshot().stream()
+                .filter(source -> source.getCount() > 0)
+                .mapToLong(HitSource::getMinTime)
+                .min();
+        return oldest.isPresent() ? Segment.toDateTime(oldest.getAsLong()) : null;
+    }
+
+    /**
+     * Drops the hits before {@code to}: segments that ended before it are deleted, and a segment reaching past
+     * it is rewritten without its older rows. Hits still in the memtable are written out first. Deleting files
+     * holds no row locks, so the limit does not apply.
+     */
+    @Override
+    public int deleteBefore(LocalDateTime to, int limit) {
+        long horizon = Segment.toTime(to);
+        synchronized (compactionLock) {
+            if (holdsHitsBefore(horizon)) {
+                flushMemtable();
+            }
+            int deleted = 0;
+            for (Segment segment : segments) {
+                if (segment.getCount() == 0 || segment.getMinTime() >= horizon) {
+                    continue;
+                }
+                if (segment.getMaxTime() < horizon) {
+                    deleted += segment.getCount();
+                    replace(Collections.singletonList(segment), null);
+                    continue;
+                }
+                int first = segment.firstRowAtOrAfter(horizon);
+                Segment kept = write(sequence.incrementAndGet(), segment.getCount() - first, segment.getApps(),
+                        segment.getUris(), writer -> {
+                            for (int row = first; row < segment.getCount(); row++) {
+                                writer.append(segment.time(row), segment.appId(row), segment.uriId(row),
+                                        segment.weight(row), segment.ip(row));
+                            }
+                        });
+                replace(Collections.singletonList(segment), kept);
+                deleted += first;
+            }
+            return deleted;
+        }
+    }
+
+    private synchronized boolean holdsHitsBefore(long horizon) {
+        for (Memtable table : Arrays.asList(flushing, memtable)) {
+            HitSource rows = table != null ? table.snapshot() : null;
+            if (rows != null && rows.getMinTime() < horizon) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Merges runs of consecutive small segments into segments of up to the compacted size, and deletes
+     * segments that ended before the retention horizon.
+     */
+    @Scheduled(fixedDelayString = "${statistic.segment.compaction-interval-ms:60000}")
+    public void compact() {
+        synchronized (compactionLock) {
+            dropExpired();
+            List<Segment> small = segments.stream()
+                    .filter(segment -> segment.getCount() < properties.getSmallSegmentRows())
+                    .sorted(Comparator.comparingLong(Segment::getMinTime))
+                    .collect(Collectors.toList());
+            List<Segment> run = new ArrayList<>();
+            long rows = 0;
+            for (Segment segment : small) {
+                if (rows + segment.getCount() > properties.getCompactedSegmentRows()) {
+                    merge(run);
+                    run = new ArrayList<>();
+                    rows = 0;
+                }
+                run.add(segment);
+                rows += segment.getCount();
+            }
+            merge(run);
+        }
+    }
+
+    private void merge(List<Segment> run) {
+        if (run.size() < 2) {
+            return;
+        }
+        int count = run.stream().mapToInt(Segment::getCount).sum();
+        Map<String, Integer> apps = new LinkedHashMap<>();
+        Map<String, Integer> uris = new LinkedHashMap<>();
+        List<int[]> appIds = new ArrayList<>();
+        List<int[]> uriIds = new ArrayList<>();
+        for (Segment segment : run) {
+            appIds.add(remap(segment.getApps(), apps));
+            uriIds.add(remap(segment.getUris(), uris));
+        }
+        Segment merged = write(sequence.incrementAndGet(), count, new ArrayList<>(apps.keySet()), new ArrayList<>(uris.keySet()), writer -> {
+            int[] rows = new int[run.size()];
+            PriorityQueue<Integer> cursors = new PriorityQueue<>(Comparator.comparingLong(
+                    (Integer index) -> run.get(index).time(rows[index])));
+            for (int i = 0; i < run.size(); i++) {
+                cursors.add(i);
+            }
+            while (!cursors.isEmpty()) {
+                int index = cursors.poll();
+                Segment segment = run.get(index);
+                int row = rows[index];
+                writer.append(segment.time(row), appIds.get(index)[segment.appId(row)],
+                        uriIds.get(index)[segment.uriId(row)], segment.weight(row), segment.ip(row));
+                if (++rows[index] < segment.getCount()) {
+                    cursors.add(index);
+                }
+            }
+        });
+        replace(run, merged);
+        log.info("Compacted {} hit segments into {} with {} rows", run.size(), merged.getFile().getFileName(), count);
+    }
+
+    /**
+     * Maps the local ids of a segment's strings (index 0 stays the missing value) to ids in the merged table.
+     */
+    private static int[] remap(List<String> strings, Map<String, Integer> merged) {
+        int[] ids = new int[strings.size() + 1];
+        for (int i = 0; i < strings.size(); i++) {
+            ids[i + 1] = merged.computeIfAbsent(strings.get(i), string -> merged.size() + 1);
+        }
+        return ids;
+    }
+
+    private void dropExpired() {
+        if (partitionProperties.getRetention() == null) {
+            return;
+        }
+        long horizon = Segment.toTime(LocalDateTime.now().minus(partitionProperties.getRetention()));
+        List<Segment> expired = segments.stream()
+                .filter(segment -> segment.getMaxTime() < horizon)
+                .collect(Collectors.toList());
+        if (!expired.isEmpty()) {
+            replace(expired, null);
+            log.info("Dropped {} hit segments past retention", expired.size());
+        }
+    }
+
+    private void replace(List<Segment> removed, Segment added) {
+        synchronized (this) {
+            List<Segment> updated = new ArrayList<>(segments);
+            updated.removeAll(removed);
+            if (added != null) {
+                updated.add(added);
+            }
+            segments = Collections.unmodifiableList(updated);
+        }
+        for (Segment segment : removed) {
+            try {
+                Files.deleteIfExists(segment.getFile());
+            } catch (IOException e) {
+                log.warn("Could not delete hit segment {}", segment.getFile(), e);
+            }
+        }
+    }
+
+    private Segment writeHits(long next, List<EndpointHit> sorted) {
+        List<String> apps = Memtable.appsOf(sorted);
+        List<String> uris = Memtable.urisOf(sorted);
+        return write(next, sorted.size(), apps, uris, writer -> Memtable.appendAll(writer, sorted, apps, uris));
+    }
+
+    private Segment write(long next, int count, List<String> apps, List<String> uris, SegmentContent content) {
+        Path file = directory.resolve(String.format(SEGMENT_FORMAT, next));
+        Path temporary = directory.resolve(file.getFileName() + ".tmp");
+        try {
+            try (Segment.Writer writer = new Segment.Writer(temporary, count, properties.getIndexStride(),
+                    apps, uris)) {
+                content.writeTo(writer);
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Segment(file, next);
+    }
+
+    private static long groupOf(int appId, int uriId) {
+        return ((long) appId << 32) | (uriId & 0xffffffffL);
+    }
+
+    private static AppUri appUriOf(HitSource source, long group) {
+        return new AppUri(source.app((int) (group >>> 32)), source.uri((int) group));
+    }
+
+    private static List<ViewStats> sortedCounts(Map<AppUri, Long> hits) {
+        return hits.entrySet().stream()
+                .sorted(Map.Entry.<AppUri, Long>comparingByValue().reversed())
+                .map(entry -> new HitCount(entry.getKey().getApp(), entry.getKey().getUri(), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    private interface SegmentContent {
+        void writeTo(Segment.Writer writer);
+    }
+
+    private static final class Range {
+        private final long from;
+        private final long to;
+        private final Collection<String> uris;
+
+        Range(LocalDateTime from, LocalDateTime to, Collection<String> uris) {
+            this.from = Segment.toTime(from);
+            this.to = Segment.toTime(to);
+            this.uris = uris != null && !uris.isEmpty() ? uris : null;
+        }
+
+        void forEachRow(HitSource source, Consumer<HitSource.Row> consumer) {
+            source.forEachRow(from, to, uris, consumer);
+        }
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static final class Address {
+        private final long high;
+        private final long low;
+        private final int length;
+
+        static Address of(HitSource.Row row) {
+            int length = row.ipLength();
+            return length == 0 ? new Address(0, 0, 0) : new Address(row.ipHigh(), row.ipLow(), length);
+        }
+
+        byte[] toBytes() {
+            if (length == 0) {
+                return null;
+            }
+            return Arrays.copyOf(ByteBuffer.allocate(Segment.IP_BYTES).putLong(high).putLong(low).array(), length);
+        }
+    }
+}
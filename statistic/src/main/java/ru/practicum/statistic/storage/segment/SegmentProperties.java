@@ -0,0 +1,21 @@
+package ru.practicum.statistic.storage.segment;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "statistic.segment")
+public class SegmentProperties {
+    private String directory = "segments";
+    private int indexStride = 1024;
+    private int smallSegmentRows = 100000;
+    private int compactedSegmentRows = 5000000;
+    private int memtableRows = 50000;
+    private Duration memtableMaxAge = Duration.ofMinutes(1);
+}
@@ -1,9 +1,85 @@
+drop table if exists statistic_app cascade;
+
+create table if not exists statistic_app
+(
+    id   integer generated always as identity primary key,
+    name varchar(100) not null unique
+);
+
+drop table if exists statistic_uri cascade;
+
+create table if not exists statistic_uri
+(
+    id  integer generated always as identity primary key,
+    uri varchar not null unique
+);
+
 drop table if exists statistic cascade;
 
 create table if not exists statistic
 (
-    id          bigint generated always as identity primary key,
-    app         varchar(100),
-    attributes  jsonb,
-    created_on timestamp
-);
\ No newline at end of file
+    id          bigint generated always as identity,
+    app_id      integer,
+    uri_id      integer,
+    ip          bytea,
+    created_on timestamp,
+    weight      integer not null default 1
+) partition by range (created_on);
+
+create index if not exists statistic_created_on_idx on statistic (created_on);
+create index if not exists statistic_uri_id_created_on_idx on statistic (uri_id, created_on);
+
+create table if not exists statistic_default partition of statistic default;
+
+drop table if exists statistic_rollup cascade;
+
+create table if not exists statistic_rollup
+(
+    granularity  varchar(10)  not null,
+    bucket_start timestamp    not null,
+    app          varchar(100) not null,
+    uri          varchar      not null,
+    hits         bigint       not null,
+    primary key (granularity, bucket_start, app, uri)
+);
+
+
+drop table if exists statistic_sketch cascade;
+
+create table if not exists statistic_sketch
+(
+    granularity  varchar(10)  not null,
+    bucket_start timestamp    not null,
+    app          varchar(100) not null,
+    uri          varchar      not null,
+    registers    bytea        not null,
+    primary key (granularity, bucket_start, app, uri)
+);
+
+
+drop table if exists statistic_ip cascade;
+
+create table if not exists statistic_ip
+(
+    id integer generated always as identity primary key,
+    ip varchar not null unique
+);
+
+drop table if exists statistic_bitmap cascade;
+
+create table if not exists statistic_bitmap
+(
+    bucket_start timestamp    not null,
+    app          varchar(100) not null,
+    uri          varchar      not null,
+    ip_ids       bytea        not null,
+    primary key (bucket_start, app, uri)
+);
+
+drop table if exists statistic_event_views cascade;
+
+create table if not exists statistic_event_views
+(
+    event_id bigint primary key,
+    views    bigint not null
+);
@@ -0,0 +1,86 @@
+package ru.practicum.statistic.aggregate;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class CompressedBitmapTest {
+    private static final int CONTAINER_HEADER = Character.BYTES + 1 + Integer.BYTES;
+    private static final int BITMAP_CONTAINER_SIZE = 1024 * Long.BYTES;
+
+    @Test
+    void containerSwitchesFromArrayToBitmapPastTheArrayLimit() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int i = 0; i < 4096; i++) {
+            bitmap.add(i * 3);
+        }
+        assertThat(bitmap.toBytes().length, equalTo(Integer.BYTES + CONTAINER_HEADER + 4096 * Character.BYTES));
+
+        bitmap.add(1);
+        bitmap.add(0);
+
+        assertThat(bitmap.cardinality(), equalTo(4097L));
+        assertThat(bitmap.toBytes().length, equalTo(Integer.BYTES + CONTAINER_HEADER + BITMAP_CONTAINER_SIZE));
+    }
+
+    @Test
+    void orUnionsContainersOfBothKinds() {
+        CompressedBitmap dense = new CompressedBitmap();
+        for (int i = 0; i < 10000; i++) {
+            dense.add(i);
+        }
+        CompressedBitmap sparse = new CompressedBitmap();
+        for (int i = 5000; i < 15000; i += 2) {
+            sparse.add(i);
+        }
+        sparse.add(1 << 20);
+        sparse.add(-1);
+
+        CompressedBitmap union = new CompressedBitmap();
+        union.or(sparse);
+        union.or(dense);
+        sparse.or(dense);
+
+        long expected = 10000 + 2500 + 2;
+        assertThat(union.cardinality(), equalTo(expected));
+        assertThat(sparse.cardinality(), equalTo(expected));
+        assertThat(dense.cardinality(), equalTo(10000L));
+    }
+
+    @Test
+    void orOfTwoArraysOverflowingTheLimitBecomesABitmap() {
+        CompressedBitmap even = new CompressedBitmap();
+        CompressedBitmap odd = new CompressedBitmap();
+        for (int i = 0; i < 3000; i++) {
+            even.add(2 * i);
+            odd.add(2 * i + 1);
+        }
+
+        even.or(odd);
+
+        assertThat(even.cardinality(), equalTo(6000L));
+        assertThat(even.toBytes().length, equalTo(Integer.BYTES + CONTAINER_HEADER + BITMAP_CONTAINER_SIZE));
+    }
+
+    @Test
+    void toBytesAndFromBytesRoundTrip() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int i = 0; i < 5000; i++) {
+            bitmap.add(i);
+        }
+        for (int i = 0; i < 100; i++) {
+            bitmap.add((7 << 16) + i * 11);
+        }
+        bitmap.add(Integer.MAX_VALUE);
+
+        byte[] bytes = bitmap.toBytes();
+        CompressedBitmap restored = CompressedBitmap.fromBytes(bytes);
+
+        assertThat(restored.cardinality(), equalTo(5101L));
+        assertThat(restored.toBytes(), equalTo(bytes));
+        restored.add(4999);
+        restored.add((7 << 16) + 1);
+        assertThat(restored.cardinality(), equalTo(5102L));
+    }
+}
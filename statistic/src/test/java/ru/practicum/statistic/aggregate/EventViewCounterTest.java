@@ -0,0 +1,86 @@
+package ru.practicum.statistic.aggregate;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import ru.practicum.statistic.model.Attributes;
+import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.storage.EventViewRepository;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+public class EventViewCounterTest {
+    private final EventViewRepository eventViewRepository = Mockito.mock(EventViewRepository.class);
+    private final EventViewCounter eventViewCounter = new EventViewCounter(eventViewRepository);
+    private final Map<Long, Long> stored = new HashMap<>();
+
+    @Test
+    void readOverlappingAFlushCountsTheBatchOnce() throws Exception {
+        CountDownLatch flushStarted = new CountDownLatch(1);
+        CountDownLatch releaseFlush = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            flushStarted.countDown();
+            releaseFlush.await();
+            LongLongMap batch = invocation.getArgument(0);
+            synchronized (stored) {
+                batch.forEach((eventId, views) -> stored.merge(eventId, views, Long::sum));
+            }
+            return null;
+        }).when(eventViewRepository).increment(any());
+        when(eventViewRepository.findViews(anyCollection())).thenAnswer(invocation -> {
+            synchronized (stored) {
+                return new HashMap<>(stored);
+            }
+        });
+        eventViewCounter.record(Arrays.asList(hit("/events/7"), hit("/events/7"), hit("/events/8")));
+
+        CompletableFuture<Void> flush = CompletableFuture.runAsync(eventViewCounter::flush);
+        assertThat(flushStarted.await(5, TimeUnit.SECONDS), equalTo(true));
+        AtomicReference<Thread> readerThread = new AtomicReference<>();
+        CompletableFuture<Map<Long, Long>> read = CompletableFuture.supplyAsync(() -> {
+            readerThread.set(Thread.currentThread());
+            return eventViewCounter.views(Collections.singletonList(7L));
+        });
+        while (readerThread.get() == null || readerThread.get().getState() != Thread.State.WAITING) {
+            assertThat(read.isDone(), equalTo(false));
+            Thread.sleep(10);
+        }
+
+        releaseFlush.countDown();
+        flush.get(5, TimeUnit.SECONDS);
+
+        assertThat(read.get(5, TimeUnit.SECONDS).get(7L), equalTo(2L));
+        assertThat(eventViewCounter.views(Arrays.asList(7L, 8L)).get(8L), equalTo(1L));
+    }
+
+    @Test
+    void failedFlushKeepsViewsInMemory() {
+        doThrow(new IllegalStateException("database is down")).when(eventViewRepository).increment(any());
+        eventViewCounter.record(Collections.singletonList(hit("/events/7")));
+
+        eventViewCounter.flush();
+
+        assertThat(eventViewCounter.views(Collections.singletonList(7L)).get(7L), equalTo(1L));
+    }
+
+    private static EndpointHit hit(String uri) {
+        return EndpointHit.builder()
+                .app("ewm-main-service")
+                .attributes(new Attributes(uri, "10.0.0.1"))
+                .createdOn(LocalDateTime.of(2026, 10, 17, 12, 0))
+                .build();
+    }
+}
@@ -0,0 +1,57 @@
+package ru.practicum.statistic.aggregate;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HyperLogLogTest {
+
+    @Test
+    void estimateStaysWithinThreeStandardErrors() {
+        int precision = 12;
+        double error = 3 * 1.04 / Math.sqrt(1 << precision);
+        for (int count : new int[]{100, 10000, 200000}) {
+            HyperLogLog sketch = new HyperLogLog(precision);
+            for (int i = 0; i < count; i++) {
+                sketch.add("192.168." + i);
+                sketch.add("192.168." + i);
+            }
+
+            assertThat((double) sketch.estimate(), closeTo(count, count * error));
+        }
+    }
+
+    @Test
+    void mergeEstimatesTheUnion() {
+        HyperLogLog left = new HyperLogLog(14);
+        HyperLogLog right = new HyperLogLog(14);
+        for (int i = 0; i < 60000; i++) {
+            left.add("ip-" + i);
+            right.add("ip-" + (i + 30000));
+        }
+
+        left.merge(right);
+
+        assertThat((double) left.estimate(), closeTo(90000, 90000 * 3 * 1.04 / Math.sqrt(1 << 14)));
+        assertThrows(IllegalArgumentException.class, () -> left.merge(new HyperLogLog(12)));
+    }
+
+    @Test
+    void toBytesAndFromBytesRoundTrip() {
+        HyperLogLog sketch = new HyperLogLog(10);
+        for (int i = 0; i < 5000; i++) {
+            sketch.add("10.0.0." + i);
+        }
+
+        byte[] bytes = sketch.toBytes();
+        HyperLogLog restored = HyperLogLog.fromBytes(bytes);
+
+        assertThat(bytes.length, equalTo(1 << 10));
+        assertThat(restored.toBytes(), equalTo(bytes));
+        assertThat(restored.estimate(), equalTo(sketch.estimate()));
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[1000]));
+    }
+}
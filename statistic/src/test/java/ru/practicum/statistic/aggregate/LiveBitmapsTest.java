@@ -0,0 +1,79 @@
+package ru.practicum.statistic.aggregate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import ru.practicum.statistic.model.Attributes;
+import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.storage.BitmapRepository;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+public class LiveBitmapsTest {
+    private static final LocalDateTime HOUR = LocalDateTime.of(2026, 10, 17, 12, 0);
+
+    private final BitmapRepository bitmapRepository = Mockito.mock(BitmapRepository.class);
+    private final PlatformTransactionManager transactionManager = Mockito.mock(PlatformTransactionManager.class);
+    private final LiveBitmaps liveBitmaps = new LiveBitmaps(bitmapRepository, transactionManager);
+    private final Map<String, Integer> ipIds = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        ipIds.put("10.0.0.1", 1);
+        ipIds.put("10.0.0.2", 2);
+    }
+
+    @Test
+    void unflushedBitsAreReadAndMergedOncePerFlush() {
+        liveBitmaps.record(Arrays.asList(hit("10.0.0.1"), hit("10.0.0.2"), hit("10.0.0.1")), ipIds);
+        liveBitmaps.record(Arrays.asList(hit("10.0.0.2"), hit("10.0.0.9")), ipIds);
+
+        assertThat(unflushedCardinality(), equalTo(2L));
+
+        liveBitmaps.flush();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<BucketKey, CompressedBitmap>> merged = ArgumentCaptor.forClass(Map.class);
+        verify(bitmapRepository, times(1)).merge(merged.capture());
+        assertThat(merged.getValue().size(), equalTo(1));
+        assertThat(merged.getValue().values().iterator().next().cardinality(), equalTo(2L));
+        assertThat(unflushedCardinality(), equalTo(0L));
+    }
+
+    @Test
+    void failedFlushKeepsTheBitsPending() {
+        doThrow(new IllegalStateException("database is down")).when(bitmapRepository).merge(anyMap());
+        liveBitmaps.record(Arrays.asList(hit("10.0.0.1"), hit("10.0.0.2")), ipIds);
+
+        liveBitmaps.flush();
+
+        assertThat(unflushedCardinality(), equalTo(2L));
+    }
+
+    private long unflushedCardinality() {
+        Map<AppUri, CompressedBitmap> bitmaps = new HashMap<>();
+        liveBitmaps.orUnflushedInto(bitmaps, HOUR, HOUR.plusHours(1), null);
+        return bitmaps.values().stream().mapToLong(CompressedBitmap::cardinality).sum();
+    }
+
+    private static EndpointHit hit(String ip) {
+        return EndpointHit.builder()
+                .app("ewm-main-service")
+                .attributes(new Attributes("/events/1", ip))
+                .createdOn(HOUR.plusMinutes(5))
+                .build();
+    }
+}
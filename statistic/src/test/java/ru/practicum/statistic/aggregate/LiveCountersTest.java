@@ -0,0 +1,95 @@
+package ru.practicum.statistic.aggregate;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import ru.practicum.statistic.model.Attributes;
+import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.storage.RollupRepository;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+public class LiveCountersTest {
+    private static final LocalDateTime MINUTE = LocalDateTime.of(2026, 10, 17, 12, 0);
+
+    private final RollupRepository rollupRepository = Mockito.mock(RollupRepository.class);
+    private final PlatformTransactionManager transactionManager = Mockito.mock(PlatformTransactionManager.class);
+    private final LiveCounters liveCounters = new LiveCounters(rollupRepository, transactionManager,
+            new LiveCounterProperties());
+    private final AtomicLong storedMinuteHits = new AtomicLong();
+
+    @Test
+    void readOverlappingAFlushWaitsForItInsteadOfSpinning() throws Exception {
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        CountDownLatch flushStarted = new CountDownLatch(1);
+        CountDownLatch releaseFlush = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            flushStarted.countDown();
+            releaseFlush.await();
+            store(invocation.getArgument(0));
+            return null;
+        }).when(rollupRepository).increment(anyMap());
+        liveCounters.record(Arrays.asList(hit(), hit(), hit()));
+
+        CompletableFuture<Void> flush = CompletableFuture.runAsync(liveCounters::flush);
+        assertThat(flushStarted.await(5, TimeUnit.SECONDS), equalTo(true));
+        AtomicReference<Thread> readerThread = new AtomicReference<>();
+        CompletableFuture<Long> read = CompletableFuture.supplyAsync(() -> {
+            readerThread.set(Thread.currentThread());
+            return liveCounters.readConsistently(this::visibleHits);
+        });
+        while (readerThread.get() == null || readerThread.get().getState() != Thread.State.WAITING) {
+            assertThat(read.isDone(), equalTo(false));
+            Thread.sleep(10);
+        }
+
+        releaseFlush.countDown();
+        flush.get(5, TimeUnit.SECONDS);
+
+        assertThat(read.get(5, TimeUnit.SECONDS), equalTo(3L));
+        assertThat(liveCounters.readConsistently(this::visibleHits), equalTo(3L));
+    }
+
+    @Test
+    void readWithoutAFlushSeesUnflushedHits() {
+        liveCounters.record(Arrays.asList(hit(), hit()));
+
+        assertThat(liveCounters.readConsistently(this::visibleHits), equalTo(2L));
+        assertThat(liveCounters.trackedBuckets(MINUTE, MINUTE.plusMinutes(1)), equalTo(1));
+        assertThat(liveCounters.trackedBuckets(MINUTE.plusMinutes(1), MINUTE.plusHours(1)), equalTo(0));
+    }
+
+    private long visibleHits() {
+        AtomicLong hits = new AtomicLong(storedMinuteHits.get());
+        liveCounters.forEachUnflushed(MINUTE, MINUTE.plusMinutes(1), null,
+                (appUri, minute, unflushed) -> hits.addAndGet(unflushed));
+        return hits.get();
+    }
+
+    private void store(Map<BucketKey, Long> deltas) {
+        deltas.values().forEach(storedMinuteHits::addAndGet);
+    }
+
+    private static EndpointHit hit() {
+        return EndpointHit.builder()
+                .app("ewm-main-service")
+                .attributes(new Attributes("/events/1", "10.0.0.1"))
+                .createdOn(MINUTE.plusSeconds(5))
+                .build();
+    }
+}
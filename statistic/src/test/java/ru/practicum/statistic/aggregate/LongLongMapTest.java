@@ -0,0 +1,78 @@
+package ru.practicum.statistic.aggregate;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class LongLongMapTest {
+
+    @Test
+    void addToSumsDeltasOfCollidingKeys() {
+        LongLongMap map = new LongLongMap();
+        long step = 1L << 32;
+        for (int i = 1; i <= 10; i++) {
+            map.addTo(i * step, i);
+            map.addTo(i * step, i);
+        }
+
+        assertThat(map.size(), equalTo(10));
+        for (int i = 1; i <= 10; i++) {
+            assertThat(map.get(i * step), equalTo(2L * i));
+        }
+        assertThat(map.get(11 * step), equalTo(0L));
+    }
+
+    @Test
+    void rehashKeepsEveryEntry() {
+        LongLongMap map = new LongLongMap();
+        Map<Long, Long> expected = new HashMap<>();
+        for (long key = -5000; key <= 5000; key++) {
+            map.addTo(key * 31, key);
+            expected.merge(key * 31, key, Long::sum);
+        }
+
+        assertThat(map.size(), equalTo(expected.size()));
+        Map<Long, Long> actual = new HashMap<>();
+        map.forEach(actual::put);
+        assertThat(actual, equalTo(expected));
+    }
+
+    @Test
+    void zeroKeyIsStoredOutsideTheTable() {
+        LongLongMap map = new LongLongMap();
+        assertThat(map.get(0L), equalTo(0L));
+
+        map.addTo(0L, 3);
+        map.addTo(0L, 4);
+        map.addTo(1L, 1);
+
+        assertThat(map.size(), equalTo(2));
+        assertThat(map.get(0L), equalTo(7L));
+
+        map.clear();
+        assertThat(map.isEmpty(), equalTo(true));
+        assertThat(map.get(0L), equalTo(0L));
+        assertThat(map.get(1L), equalTo(0L));
+    }
+
+    @Test
+    void addAllMergesMaps() {
+        LongLongMap left = new LongLongMap();
+        left.addTo(1L, 1);
+        left.addTo(2L, 2);
+        LongLongMap right = new LongLongMap();
+        right.addTo(2L, 3);
+        right.addTo(0L, 5);
+
+        left.addAll(right);
+
+        assertThat(left.size(), equalTo(3));
+        assertThat(left.get(1L), equalTo(1L));
+        assertThat(left.get(2L), equalTo(5L));
+        assertThat(left.get(0L), equalTo(5L));
+    }
+}
@@ -0,0 +1,73 @@
+package ru.practicum.statistic.aggregate;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.anEmptyMap;
+import static org.hamcrest.Matchers.equalTo;
+
+public class RadixTrieTest {
+
+    @Test
+    void putSplitsAnEdgeAtTheCommonPrefix() {
+        RadixTrie trie = new RadixTrie();
+        trie.put("/events/10", 1);
+        trie.put("/events/11", 2);
+        trie.put("/events", 3);
+        trie.put("/event", 4);
+
+        assertThat(trie.size(), equalTo(4));
+        assertThat(trie.get("/events/10"), equalTo(1));
+        assertThat(trie.get("/events/11"), equalTo(2));
+        assertThat(trie.get("/events"), equalTo(3));
+        assertThat(trie.get("/event"), equalTo(4));
+        assertThat(trie.get("/events/1"), equalTo(-1));
+        assertThat(trie.get("/even"), equalTo(-1));
+        assertThat(trie.get("/events/100"), equalTo(-1));
+    }
+
+    @Test
+    void putReplacesTheValueOfAnExistingKey() {
+        RadixTrie trie = new RadixTrie();
+        trie.put("/events/1", 1);
+        trie.put("/events/1", 5);
+
+        assertThat(trie.size(), equalTo(1));
+        assertThat(trie.get("/events/1"), equalTo(5));
+    }
+
+    @Test
+    void forEachWithPrefixVisitsKeysBelowThePrefix() {
+        RadixTrie trie = new RadixTrie();
+        trie.put("/events", 1);
+        trie.put("/events/1", 2);
+        trie.put("/events/12", 3);
+        trie.put("/events/2", 4);
+        trie.put("/compilations/1", 5);
+
+        assertThat(collect(trie, "/events/1"), equalTo(map("/events/1", 2, "/events/12", 3)));
+        assertThat(collect(trie, "/ev"), equalTo(map("/events", 1, "/events/1", 2, "/events/12", 3,
+                "/events/2", 4)));
+        assertThat(collect(trie, ""), equalTo(map("/events", 1, "/events/1", 2, "/events/12", 3,
+                "/events/2", 4, "/compilations/1", 5)));
+        assertThat(collect(trie, "/eventz"), anEmptyMap());
+        assertThat(collect(trie, "/events/123"), anEmptyMap());
+    }
+
+    private static Map<String, Integer> collect(RadixTrie trie, String prefix) {
+        Map<String, Integer> result = new TreeMap<>();
+        trie.forEachWithPrefix(prefix, result::put);
+        return result;
+    }
+
+    private static Map<String, Integer> map(Object... keysAndValues) {
+        Map<String, Integer> result = new TreeMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            result.put((String) keysAndValues[i], (Integer) keysAndValues[i + 1]);
+        }
+        return result;
+    }
+}
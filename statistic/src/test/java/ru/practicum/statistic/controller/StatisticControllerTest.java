@@ -0,0 +1,84 @@
+package ru.practicum.statistic.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import ru.practicum.statistic.exceptions.ErrorHandler;
+import ru.practicum.statistic.exceptions.PartialShardWriteException;
+import ru.practicum.statistic.exceptions.ShardingUnsupportedException;
+import ru.practicum.statistic.service.StatisticService;
+import ru.practicum.statistic.shard.ShardCoordinator;
+
+import java.util.Arrays;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class StatisticControllerTest {
+    private static final String HITS = "[{\"app\":\"ewm\",\"uri\":\"/events/1\",\"ip\":\"10.0.0.1\"}," +
+            "{\"app\":\"ewm\",\"uri\":\"/events/2\",\"ip\":\"10.0.0.2\"}]";
+
+    private final StatisticService statisticService = Mockito.mock(StatisticService.class);
+    private final ShardCoordinator shardCoordinator = Mockito.mock(ShardCoordinator.class);
+    private final MockMvc mockMvc = MockMvcBuilders
+            .standaloneSetup(new StatisticController(statisticService, shardCoordinator, new ObjectMapper()))
+            .setControllerAdvice(new ErrorHandler())
+            .build();
+
+    @Test
+    void unshardedRequestWithoutTheLocalHeaderIsNotImplemented() throws Exception {
+        doThrow(new ShardingUnsupportedException("/stats/top is answered per shard"))
+                .when(shardCoordinator).requireLocal("/stats/top", false);
+
+        mockMvc.perform(get("/stats/top")
+                        .param("start", "2026-10-17 00:00:00")
+                        .param("end", "2026-10-18 00:00:00"))
+                .andExpect(status().isNotImplemented())
+                .andExpect(jsonPath("$.message").value("/stats/top is answered per shard"));
+
+        verifyNoInteractions(statisticService);
+    }
+
+    @Test
+    void localRequestIsAnsweredByThisShard() throws Exception {
+        mockMvc.perform(get("/stats/top")
+                        .header(ShardCoordinator.LOCAL_HEADER, "true")
+                        .param("start", "2026-10-17 00:00:00")
+                        .param("end", "2026-10-18 00:00:00"))
+                .andExpect(status().isOk());
+
+        verify(shardCoordinator).requireLocal("/stats/top", true);
+        verify(statisticService).getTopHits(any(), any(), eq(10), eq(null));
+    }
+
+    @Test
+    void partialShardWriteListsTheRejectedHits() throws Exception {
+        doThrow(new PartialShardWriteException("Shard 1 is unavailable", Arrays.asList(1)))
+                .when(shardCoordinator).postStatistics(anyList());
+
+        mockMvc.perform(post("/hits").contentType(MediaType.APPLICATION_JSON).content(HITS))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(jsonPath("$.errors[0]").value(1));
+    }
+
+    @Test
+    void localBatchSkipsTheCoordinator() throws Exception {
+        mockMvc.perform(post("/hits").contentType(MediaType.APPLICATION_JSON).content(HITS)
+                        .header(ShardCoordinator.LOCAL_HEADER, "true"))
+                .andExpect(status().isOk());
+
+        verify(statisticService).postStatistics(anyList());
+        verifyNoInteractions(shardCoordinator);
+    }
+}
@@ -0,0 +1,57 @@
+package ru.practicum.statistic.ingest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import ru.practicum.statistic.model.Attributes;
+import ru.practicum.statistic.model.EndpointHit;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+public class HitBufferTest {
+    private final HitWriter hitWriter = Mockito.mock(HitWriter.class);
+    private final HitWriteAheadLog writeAheadLog = Mockito.mock(HitWriteAheadLog.class);
+    private final IngestProperties properties = new IngestProperties();
+    private HitBuffer hitBuffer;
+
+    @BeforeEach
+    void setUp() {
+        properties.setAsync(true);
+        properties.setShards(1);
+        properties.setFlushInterval(Duration.ofMillis(10));
+        hitBuffer = new HitBuffer(hitWriter, writeAheadLog, properties, new SimpleMeterRegistry());
+        hitBuffer.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        hitBuffer.stop();
+    }
+
+    @Test
+    void flusherRetriesAndSurvivesAnUnexpectedRuntimeException() {
+        doThrow(new IllegalStateException("unexpected"))
+                .doNothing()
+                .when(hitWriter).write(anyList());
+
+        hitBuffer.offer(hit());
+        verify(hitWriter, timeout(2000).times(2)).write(anyList());
+
+        hitBuffer.offer(hit());
+        verify(hitWriter, timeout(2000).times(3)).write(anyList());
+    }
+
+    private static EndpointHit hit() {
+        return EndpointHit.builder()
+                .app("ewm-main-service")
+                .attributes(new Attributes("/events/1", "10.0.0.1"))
+                .createdOn(LocalDateTime.of(2026, 10, 17, 12, 0))
+                .build();
+    }
+}
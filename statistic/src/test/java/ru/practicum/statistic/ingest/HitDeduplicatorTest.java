@@ -0,0 +1,79 @@
+package ru.practicum.statistic.ingest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.practicum.statistic.model.Attributes;
+import ru.practicum.statistic.model.EndpointHit;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThan;
+
+public class HitDeduplicatorTest {
+    private static final Duration WINDOW = Duration.ofMillis(300);
+
+    private final LocalDateTime createdOn = LocalDateTime.of(2026, 10, 17, 12, 0, 0);
+
+    @Test
+    void bloomFilterHasNoFalseNegativesAndFewFalsePositives() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.put("present-" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            assertThat(filter.mightContain("present-" + i), equalTo(true));
+            if (filter.mightContain("absent-" + i)) {
+                falsePositives++;
+            }
+        }
+
+        assertThat(falsePositives, lessThan(300));
+    }
+
+    @Test
+    void repeatIsDroppedUntilBothFiltersRotatedOut() throws InterruptedException {
+        HitDeduplicator deduplicator = newDeduplicator();
+        EndpointHit hit = hit("192.168.0.1");
+
+        assertThat(deduplicator.filter(Collections.singletonList(hit)), hasSize(1));
+        assertThat(deduplicator.filter(Collections.singletonList(hit)), hasSize(0));
+
+        Thread.sleep(WINDOW.toMillis() + WINDOW.toMillis() / 3);
+        assertThat(deduplicator.filter(Collections.singletonList(hit)), hasSize(0));
+
+        Thread.sleep(2 * WINDOW.toMillis() + WINDOW.toMillis() / 3);
+        assertThat(deduplicator.filter(Collections.singletonList(hit)), hasSize(1));
+    }
+
+    @Test
+    void distinctHitsOfOneBatchPass() {
+        HitDeduplicator deduplicator = newDeduplicator();
+        List<EndpointHit> hits = Arrays.asList(hit("10.0.0.1"), hit("10.0.0.2"), hit("10.0.0.1"));
+
+        assertThat(deduplicator.filter(hits), hasSize(2));
+    }
+
+    private HitDeduplicator newDeduplicator() {
+        DedupeProperties properties = new DedupeProperties();
+        properties.setEnabled(true);
+        properties.setWindow(WINDOW);
+        properties.setExpectedHits(1000);
+        return new HitDeduplicator(properties, new SimpleMeterRegistry());
+    }
+
+    private EndpointHit hit(String ip) {
+        return EndpointHit.builder()
+                .app("ewm-main-service")
+                .attributes(new Attributes("/events/1", ip))
+                .createdOn(createdOn)
+                .build();
+    }
+}
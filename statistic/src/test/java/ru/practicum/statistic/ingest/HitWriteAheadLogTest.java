@@ -0,0 +1,124 @@
+package ru.practicum.statistic.ingest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.util.unit.DataSize;
+import ru.practicum.statistic.model.Attributes;
+import ru.practicum.statistic.model.EndpointHit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class HitWriteAheadLogTest {
+    private final HitWriter hitWriter = Mockito.mock(HitWriter.class);
+    private final LocalDateTime createdOn = LocalDateTime.of(2026, 10, 17, 12, 30, 15, 123000000);
+
+    @TempDir
+    Path directory;
+
+    private HitWriteAheadLog wal;
+
+    @AfterEach
+    void tearDown() {
+        if (wal != null) {
+            wal.stop();
+        }
+    }
+
+    @Test
+    void replayStopsAtATornRecordAndSkipsAcknowledgedOnes() throws IOException {
+        List<EndpointHit> replayed = new ArrayList<>();
+        doAnswer(invocation -> replayed.addAll(invocation.getArgument(0))).when(hitWriter).write(anyList());
+        HitWriteAheadLog previous = newWal();
+        long first = previous.append(hit("/events/1", "10.0.0.1"));
+        previous.append(hit("/events/2", "10.0.0.2"));
+        long torn = previous.append(hit("/events/3", "10.0.0.3"));
+        previous.acknowledge(first);
+        previous.stop();
+        clearStatus(torn);
+
+        wal = newWal();
+
+        verify(hitWriter, times(1)).write(anyList());
+        assertThat(replayed, hasSize(1));
+        assertThat(replayed.get(0).getApp(), equalTo("ewm-main-service"));
+        assertThat(replayed.get(0).getAttributes(), equalTo(new Attributes("/events/2", "10.0.0.2")));
+        assertThat(replayed.get(0).getCreatedOn(), equalTo(createdOn));
+        assertThat(replayed.get(0).getWeight(), equalTo(1));
+        assertThat(segmentNames(), contains("hits-0000000001.wal"));
+    }
+
+    @Test
+    void replayIgnoresATornTailOfGarbage() throws IOException {
+        HitWriteAheadLog previous = newWal();
+        long last = previous.append(hit("/events/1", "10.0.0.1"));
+        previous.acknowledge(last);
+        previous.stop();
+        Path file = directory.resolve("hits-0000000000.wal");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer tail = ByteBuffer.allocate(64).put((byte) 1).putInt(Integer.MAX_VALUE);
+            tail.rewind();
+            channel.write(tail, 1024);
+        }
+
+        wal = newWal();
+
+        verify(hitWriter, never()).write(anyList());
+        assertThat(segmentNames(), contains("hits-0000000001.wal"));
+    }
+
+    private HitWriteAheadLog newWal() throws IOException {
+        WalProperties properties = new WalProperties();
+        properties.setEnabled(true);
+        properties.setDirectory(directory.toString());
+        properties.setSegmentSize(DataSize.ofKilobytes(64));
+        properties.setFsyncPolicy(FsyncPolicy.ALWAYS);
+        IngestProperties ingestProperties = new IngestProperties();
+        ingestProperties.setAsync(true);
+        HitWriteAheadLog log = new HitWriteAheadLog(properties, ingestProperties, hitWriter);
+        log.start();
+        return log;
+    }
+
+    private void clearStatus(long position) throws IOException {
+        Path file = directory.resolve(String.format("hits-%010d.wal", position >>> 32));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0}), (int) position);
+        }
+    }
+
+    private List<String> segmentNames() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private EndpointHit hit(String uri, String ip) {
+        return EndpointHit.builder()
+                .app("ewm-main-service")
+                .attributes(new Attributes(uri, ip))
+                .createdOn(createdOn)
+                .build();
+    }
+}
@@ -0,0 +1,75 @@
+package ru.practicum.statistic.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import ru.practicum.statistic.aggregate.LiveCounters;
+import ru.practicum.statistic.aggregate.UniqueMode;
+import ru.practicum.statistic.storage.BitmapRepository;
+import ru.practicum.statistic.storage.HitDictionary;
+import ru.practicum.statistic.storage.PartitionManager;
+import ru.practicum.statistic.storage.RawHitCompactor;
+
+import java.time.LocalDateTime;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.Mockito.when;
+
+public class QueryPlannerTest {
+    private static final LocalDateTime FROM = LocalDateTime.of(2026, 10, 1, 0, 0);
+    private static final LocalDateTime TO = LocalDateTime.of(2026, 10, 17, 0, 0);
+
+    private final HitDictionary hitDictionary = Mockito.mock(HitDictionary.class);
+    private final LiveCounters liveCounters = Mockito.mock(LiveCounters.class);
+    private final BitmapRepository bitmapRepository = Mockito.mock(BitmapRepository.class);
+    private final RawHitCompactor rawHitCompactor = Mockito.mock(RawHitCompactor.class);
+    private final PartitionManager partitionManager = Mockito.mock(PartitionManager.class);
+    private final QueryPlanner queryPlanner = new QueryPlanner(new PlannerProperties(), hitDictionary,
+            liveCounters, bitmapRepository, rawHitCompactor, partitionManager);
+
+    @BeforeEach
+    void setUp() {
+        when(hitDictionary.uriCount()).thenReturn(10);
+    }
+
+    @Test
+    void longRangeIsAnsweredFromRollupsWithoutALiveStepWhenNoLiveBucketIsInRange() {
+        QueryPlan plan = queryPlanner.plan(FROM, TO, null, false, UniqueMode.APPROXIMATE);
+
+        assertThat(plan.getAccessPath(), equalTo(AccessPath.ROLLUP));
+        assertThat(plan.usesLiveCounters(), equalTo(false));
+        assertThat(plan.getCandidates().containsKey(AccessPath.RAW), equalTo(true));
+    }
+
+    @Test
+    void liveStepIsChargedOnlyForTheBucketsInRange() {
+        when(liveCounters.trackedBuckets(FROM, TO)).thenReturn(3);
+
+        QueryPlan plan = queryPlanner.plan(FROM, TO, null, false, UniqueMode.APPROXIMATE);
+        QueryPlan.Step live = plan.getSteps().get(plan.getSteps().size() - 1);
+
+        assertThat(live.getSource(), equalTo(AccessPath.LIVE));
+        assertThat(live.getCost(), equalTo(3L));
+    }
+
+    @Test
+    void rangeBeforeTheRetentionCutoffIsNotScannedRaw() {
+        when(partitionManager.getRawHorizon()).thenReturn(FROM.plusDays(1));
+
+        QueryPlan plan = queryPlanner.plan(FROM, TO, null, false, UniqueMode.APPROXIMATE);
+
+        assertThat(queryPlanner.isRawAvailable(FROM), equalTo(false));
+        assertThat(queryPlanner.isRawAvailable(FROM.plusDays(1)), equalTo(true));
+        assertThat(plan.getCandidates().containsKey(AccessPath.RAW), equalTo(false));
+    }
+
+    @Test
+    void laterOfTheCompactionAndRetentionHorizonsWins() {
+        when(partitionManager.getRawHorizon()).thenReturn(FROM.plusDays(1));
+        when(rawHitCompactor.getRawHorizon()).thenReturn(FROM.plusDays(2));
+
+        assertThat(queryPlanner.isRawAvailable(FROM.plusDays(1)), equalTo(false));
+        assertThat(queryPlanner.isRawAvailable(FROM.plusDays(2)), equalTo(true));
+    }
+}
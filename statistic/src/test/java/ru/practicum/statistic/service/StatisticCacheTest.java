@@ -0,0 +1,76 @@
+package ru.practicum.statistic.service;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.statistic.dto.ViewStatsDto;
+import ru.practicum.statistic.model.Attributes;
+import ru.practicum.statistic.model.EndpointHit;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class StatisticCacheTest {
+    private static final LocalDateTime START = LocalDateTime.of(2026, 10, 17, 0, 0);
+    private static final StatisticCache.Key KEY = new StatisticCache.Key(START, START.plusDays(1),
+            Collections.singletonList("/events/1"), false, null);
+
+    private final StatisticCache statisticCache = new StatisticCache(new StatisticCacheProperties());
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void resultComputedWhileAnUnrelatedBatchIsInFlightIsCached() {
+        statisticCache.beginCommit(batch("/events/2"));
+
+        statisticCache.get(KEY, () -> load(3L));
+        List<ViewStatsDto> cached = statisticCache.get(KEY, () -> load(3L));
+
+        assertThat(loads.get(), equalTo(1));
+        assertThat(cached.get(0).getHits(), equalTo(3L));
+    }
+
+    @Test
+    void resultComputedWhileAMatchingBatchCommitsIsNotCached() {
+        statisticCache.get(KEY, () -> {
+            List<EndpointHit> batch = batch("/events/1");
+            statisticCache.beginCommit(batch);
+            statisticCache.endCommit(batch, true);
+            return load(4L);
+        });
+        statisticCache.get(KEY, () -> load(4L));
+
+        assertThat(loads.get(), equalTo(2));
+    }
+
+    @Test
+    void cachedResultIsBroughtUpToDateFromTheLog() {
+        statisticCache.get(KEY, () -> load(3L));
+        List<EndpointHit> batch = batch("/events/1");
+        statisticCache.beginCommit(batch);
+        statisticCache.endCommit(batch, true);
+        List<EndpointHit> rolledBack = batch("/events/1");
+        statisticCache.beginCommit(rolledBack);
+        statisticCache.endCommit(rolledBack, false);
+
+        List<ViewStatsDto> refreshed = statisticCache.get(KEY, () -> load(0L));
+
+        assertThat(loads.get(), equalTo(1));
+        assertThat(refreshed.get(0).getHits(), equalTo(4L));
+    }
+
+    private List<ViewStatsDto> load(long hits) {
+        loads.incrementAndGet();
+        return Collections.singletonList(new ViewStatsDto("ewm-main-service", "/events/1", hits));
+    }
+
+    private static List<EndpointHit> batch(String uri) {
+        return Collections.singletonList(EndpointHit.builder()
+                .app("ewm-main-service")
+                .attributes(new Attributes(uri, "10.0.0.1"))
+                .createdOn(START.plusHours(1))
+                .build());
+    }
+}
@@ -0,0 +1,118 @@
+package ru.practicum.statistic.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.practicum.statistic.aggregate.*;
+import ru.practicum.statistic.dto.EndpointHitDto;
+import ru.practicum.statistic.exceptions.InvalidHitException;
+import ru.practicum.statistic.ingest.HitBuffer;
+import ru.practicum.statistic.ingest.HitDeduplicator;
+import ru.practicum.statistic.ingest.HitSampler;
+import ru.practicum.statistic.ingest.HitWriter;
+import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.storage.*;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class StatisticServiceImplTest {
+    @Mock
+    private HitStorage hitStorage;
+    @Mock
+    private StatisticStreamRepository statisticStreamRepository;
+    @Mock
+    private RollupRepository rollupRepository;
+    @Mock
+    private SketchRepository sketchRepository;
+    @Mock
+    private LiveSketches liveSketches;
+    @Mock
+    private SketchProperties sketchProperties;
+    @Mock
+    private BitmapRepository bitmapRepository;
+    @Mock
+    private LiveBitmaps liveBitmaps;
+    @Mock
+    private IpDictionary ipDictionary;
+    @Mock
+    private HitDictionary hitDictionary;
+    @Mock
+    private TopHitsTracker topHitsTracker;
+    @Mock
+    private LiveCounters liveCounters;
+    @Mock
+    private EventViewCounter eventViewCounter;
+    @Mock
+    private TimeSeriesProperties timeSeriesProperties;
+    @Mock
+    private HitWriter hitWriter;
+    @Mock
+    private StatisticCache statisticCache;
+    @Mock
+    private HitBuffer hitBuffer;
+    @Mock
+    private SliceExecutor sliceExecutor;
+    @Mock
+    private QueryPlanner queryPlanner;
+    @Mock
+    private HitDeduplicator hitDeduplicator;
+    @Mock
+    private HitSampler hitSampler;
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    @Mock
+    private AggregateRebuilder aggregateRebuilder;
+    @InjectMocks
+    private StatisticServiceImpl statisticService;
+
+    private final LocalDateTime timestamp = LocalDateTime.of(2026, 10, 17, 12, 0, 0);
+
+    @Test
+    void postStatisticsRejectsABatchWithAnAddressThatIsNotAnIpLiteral() {
+        List<EndpointHitDto> hits = Arrays.asList(hit("10.0.0.1"), hit("client.example.com"));
+
+        assertThrows(InvalidHitException.class, () -> statisticService.postStatistics(hits));
+        assertThrows(InvalidHitException.class, () -> statisticService.postStatistic(hit("10.0.0.1, 10.0.0.2")));
+
+        verifyNoInteractions(hitDeduplicator, hitSampler, hitBuffer, hitWriter);
+    }
+
+    @Test
+    void postStatisticsWritesHitsWithIpLiteralsOrWithoutAnAddress() {
+        when(hitDeduplicator.filter(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(hitSampler.sample(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        statisticService.postStatistics(Arrays.asList(hit("10.0.0.1"), hit("2001:DB8::1"), hit(null)));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<EndpointHit>> written = ArgumentCaptor.forClass(List.class);
+        verify(hitWriter, times(1)).write(written.capture());
+        assertThat(written.getValue(), hasSize(3));
+        assertThat(written.getValue().get(1).getAttributes().getIp(), equalTo("2001:DB8::1"));
+    }
+
+    private EndpointHitDto hit(String ip) {
+        return EndpointHitDto.builder()
+                .app("ewm-main-service")
+                .uri("/events/1")
+                .ip(ip)
+                .timestamp(timestamp)
+                .build();
+    }
+}
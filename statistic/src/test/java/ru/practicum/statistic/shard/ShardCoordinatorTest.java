@@ -0,0 +1,139 @@
+package ru.practicum.statistic.shard;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+import ru.practicum.statistic.dto.EndpointHitDto;
+import ru.practicum.statistic.dto.EventViewsDto;
+import ru.practicum.statistic.dto.ViewStatsDto;
+import ru.practicum.statistic.exceptions.PartialShardWriteException;
+import ru.practicum.statistic.exceptions.ShardUnavailableException;
+import ru.practicum.statistic.exceptions.ShardingUnsupportedException;
+import ru.practicum.statistic.service.StatisticService;
+
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class ShardCoordinatorTest {
+    private static final LocalDateTime START = LocalDateTime.of(2026, 10, 17, 0, 0);
+
+    private final StatisticService statisticService = Mockito.mock(StatisticService.class);
+    private final RestTemplate restTemplate = Mockito.mock(RestTemplate.class);
+    private final ShardProperties properties = new ShardProperties();
+    private ShardCoordinator shardCoordinator;
+
+    @BeforeEach
+    void setUp() {
+        RestTemplateBuilder restTemplateBuilder = Mockito.mock(RestTemplateBuilder.class);
+        when(restTemplateBuilder.setConnectTimeout(any())).thenReturn(restTemplateBuilder);
+        when(restTemplateBuilder.setReadTimeout(any())).thenReturn(restTemplateBuilder);
+        when(restTemplateBuilder.build()).thenReturn(restTemplate);
+        properties.setNodes(Arrays.asList("http://shard-0", "http://shard-1"));
+        properties.setSelf(0);
+        shardCoordinator = new ShardCoordinator(properties, statisticService, restTemplateBuilder);
+    }
+
+    @AfterEach
+    void tearDown() {
+        shardCoordinator.stop();
+    }
+
+    @Test
+    void mergeAddsUpShardsAndKeepsANullUri() {
+        when(statisticService.getStatistic(any(), any(), any(), any(), any()))
+                .thenReturn(Collections.singletonList(new ViewStatsDto("ewm", null, 3L)));
+        when(restTemplate.exchange(any(URI.class), eq(HttpMethod.GET), any(HttpEntity.class), eq(ViewStatsDto[].class)))
+                .thenReturn(ResponseEntity.ok(new ViewStatsDto[]{new ViewStatsDto("ewm", null, 2L)}));
+
+        List<ViewStatsDto> stats = shardCoordinator.getStatistic(START, START.plusDays(1), null, false, null);
+
+        assertThat(stats.size(), equalTo(1));
+        assertThat(stats.get(0).getUri(), nullValue());
+        assertThat(stats.get(0).getHits(), equalTo(5L));
+    }
+
+    @Test
+    void batchStoredByOnlySomeShardsReportsTheHitsThatWereNotStored() {
+        String local = uriOn(0);
+        String remote = uriOn(1);
+        when(restTemplate.postForObject(anyString(), any(), eq(Void.class)))
+                .thenThrow(new ResourceAccessException("connection refused"));
+
+        PartialShardWriteException e = assertThrows(PartialShardWriteException.class,
+                () -> shardCoordinator.postStatistics(Arrays.asList(hit(local), hit(remote), hit(local), hit(remote))));
+
+        assertThat(e.getRejectedHits(), equalTo(Arrays.asList(1, 3)));
+        verify(statisticService).postStatistics(Arrays.asList(hit(local), hit(local)));
+    }
+
+    @Test
+    void batchStoredByNoShardIsUnavailable() {
+        when(restTemplate.postForObject(anyString(), any(), eq(Void.class)))
+                .thenThrow(new ResourceAccessException("connection refused"));
+
+        assertThrows(ShardUnavailableException.class,
+                () -> shardCoordinator.postStatistics(Collections.singletonList(hit(uriOn(1)))));
+        verify(statisticService, never()).postStatistics(anyList());
+    }
+
+    @Test
+    void eventViewsAreAskedFromTheOwningShardsInRequestOrder() {
+        long localEvent = eventOn(0);
+        long remoteEvent = eventOn(1);
+        when(statisticService.getEventViews(Collections.singletonList(localEvent)))
+                .thenReturn(Collections.singletonList(new EventViewsDto(localEvent, 4L)));
+        when(restTemplate.exchange(any(URI.class), eq(HttpMethod.GET), any(HttpEntity.class), eq(EventViewsDto[].class)))
+                .thenReturn(ResponseEntity.ok(new EventViewsDto[]{new EventViewsDto(remoteEvent, 7L)}));
+
+        List<EventViewsDto> views = shardCoordinator.getEventViews(Arrays.asList(remoteEvent, localEvent));
+
+        assertThat(views, equalTo(Arrays.asList(new EventViewsDto(remoteEvent, 7L), new EventViewsDto(localEvent, 4L))));
+    }
+
+    @Test
+    void perShardRequestIsRejectedUnlessAddressedToTheShard() {
+        assertThrows(ShardingUnsupportedException.class, () -> shardCoordinator.requireLocal("/stats/top", false));
+        shardCoordinator.requireLocal("/stats/top", true);
+    }
+
+    private String uriOn(int shard) {
+        return "/events/" + eventOn(shard);
+    }
+
+    private long eventOn(int shard) {
+        for (long eventId = 1; ; eventId++) {
+            if (shardCoordinator.shardOf("/events/" + eventId) == shard) {
+                return eventId;
+            }
+        }
+    }
+
+    private static EndpointHitDto hit(String uri) {
+        return EndpointHitDto.builder()
+                .app("ewm")
+                .uri(uri)
+                .ip("10.0.0.1")
+                .timestamp(START.plusHours(1))
+                .build();
+    }
+}
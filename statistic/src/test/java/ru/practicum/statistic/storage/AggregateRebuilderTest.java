@@ -0,0 +1,114 @@
+package ru.practicum.statistic.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import ru.practicum.statistic.aggregate.Granularity;
+import ru.practicum.statistic.aggregate.LiveCounters;
+import ru.practicum.statistic.aggregate.LiveSketches;
+import ru.practicum.statistic.aggregate.SketchProperties;
+import ru.practicum.statistic.dto.RebuildStatusDto;
+import ru.practicum.statistic.exceptions.RebuildRejectedException;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AggregateRebuilderTest {
+    private static final String DROP_OTHER_PRECISION = "delete from statistic_sketch_rebuild " +
+            "where length(registers) <> ?";
+
+    private final JdbcTemplate jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+    private final DataSource dataSource = Mockito.mock(DataSource.class);
+    private final PlatformTransactionManager transactionManager = Mockito.mock(PlatformTransactionManager.class);
+    private final HitStorage hitStorage = Mockito.mock(HitStorage.class);
+    private final RawHitCompactor rawHitCompactor = Mockito.mock(RawHitCompactor.class);
+    private final LiveCounters liveCounters = Mockito.mock(LiveCounters.class);
+    private final LiveSketches liveSketches = Mockito.mock(LiveSketches.class);
+    private final LocalDateTime today = Granularity.DAY.floor(LocalDateTime.now());
+    private AggregateRebuilder rebuilder;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(jdbcTemplate.getDataSource()).thenReturn(dataSource);
+        Connection connection = Mockito.mock(Connection.class);
+        PreparedStatement statement = Mockito.mock(PreparedStatement.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(Mockito.mock(ResultSet.class));
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(hitStorage.isRelational()).thenReturn(true);
+        when(hitStorage.findOldest()).thenReturn(today.plusHours(1));
+        rebuilder = new AggregateRebuilder(jdbcTemplate, transactionManager, hitStorage,
+                Mockito.mock(HitDictionary.class), rawHitCompactor, liveCounters, liveSketches,
+                new SketchProperties(), new RebuildProperties());
+    }
+
+    @AfterEach
+    void tearDown() {
+        rebuilder.stop();
+    }
+
+    @Test
+    void rebuildIsRejectedWithoutTheStatisticTable() {
+        when(hitStorage.isRelational()).thenReturn(false);
+
+        assertThrows(RebuildRejectedException.class, () -> rebuilder.start(() -> { }));
+    }
+
+    @Test
+    void currentDayIsCopiedFromTheLiveTables() throws InterruptedException {
+        AtomicBoolean swapped = new AtomicBoolean();
+
+        rebuilder.start(() -> swapped.set(true));
+        RebuildStatusDto status = awaitFinished();
+
+        assertThat(status.getState(), equalTo(RebuildState.COMPLETED));
+        assertThat(status.getDays(), equalTo(0));
+        assertThat(swapped.get(), equalTo(true));
+        verify(liveCounters).flushInCurrentTransaction();
+        verify(liveSketches).flushInCurrentTransaction();
+        verify(jdbcTemplate).update(eq("insert into statistic_sketch_rebuild select * from statistic_sketch " +
+                "where bucket_start < ? or bucket_start >= ?"), eq(Timestamp.valueOf(today)),
+                eq(Timestamp.valueOf(today)));
+        verify(rawHitCompactor, timeout(1000)).resume();
+    }
+
+    @Test
+    void rebuildThroughTodayRebuildsTheCurrentDayAndDropsSketchesOfAnotherPrecision() throws InterruptedException {
+        rebuilder.start(true, () -> { });
+        RebuildStatusDto status = awaitFinished();
+
+        assertThat(status.getState(), equalTo(RebuildState.COMPLETED));
+        assertThat(status.getDaysRebuilt(), equalTo(1));
+        verify(jdbcTemplate).update(eq("insert into statistic_sketch_rebuild select * from statistic_sketch " +
+                "where bucket_start < ? or bucket_start >= ?"), eq(Timestamp.valueOf(today)),
+                eq(Timestamp.valueOf(today.plusDays(1))));
+        verify(jdbcTemplate).update(DROP_OTHER_PRECISION, 1 << 12);
+    }
+
+    private RebuildStatusDto awaitFinished() throws InterruptedException {
+        for (int i = 0; i < 500 && rebuilder.getStatus().getFinishedOn() == null; i++) {
+            Thread.sleep(10);
+        }
+        return rebuilder.getStatus();
+    }
+}
@@ -0,0 +1,78 @@
+package ru.practicum.statistic.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import ru.practicum.statistic.model.Attributes;
+import ru.practicum.statistic.model.EndpointHit;
+
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class HitDictionaryTest {
+    private final NamedParameterJdbcTemplate jdbcTemplate = Mockito.mock(NamedParameterJdbcTemplate.class);
+    private final PlatformTransactionManager transactionManager = Mockito.mock(PlatformTransactionManager.class);
+    private final HitDictionary hitDictionary = new HitDictionary(jdbcTemplate, transactionManager);
+
+    @BeforeEach
+    void setUp() {
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        doAnswer(invocation -> {
+            MapSqlParameterSource params = invocation.getArgument(1);
+            RowCallbackHandler handler = invocation.getArgument(2);
+            int id = 1;
+            for (Object value : (Collection<?>) params.getValue("values")) {
+                ResultSet rs = Mockito.mock(ResultSet.class);
+                when(rs.getInt("id")).thenReturn(id++);
+                when(rs.getString("value")).thenReturn((String) value);
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(SqlParameterSource.class), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    void internInsertsOnlyMissingValuesInItsOwnTransaction() {
+        hitDictionary.intern(Arrays.asList(hit("/events/1"), hit("/events/2")));
+
+        verify(transactionManager, times(1)).getTransaction(any());
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), any(SqlParameterSource[].class));
+        assertThat(hitDictionary.uriId("/events/1"), equalTo(1));
+        assertThat(hitDictionary.uriId("/events/2"), equalTo(2));
+        assertThat(hitDictionary.appId("ewm-main-service"), equalTo(1));
+    }
+
+    @Test
+    void internOfCachedValuesTouchesNeitherTheDatabaseNorATransaction() {
+        List<EndpointHit> hits = Collections.singletonList(hit("/events/1"));
+        hitDictionary.intern(hits);
+        clearInvocations(transactionManager, jdbcTemplate);
+
+        hitDictionary.intern(hits);
+        hitDictionary.intern(Collections.singleton("ewm-main-service"), Collections.singleton("/events/1"));
+
+        verifyNoInteractions(transactionManager, jdbcTemplate);
+    }
+
+    private static EndpointHit hit(String uri) {
+        return EndpointHit.builder()
+                .app("ewm-main-service")
+                .attributes(new Attributes(uri, "10.0.0.1"))
+                .build();
+    }
+}
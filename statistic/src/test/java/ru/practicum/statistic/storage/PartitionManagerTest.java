@@ -0,0 +1,107 @@
+package ru.practicum.statistic.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PartitionManagerTest {
+    private static final DateTimeFormatter SUFFIX_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private final JdbcTemplate jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+    private final PlatformTransactionManager transactionManager = Mockito.mock(PlatformTransactionManager.class);
+    private final PartitionProperties properties = new PartitionProperties();
+    private final PartitionManager partitionManager = new PartitionManager(jdbcTemplate,
+            new TransactionTemplate(transactionManager), properties);
+    private final LocalDateTime today = LocalDateTime.now().toLocalDate().atStartOfDay();
+
+    @BeforeEach
+    void setUp() {
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+    }
+
+    @Test
+    void missingPartitionsAreCreatedAheadAndFilledFromTheDefaultPartition() {
+        properties.setPrecreate(2);
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class)))
+                .thenReturn(Arrays.asList(nameOf(today), "statistic_default"));
+
+        partitionManager.maintain();
+
+        assertThat(statementsStartingWith("create table"), contains(
+                "create table " + nameOf(today.plusDays(1)) + " (like statistic including defaults including constraints)",
+                "create table " + nameOf(today.plusDays(2)) + " (like statistic including defaults including constraints)"));
+        assertThat(statementsStartingWith("alter table statistic attach"), contains(
+                "alter table statistic attach partition " + nameOf(today.plusDays(1))
+                        + " for values from ('" + Timestamp.valueOf(today.plusDays(1)) + "') to ('"
+                        + Timestamp.valueOf(today.plusDays(2)) + "')",
+                "alter table statistic attach partition " + nameOf(today.plusDays(2))
+                        + " for values from ('" + Timestamp.valueOf(today.plusDays(2)) + "') to ('"
+                        + Timestamp.valueOf(today.plusDays(3)) + "')"));
+        verify(jdbcTemplate).update(eq("with moved as (delete from statistic_default "
+                + "where created_on >= ? and created_on < ? returning *) insert into " + nameOf(today.plusDays(1))
+                + " select * from moved"), eq(Timestamp.valueOf(today.plusDays(1))),
+                eq(Timestamp.valueOf(today.plusDays(2))));
+    }
+
+    @Test
+    void partitionsPastRetentionAreDetachedAndDropped() {
+        properties.setPrecreate(0);
+        properties.setRetention(Duration.ofDays(30));
+        properties.setRetentionAction(RetentionAction.DROP);
+        String expired = nameOf(today.minusDays(40));
+        String kept = nameOf(today.minusDays(10));
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class)))
+                .thenReturn(Arrays.asList(expired, kept, nameOf(today)));
+
+        partitionManager.maintain();
+
+        List<String> statements = statementsStartingWith("");
+        assertThat(statements, hasItems("alter table statistic detach partition " + expired,
+                "drop table " + expired));
+        assertThat(statements.stream().anyMatch(statement -> statement.contains(kept)), equalTo(false));
+        verify(jdbcTemplate).update(eq("delete from statistic_default where created_on < ?"), any(Timestamp.class));
+        assertThat(partitionManager.getRawHorizon().isAfter(today.minusDays(31)), equalTo(true));
+    }
+
+    @Test
+    void rawHorizonIsUnsetWithoutRetention() {
+        assertThat(partitionManager.getRawHorizon(), nullValue());
+    }
+
+    private List<String> statementsStartingWith(String prefix) {
+        ArgumentCaptor<String> statements = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate, atLeastOnce()).execute(statements.capture());
+        return statements.getAllValues().stream()
+                .filter(statement -> statement.startsWith(prefix))
+                .collect(Collectors.toList());
+    }
+
+    private static String nameOf(LocalDateTime from) {
+        return "statistic_p" + from.format(SUFFIX_FORMAT) + "_" + from.plusDays(1).format(SUFFIX_FORMAT);
+    }
+}
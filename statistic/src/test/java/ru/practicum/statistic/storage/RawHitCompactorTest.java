@@ -0,0 +1,106 @@
+package ru.practicum.statistic.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import ru.practicum.statistic.aggregate.AppUri;
+import ru.practicum.statistic.aggregate.BucketKey;
+import ru.practicum.statistic.aggregate.Granularity;
+import ru.practicum.statistic.aggregate.LiveCounters;
+import ru.practicum.statistic.model.BucketCount;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class RawHitCompactorTest {
+    private static final LocalDateTime HOUR = LocalDateTime.of(2026, 9, 1, 10, 0);
+
+    private final PlatformTransactionManager transactionManager = Mockito.mock(PlatformTransactionManager.class);
+    private final HitStorage hitStorage = Mockito.mock(HitStorage.class);
+    private final RollupRepository rollupRepository = Mockito.mock(RollupRepository.class);
+    private final SketchRepository sketchRepository = Mockito.mock(SketchRepository.class);
+    private final BitmapRepository bitmapRepository = Mockito.mock(BitmapRepository.class);
+    private final LiveCounters liveCounters = Mockito.mock(LiveCounters.class);
+    private final CompactionProperties properties = new CompactionProperties();
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void setUp() {
+        properties.setEnabled(true);
+        properties.setAge(Duration.ofDays(1));
+        properties.setCheckpointFile(directory.resolve("raw-compaction.watermark").toString());
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(liveCounters.readLocked(any())).thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(0)).get());
+        when(hitStorage.isRelational()).thenReturn(true);
+    }
+
+    @Test
+    void foldsHitsWithoutAppOrUriUnderTheEmptyKeyAndDeletesInTheSameTransaction() {
+        when(hitStorage.findOldest()).thenReturn(HOUR.plusMinutes(5), (LocalDateTime) null);
+        when(hitStorage.countHitsByMinute(HOUR, HOUR.plusHours(1), null)).thenReturn(Arrays.asList(
+                new BucketCount(null, null, HOUR.plusMinutes(5), 5L),
+                new BucketCount("ewm", "/events/1", HOUR.plusMinutes(5), 2L)));
+        when(rollupRepository.findBuckets(Granularity.MINUTE, HOUR, HOUR.plusHours(1), null)).thenReturn(
+                Collections.singletonList(new BucketCount("", "", HOUR.plusMinutes(5), 3L)));
+        when(hitStorage.deleteBefore(eq(HOUR.plusHours(1)), anyInt())).thenReturn(7, 0);
+
+        newCompactor().compact();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<BucketKey, Long>> increments = ArgumentCaptor.forClass(Map.class);
+        verify(rollupRepository).increment(increments.capture());
+        assertThat(increments.getValue().get(minute(AppUri.of(null, null))), equalTo(2L));
+        assertThat(increments.getValue().get(minute(AppUri.of("ewm", "/events/1"))), equalTo(2L));
+        verify(transactionManager, times(1)).commit(any());
+        verify(hitStorage, times(2)).deleteBefore(eq(HOUR.plusHours(1)), anyInt());
+    }
+
+    @Test
+    void watermarkSurvivesARestart() {
+        when(hitStorage.findOldest()).thenReturn(HOUR, (LocalDateTime) null);
+        RawHitCompactor compactor = newCompactor();
+        assertThat(compactor.getRawHorizon(), nullValue());
+
+        compactor.compact();
+
+        assertThat(compactor.getRawHorizon(), equalTo(HOUR.plusHours(1)));
+        assertThat(newCompactor().getRawHorizon(), equalTo(HOUR.plusHours(1)));
+    }
+
+    @Test
+    void stopsWhenTheHourCouldNotBeDeleted() {
+        when(hitStorage.findOldest()).thenReturn(HOUR.plusMinutes(30));
+
+        newCompactor().compact();
+
+        verify(rollupRepository, times(1)).findBuckets(any(), any(), any(), any());
+    }
+
+    private RawHitCompactor newCompactor() {
+        RawHitCompactor compactor = new RawHitCompactor(transactionManager, hitStorage, rollupRepository,
+                sketchRepository, bitmapRepository, liveCounters, properties);
+        compactor.start();
+        return compactor;
+    }
+
+    private static BucketKey minute(AppUri appUri) {
+        return new BucketKey(Granularity.MINUTE, HOUR.plusMinutes(5), appUri);
+    }
+}
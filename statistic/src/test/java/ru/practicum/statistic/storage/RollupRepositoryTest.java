@@ -0,0 +1,43 @@
+package ru.practicum.statistic.storage;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import ru.practicum.statistic.aggregate.Granularity;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+
+public class RollupRepositoryTest {
+    private final NamedParameterJdbcTemplate jdbcTemplate = Mockito.mock(NamedParameterJdbcTemplate.class);
+    private final RollupRepository rollupRepository = new RollupRepository(jdbcTemplate);
+
+    @Test
+    void broadUriFilterIsBoundAsASingleParameter() {
+        List<String> uris = new ArrayList<>();
+        for (int i = 0; i < 70000; i++) {
+            uris.add("/events/" + i);
+        }
+        LocalDateTime from = LocalDateTime.of(2026, 10, 1, 0, 0);
+
+        rollupRepository.sumHits(Granularity.DAY, from, from.plusDays(16), uris);
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<SqlParameterSource> params = ArgumentCaptor.forClass(SqlParameterSource.class);
+        verify(jdbcTemplate).query(sql.capture(), params.capture(), any(RowMapper.class));
+        String statement = NamedParameterUtils.substituteNamedParameters(
+                NamedParameterUtils.parseSqlStatement(sql.getValue()), params.getValue());
+        assertThat(statement.chars().filter(c -> c == '?').count(), equalTo(4L));
+        assertThat(((String[]) params.getValue().getValue("uris")).length, equalTo(70000));
+    }
+}
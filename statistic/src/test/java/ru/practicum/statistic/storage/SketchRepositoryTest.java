@@ -0,0 +1,112 @@
+package ru.practicum.statistic.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import ru.practicum.statistic.aggregate.AppUri;
+import ru.practicum.statistic.aggregate.BucketKey;
+import ru.practicum.statistic.aggregate.Granularity;
+import ru.practicum.statistic.aggregate.HyperLogLog;
+import ru.practicum.statistic.aggregate.SketchProperties;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SketchRepositoryTest {
+    private static final LocalDateTime HOUR = LocalDateTime.of(2026, 10, 17, 12, 0);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate = Mockito.mock(NamedParameterJdbcTemplate.class);
+    private final JdbcTemplate plainTemplate = Mockito.mock(JdbcTemplate.class);
+    private final SketchProperties properties = new SketchProperties();
+    private final SketchRepository sketchRepository = new SketchRepository(jdbcTemplate, properties);
+
+    @BeforeEach
+    void setUp() {
+        when(jdbcTemplate.getJdbcTemplate()).thenReturn(plainTemplate);
+    }
+
+    @Test
+    void storedSketchIsMergedInJava() {
+        HyperLogLog stored = sketchOf("10.0.0.1", "10.0.0.2");
+        HyperLogLog added = sketchOf("10.0.0.2", "10.0.0.3");
+        when(jdbcTemplate.batchUpdate(anyString(), any(SqlParameterSource[].class))).thenReturn(new int[]{0});
+        when(jdbcTemplate.queryForObject(anyString(), any(SqlParameterSource.class), eq(byte[].class)))
+                .thenReturn(stored.toBytes());
+
+        sketchRepository.merge(sketches(added));
+
+        ArgumentCaptor<SqlParameterSource[]> batch = ArgumentCaptor.forClass(SqlParameterSource[].class);
+        verify(jdbcTemplate).batchUpdate(eq("update statistic_sketch set registers = :registers "
+                + "where granularity = :granularity and bucket_start = :bucketStart and app = :app and uri = :uri"),
+                batch.capture());
+        HyperLogLog merged = HyperLogLog.fromBytes((byte[]) batch.getValue()[0].getValue("registers"));
+        assertThat(merged.estimate(), equalTo(3L));
+        assertThat(added.estimate(), equalTo(2L));
+    }
+
+    @Test
+    void insertedSketchIsNotReadBack() {
+        when(jdbcTemplate.batchUpdate(anyString(), any(SqlParameterSource[].class))).thenReturn(new int[]{1});
+
+        sketchRepository.merge(sketches(sketchOf("10.0.0.1")));
+
+        verify(jdbcTemplate, never()).queryForObject(anyString(), any(SqlParameterSource.class), eq(byte[].class));
+    }
+
+    @Test
+    void precisionChangeIsRefusedAtStartup() {
+        when(plainTemplate.queryForList(anyString(), eq(Integer.class))).thenReturn(Collections.singletonList(1 << 14));
+
+        assertThrows(IllegalStateException.class, sketchRepository::checkPrecision);
+    }
+
+    @Test
+    void precisionChangeWithRebuildReplacesStoredSketches() {
+        properties.setRebuildOnPrecisionChange(true);
+        when(plainTemplate.queryForList(anyString(), eq(Integer.class))).thenReturn(Collections.singletonList(1 << 14));
+        sketchRepository.checkPrecision();
+        when(jdbcTemplate.batchUpdate(anyString(), any(SqlParameterSource[].class))).thenReturn(new int[]{0});
+        when(jdbcTemplate.queryForObject(anyString(), any(SqlParameterSource.class), eq(byte[].class)))
+                .thenReturn(new byte[1 << 14]);
+        HyperLogLog added = sketchOf("10.0.0.1");
+
+        sketchRepository.merge(sketches(added));
+
+        assertThat(sketchRepository.isPrecisionChanged(), equalTo(true));
+        ArgumentCaptor<SqlParameterSource[]> batch = ArgumentCaptor.forClass(SqlParameterSource[].class);
+        verify(jdbcTemplate).batchUpdate(eq("update statistic_sketch set registers = :registers "
+                + "where granularity = :granularity and bucket_start = :bucketStart and app = :app and uri = :uri"),
+                batch.capture());
+        assertThat(((byte[]) batch.getValue()[0].getValue("registers")).length, equalTo(1 << 12));
+    }
+
+    private HyperLogLog sketchOf(String... ips) {
+        HyperLogLog sketch = new HyperLogLog(properties.getPrecision());
+        for (String ip : ips) {
+            sketch.add(ip);
+        }
+        return sketch;
+    }
+
+    private static Map<BucketKey, HyperLogLog> sketches(HyperLogLog sketch) {
+        Map<BucketKey, HyperLogLog> sketches = new TreeMap<>();
+        sketches.put(new BucketKey(Granularity.HOUR, HOUR, AppUri.of("ewm-main-service", "/events/1")), sketch);
+        return sketches;
+    }
+}
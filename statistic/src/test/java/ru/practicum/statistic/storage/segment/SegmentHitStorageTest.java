@@ -0,0 +1,138 @@
+package ru.practicum.statistic.storage.segment;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import ru.practicum.statistic.model.Attributes;
+import ru.practicum.statistic.model.EndpointHit;
+import ru.practicum.statistic.model.ViewStats;
+import ru.practicum.statistic.storage.HitDictionary;
+import ru.practicum.statistic.storage.PartitionProperties;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+
+public class SegmentHitStorageTest {
+    private static final LocalDateTime START = LocalDateTime.of(2026, 10, 17, 10, 30);
+
+    private final HitDictionary hitDictionary = Mockito.mock(HitDictionary.class);
+    private final SegmentProperties properties = new SegmentProperties();
+
+    @TempDir
+    Path directory;
+
+    private SegmentHitStorage storage;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        properties.setDirectory(directory.toString());
+        properties.setIndexStride(4);
+        properties.setMemtableMaxAge(Duration.ofHours(1));
+        storage = open();
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.close();
+    }
+
+    @Test
+    void countsHitsInTheMemtableAndInWrittenSegments() {
+        storage.saveAllInBatch(hits(START, 60, "/events/1"));
+        assertThat(total(storage.countHits(START, START.plusHours(1), null)), equalTo(60L));
+
+        storage.flushMemtable();
+        storage.saveAllInBatch(hits(START, 10, "/events/2"));
+
+        assertThat(total(storage.countHits(START, START.plusHours(1), null)), equalTo(70L));
+        assertThat(storage.countHits(START, START.plusMinutes(5), null), hasSize(2));
+        assertThat(total(storage.countHits(START, START.plusHours(1), Collections.singletonList("/events/2"))), equalTo(10L));
+    }
+
+    @Test
+    void memtableAnswersOutOfOrderBatchesLikeAWrittenSegment() {
+        storage.saveAllInBatch(hits(START.plusMinutes(30), 30, "/events/1"));
+        storage.saveAllInBatch(hits(START, 30, "/events/2"));
+        LocalDateTime from = START.plusMinutes(20);
+        LocalDateTime to = START.plusMinutes(40);
+        List<String> uris = Collections.singletonList("/events/1");
+
+        List<ViewStats> hits = storage.countHits(from, to, null);
+        List<ViewStats> unique = storage.countUniqueHits(from, to, uris);
+        int minutes = storage.countHitsByMinute(from, to, uris).size();
+        LocalDateTime oldest = storage.findOldest();
+        storage.flushMemtable();
+
+        assertThat(total(hits), equalTo(20L));
+        assertThat(total(unique), equalTo(5L));
+        assertThat(minutes, equalTo(10));
+        assertThat(oldest, equalTo(START));
+        assertThat(byUri(storage.countHits(from, to, null)), equalTo(byUri(hits)));
+        assertThat(byUri(storage.countUniqueHits(from, to, uris)), equalTo(byUri(unique)));
+        assertThat(storage.countHitsByMinute(from, to, uris).size(), equalTo(minutes));
+        assertThat(storage.findOldest(), equalTo(oldest));
+    }
+
+    @Test
+    void deleteBeforeRewritesSegmentsThatStraddleTheCutoff() {
+        storage.saveAllInBatch(hits(START, 60, "/events/1"));
+        storage.flushMemtable();
+        storage.saveAllInBatch(hits(START.plusMinutes(20), 60, "/events/2"));
+        LocalDateTime cutoff = START.plusMinutes(30);
+
+        int deleted = storage.deleteBefore(cutoff, 1);
+
+        assertThat(deleted, equalTo(30 + 10));
+        assertThat(storage.deleteBefore(cutoff, 1), equalTo(0));
+        assertThat(storage.findOldest(), equalTo(cutoff));
+        assertThat(total(storage.countHits(START, START.plusHours(2), null)), equalTo(30L + 50L));
+    }
+
+    @Test
+    void journaledHitsSurviveARestartWithoutAFlush() throws IOException {
+        storage.saveAllInBatch(hits(START, 25, "/events/1"));
+
+        storage = open();
+
+        assertThat(total(storage.countHits(START, START.plusHours(1), null)), equalTo(25L));
+    }
+
+    private SegmentHitStorage open() throws IOException {
+        SegmentHitStorage opened = new SegmentHitStorage(properties, new PartitionProperties(), hitDictionary);
+        opened.open();
+        return opened;
+    }
+
+    private static List<EndpointHit> hits(LocalDateTime from, int minutes, String uri) {
+        List<EndpointHit> hits = new ArrayList<>();
+        for (int i = 0; i < minutes; i++) {
+            hits.add(EndpointHit.builder()
+                    .app("ewm-main-service")
+                    .attributes(new Attributes(uri, "10.0.0." + (i % 5)))
+                    .createdOn(from.plusMinutes(i))
+                    .build());
+        }
+        return hits;
+    }
+
+    private static Map<String, Long> byUri(List<ViewStats> stats) {
+        return stats.stream().collect(Collectors.toMap(ViewStats::getUri, ViewStats::getHits));
+    }
+
+    private static long total(List<ViewStats> stats) {
+        return stats.stream().mapToLong(ViewStats::getHits).sum();
+    }
+}